@@ -0,0 +1,21 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker;
+
+import java.util.Map;
+
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * Prunes the partial assignments of a graph pattern search, with constraints that are not part of the graph
+ * pattern (e.g. the policy that must grant each query result, see CombinedEval). See GPCheckerFC.setAssignmentFilter.
+ */
+public interface AssignmentFilter<N> {
+
+	/**
+	 * Checks the assignment of a node. Called once the node is assigned and its candidates are consistent.
+	 * @param node The node that was assigned
+	 * @param vertex The vertex assigned to the node
+	 * @param assignments The current assignments, including the node
+	 * @return True to continue the search below this assignment, false to prune it.
+	 */
+	public boolean accept(MyNode node, N vertex, Map<MyNode, N> assignments);
+}
@@ -20,6 +20,26 @@ public interface GPChecker<N, E> {
 	 */
 	public List<Map<MyNode, N>> check();
 	
+	/**
+	 * Evaluates the stored graph pattern, and stops as soon as limit results are found.
+	 * @param limit The maximum number of results.
+	 * @return The list of (at most limit) maps, from graph pattern nodes to the database nodes, that together satisfy the pattern.
+	 */
+	public List<Map<MyNode, N>> check(int limit);
+	
+	/**
+	 * Checks if at least one match of the stored graph pattern exists. Stops the evaluation at the first match.
+	 * @return True if a match exists, else false.
+	 */
+	public boolean exists();
+	
+	/**
+	 * Evaluates the stored graph pattern, and passes each result to the consumer as soon as it is found,
+	 * instead of collecting the results in a list. Stops the evaluation if the consumer returns false.
+	 * @param consumer The result consumer
+	 */
+	public void check(ResultConsumer<N> consumer);
+	
 	/**
 	 * Internal debugging/analyzing method. Used for counting the number of database invokactions. 
 	 * @return The number of times the database has been invoked.
@@ -9,6 +9,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Entity;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
@@ -27,12 +28,24 @@ import ca.ucalgary.ispia.graphpatterns.util.Pair;
  * @deprecated
  */
 
-public class GPCheckerChrono implements GPChecker{
+public class GPCheckerChrono implements GPChecker<Node, Entity>{
 
 	public List<Map<MyNode, Node>> check(){
 		return null;
 	}
 	
+	public List<Map<MyNode, Node>> check(int limit){
+		throw new UnsupportedOperationException("GPCheckerChrono only supports check(GraphPattern)");
+	}
+	
+	public boolean exists(){
+		throw new UnsupportedOperationException("GPCheckerChrono only supports check(GraphPattern)");
+	}
+	
+	public void check(ResultConsumer<Node> consumer){
+		throw new UnsupportedOperationException("GPCheckerChrono only supports check(GraphPattern)");
+	}
+	
 	private GraphDatabaseService graphDb;
 	private Set<Set<Pair<MyNode, Node>>> conflicts;
 	private int queryCount;
@@ -21,6 +21,7 @@ import ca.ucalgary.ispia.graphpatterns.graph.GraphPattern;
 import ca.ucalgary.ispia.graphpatterns.graph.HasAttributes;
 import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
 import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
+import ca.ucalgary.ispia.graphpatterns.graph.QueryPlan;
 import ca.ucalgary.ispia.graphpatterns.tests.Killable;
 import ca.ucalgary.ispia.graphpatterns.util.AttributeTypes;
 import ca.ucalgary.ispia.graphpatterns.util.LabelEnum;
@@ -33,15 +34,19 @@ import ca.ucalgary.ispia.graphpatterns.util.Pair;
  *
  */
 
-public class GPCheckerFC implements GPChecker, Killable{
+public class GPCheckerFC implements GPChecker<Node, Entity>, Killable{
 
 	private GraphDatabaseService graphDb;			//The graph database interface
 	private int queryCount;							//The counter for transactions
 	private GPHolder gph;							//The GPHolder
 	private GraphPattern gp;						//The graph pattern
-	public List<Map<MyNode, Node>> queryResults;	//The list of results that satisfy the query
+	private QueryPlan plan;							//The static plan of gph
+	public ResultStore<Node> queryResults;			//The results that satisfy the query
 
 	private boolean killed;							//The kill flag.
+	private boolean stopped;						//Set once the search should stop early (enough results, or the consumer stopped it)
+	private ResultConsumer<Node> consumer;			//Receives the results in the streaming mode; null otherwise
+	private AssignmentFilter<Node> filter;			//Prunes the partial assignments; null if there is none
 	private int maxNeighbourhood;
 	private int allRes;
 	private int searchSpace;
@@ -52,15 +57,28 @@ public class GPCheckerFC implements GPChecker, Killable{
 	 * @param gph The graph pattern holder
 	 */
 	public GPCheckerFC(GraphDatabaseService graphDb, GPHolder gph){
+		this(graphDb, QueryPlan.compile(gph));
+	}
+
+	/**
+	 * Constructor to set and initialize the fields, with an already compiled plan (e.g. from a PlanCache).
+	 * @param graphDb The database to set
+	 * @param plan The plan of the graph pattern holder
+	 */
+	public GPCheckerFC(GraphDatabaseService graphDb, QueryPlan plan){
 		//Assign the fields
 		this.graphDb = graphDb;
-		this.gph = gph;
+		this.gph = plan.getGPHolder();
 		this.gp = gph.getGp();
+		this.plan = plan;
 
 		//Initialize the results, the counter, and the kill flag
-		queryResults = new ArrayList<Map<MyNode, Node>>();
+		queryResults = new ResultStore<Node>(gph.getResultSchema());
 		queryCount = 0;
 		killed = false;
+		stopped = false;
+		consumer = null;
+		filter = null;
 		
 		maxNeighbourhood = 0;
 		allRes = 0;
@@ -86,6 +104,15 @@ public class GPCheckerFC implements GPChecker, Killable{
 		return this.queryCount;
 	}
 
+	/**
+	 * Sets the filter that is consulted on every assignment. The search does not go below the assignments it
+	 * rejects.
+	 * @param filter The filter; null for none
+	 */
+	public void setAssignmentFilter(AssignmentFilter<Node> filter){
+		this.filter = filter;
+	}
+
 	/**
 	 * Runs the query evaluation algorithm.
 	 * @return The query result
@@ -137,6 +164,65 @@ public class GPCheckerFC implements GPChecker, Killable{
 		return check(assignments, candidates);
 	}
 
+	/**
+	 * Runs the query evaluation algorithm, and stops as soon as limit results are found.
+	 * @param limit The maximum number of results.
+	 * @return The query result
+	 */
+	public List<Map<MyNode, Node>> check(int limit){
+		//The limit only applies to this evaluation
+		int previous = queryResults.getLimit();
+		queryResults.setLimit(limit);
+		try {
+			return check();
+		} finally {
+			queryResults.setLimit(previous);
+		}
+	}
+
+	/**
+	 * Runs the query evaluation algorithm, and passes each result to the consumer as soon as it is found,
+	 * instead of collecting the results. The search stops if the consumer returns false.
+	 * If the result schema does not cover every graph pattern node, the result tuples are still kept
+	 * (compactly) to avoid passing duplicates.
+	 * @param consumer The result consumer
+	 */
+	public void check(ResultConsumer<Node> consumer){
+		this.consumer = consumer;
+		try {
+			check();
+		} finally {
+			this.consumer = null;
+		}
+	}
+
+	/**
+	 * Checks if at least one match of the graph pattern exists. The search stops at the first match.
+	 * @return True if a match exists, else false.
+	 */
+	public boolean exists(){
+		List<Map<MyNode, Node>> results = check(1);
+		return results != null && !results.isEmpty();
+	}
+
+	/**
+	 * Checks if at least one match of the graph pattern exists, with certain GP Nodes bound to specific
+	 * nodes in the database. The search stops at the first match.
+	 * @param extraInfo The map of MyNode to bind to specific nodes in the database. The value
+	 * for each key is the value of the "id" attribute
+	 * @return True if a match exists, else false.
+	 */
+	public boolean exists(Map<MyNode, Integer> extraInfo){
+		int previous = queryResults.getLimit();
+		queryResults.setLimit(1);
+		try {
+			List<Map<MyNode, Node>> results = check(extraInfo);
+			return results != null && !results.isEmpty();
+		} finally {
+			queryResults.setLimit(previous);
+		}
+	}
+
 
 
 
@@ -147,6 +233,10 @@ public class GPCheckerFC implements GPChecker, Killable{
 	 */
 	private List<Map<MyNode, Node>> check(Map<MyNode, Node> assignments, Map<MyNode, Set<Node>> candidates){
 
+		//A previous evaluation may have stopped early, and its results must not count towards this one
+		stopped = false;
+		queryResults = queryResults.emptyCopy();
+
 		//Get the set of pre fixed nodes
 		Set<MyNode> alreadyFixed = assignments.keySet();
 
@@ -182,6 +272,15 @@ public class GPCheckerFC implements GPChecker, Killable{
 			return null;
 		}
 
+		//The fixed nodes must pass the filter too
+		if (filter != null){
+			for (MyNode key : assignments.keySet()){
+				if (!filter.accept(key, assignments.get(key), assignments)){
+					return queryResults;
+				}
+			}
+		}
+
 		//Populate and filter the immediate neighbours of the fixed nodes
 		for (MyNode key : assignments.keySet()){
 			if (!populateFilter(assignments, candidates, key)){
@@ -345,7 +444,7 @@ public class GPCheckerFC implements GPChecker, Killable{
 
 		Node vertex = assignments.get(node);
 		//Get all of the relationships from GP that contain the given node.
-		List<MyRelationship> rels = gp.getAllRelationships(node);
+		MyRelationship[] rels = plan.getRelationships(node);
 
 		//Iterate through the relationships
 		for (MyRelationship rel : rels){
@@ -377,30 +476,17 @@ public class GPCheckerFC implements GPChecker, Killable{
 
 	private boolean checker(Map<MyNode, Node> assignments, Map<MyNode, Set<Node>> candidates){
 
-		//If the search has been killed, return false
-		if (killed){
+		//If the search has been killed, or has found enough results, return false
+		if (killed || stopped){
 			return false;
 		}
 
 
 		//If we have assigned every node, then we are done with this result set!
-		if (gp.getNodes().size() == assignments.keySet().size()){
+		if (plan.size() == assignments.size()){
 			//allRes++;
-			//Add the assignments for the queryResults list
-			List<MyNode> resultSchema = gph.getResultSchema();
-			Map<MyNode, Node> result = new HashMap<MyNode, Node>();
-
-
-			//Copy the nodes from the resultSchema to the result map
-			for (MyNode req : resultSchema){
-				Node node = assignments.get(req);
-				result.put(req, node);
-			}
-
-			//Add the result to the queryResults list. Avoid duplication
-			if (!queryResults.contains(result)){
-				queryResults.add(result);
-			}
+			//Add the result (the assignments of the resultSchema nodes) to the queryResults store. Avoid duplication
+			addResult(assignments);
 			return true;
 		}
 
@@ -435,13 +521,16 @@ public class GPCheckerFC implements GPChecker, Killable{
 			candsClone.remove(nextNode);
 			assnClone.put(nextNode, vertex);
 			boolean validVertex = populateFilter(assnClone, candsClone, nextNode);
+			if (validVertex && filter != null){
+				validVertex = filter.accept(nextNode, vertex, assnClone);
+			}
 
 			if (validVertex){
 				//If we didn't abandon this vertex, then we can recurse
 				//Recurse with clones of maps
 				boolean isGood = checker(assnClone, candsClone);
 
-				if (killed){
+				if (killed || stopped){
 					return false;
 				}
 
@@ -454,6 +543,36 @@ public class GPCheckerFC implements GPChecker, Killable{
 		return false;
 	}
 
+	/**
+	 * Adds the result for the given complete assignments to the queryResults store, which avoids duplication.
+	 * In the streaming mode, passes the new results to the consumer instead.
+	 * @param assignments The complete assignments
+	 */
+	private void addResult(Map<MyNode, Node> assignments){
+		if (consumer == null){
+			queryResults.addResult(assignments);
+			if (queryResults.isFull()){
+				stopped = true;
+			}
+			return;
+		}
+
+		//Streaming mode. The store is only needed for detecting the duplicates, which cannot occur
+		//if every graph pattern node is in the result schema.
+		List<MyNode> resultSchema = plan.getResultSchema();
+		if (!plan.isSchemaComplete() && !queryResults.addResult(assignments)){
+			return;
+		}
+
+		Map<MyNode, Node> result = new HashMap<MyNode, Node>();
+		for (MyNode req : resultSchema){
+			result.put(req, assignments.get(req));
+		}
+		if (!consumer.accept(result)){
+			stopped = true;
+		}
+	}
+
 	/**
 	 * Find nodes such that they are populated but not yet assigned.
 	 * Pick and return the node with the smallest candidates size
@@ -545,7 +664,7 @@ public class GPCheckerFC implements GPChecker, Killable{
 	
 	private void mexFilter(MyNode variable, Set<Node> candidates, Map<MyNode, Node> assignments){
 		//Get the mutual exclusion constraints containing the variable
-		List<Pair<MyNode, MyNode>> mexList = gph.getMexList(variable); 
+		List<Pair<MyNode, MyNode>> mexList = plan.getMexList(variable); 
 
 
 		for (Pair<MyNode, MyNode> mex : mexList){
@@ -0,0 +1,19 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker;
+
+import java.util.Map;
+
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * Receives the results of a graph pattern query one at a time, as the search finds them.
+ * See GPChecker.check(ResultConsumer).
+ */
+public interface ResultConsumer<N> {
+
+	/**
+	 * Accepts the next result. Called by the search thread; in the parallel mode the calls are serialized.
+	 * @param result The result, from the result schema nodes to the database nodes.
+	 * @return True to continue the search, false to stop it.
+	 */
+	public boolean accept(Map<MyNode, N> result);
+}
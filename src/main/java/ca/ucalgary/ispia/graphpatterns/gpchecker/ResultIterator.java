@@ -0,0 +1,136 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * A lazy iterator over the results of a graph pattern query. The search runs in a producer thread and
+ * streams its results into a bounded queue. When the queue is full, the search blocks until the caller
+ * takes the next result (back-pressure), so at most capacity results are buffered at a time.
+ *
+ * Call close() if the iteration is abandoned before the end. The search then stops at its next result.
+ */
+public class ResultIterator<N> implements Iterator<Map<MyNode, N>>, ResultConsumer<N> {
+
+	private final Map<MyNode, N> end;					//Marks the end of the results
+	private final BlockingQueue<Map<MyNode, N>> queue;	//The buffered results
+	private final Thread producer;						//Runs the search
+
+	private volatile boolean closed;					//Set once the caller closes the iterator
+	private volatile RuntimeException failure;			//The exception thrown by the search, if any
+	private Map<MyNode, N> next;						//The next result, once taken from the queue
+
+	/**
+	 * Starts the search for the given checker.
+	 * @param checker The checker
+	 * @param capacity The maximum number of buffered results
+	 */
+	public ResultIterator(final GPChecker<N, ?> checker, int capacity){
+		this.end = new HashMap<MyNode, N>();
+		this.queue = new ArrayBlockingQueue<Map<MyNode, N>>(capacity);
+		this.closed = false;
+		this.failure = null;
+		this.next = null;
+
+		producer = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				try {
+					checker.check(ResultIterator.this);
+				} catch (RuntimeException e){
+					failure = e;
+				} finally {
+					put(end);
+				}
+			}
+		}, "gp-result-producer");
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	/**
+	 * Called by the search for each result. Blocks while the queue is full.
+	 * @return False once the iterator is closed, which stops the search.
+	 */
+	@Override
+	public boolean accept(Map<MyNode, N> result){
+		return put(result);
+	}
+
+	@Override
+	public boolean hasNext(){
+		if (closed){
+			return false;
+		}
+		if (next == null){
+			try {
+				next = queue.take();
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				close();
+				next = end;
+			}
+		}
+
+		if (next == end){
+			if (failure != null){
+				throw failure;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Map<MyNode, N> next(){
+		if (!hasNext()){
+			throw new NoSuchElementException();
+		}
+		Map<MyNode, N> result = next;
+		next = null;
+		return result;
+	}
+
+	@Override
+	public void remove(){
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stops the search and discards the buffered results.
+	 */
+	public void close(){
+		closed = true;
+		queue.clear();
+	}
+
+	/**
+	 * Puts the result in the queue, waiting while it is full, unless the iterator is closed.
+	 * @return True if the result was put, else false.
+	 */
+	private boolean put(Map<MyNode, N> result){
+		try {
+			while (!closed){
+				if (queue.offer(result, 100, TimeUnit.MILLISECONDS)){
+					return true;
+				}
+			}
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+
+		//Closed; still make room for the end marker
+		if (result == end){
+			queue.clear();
+			queue.offer(end);
+		}
+		return false;
+	}
+}
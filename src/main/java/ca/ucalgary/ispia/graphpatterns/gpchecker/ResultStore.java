@@ -0,0 +1,335 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * Stores the results of a graph pattern query. Each result is stored as a fixed-width tuple of the vertices
+ * assigned to the result schema nodes (in the order of the result schema), in one flat array. A hash index
+ * over the tuples detects the duplicates in O(1), instead of the linear List.contains(...) lookup.
+ *
+ * The store is a read-only List of results in the usual Map form: the maps are views over the tuples,
+ * created when accessed. The add methods are synchronized, so the parallel search tasks can share a store.
+ */
+public class ResultStore<N> extends AbstractList<Map<MyNode, N>>{
+
+	private final MyNode[] schema;	//The result schema; the tuple positions
+	private final int width;		//The number of vertices in a tuple
+
+	private Object[] values;		//The tuples; tuple i is at [i*width, (i+1)*width)
+	private int[] hashes;			//The hash of each tuple
+	private int size;				//The number of tuples
+
+	private int[] table;			//The hash index; open addressing, each slot holds (tuple index + 1), 0 = empty
+	private int limit;				//The maximum number of tuples
+
+	/**
+	 * Creates an empty store for the given result schema.
+	 * @param resultSchema The result schema
+	 */
+	public ResultStore(List<MyNode> resultSchema){
+		this.schema = resultSchema.toArray(new MyNode[resultSchema.size()]);
+		this.width = schema.length;
+
+		this.values = new Object[16 * width];
+		this.hashes = new int[16];
+		this.size = 0;
+		this.table = new int[32];
+		this.limit = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Sets the maximum number of results. Once the store is full, the new results are ignored.
+	 * @param limit The maximum number of results.
+	 */
+	public synchronized void setLimit(int limit){
+		this.limit = limit;
+	}
+
+	/**
+	 * @return The maximum number of results.
+	 */
+	public synchronized int getLimit(){
+		return limit;
+	}
+
+	/**
+	 * Returns a new, empty store with the same result schema and limit. The checkers start each evaluation with
+	 * a new store, so the results of an earlier evaluation neither count towards the limit nor change.
+	 * @return The new store
+	 */
+	public synchronized ResultStore<N> emptyCopy(){
+		ResultStore<N> copy = new ResultStore<N>(Arrays.asList(schema));
+		copy.limit = limit;
+		return copy;
+	}
+
+	/**
+	 * @return True if the store holds the maximum number of results.
+	 */
+	public synchronized boolean isFull(){
+		return size >= limit;
+	}
+
+	/**
+	 * @return The result schema, in the order of the tuple positions.
+	 */
+	public List<MyNode> getSchema(){
+		return Arrays.asList(schema);
+	}
+
+	/**
+	 * Adds the result for the given assignments, i.e. the tuple of the vertices assigned to the result schema
+	 * nodes. The assignments map is not kept. Duplicates are ignored, and so are new results once the store is full.
+	 * @param assignments The assignments (containing at least the result schema nodes)
+	 * @return True if the result was added, else false.
+	 */
+	public synchronized boolean addResult(Map<MyNode, N> assignments){
+		if (size >= limit){
+			return false;
+		}
+
+		//Project the assignments onto the result schema, directly into the next free tuple
+		ensureCapacity(size + 1);
+		int base = size * width;
+		int hash = 1;
+		for (int idx = 0; idx < width; idx++){
+			N vertex = assignments.get(schema[idx]);
+			values[base + idx] = vertex;
+			hash = 31 * hash + (vertex == null ? 0 : vertex.hashCode());
+		}
+
+		//Look for a duplicate
+		int mask = table.length - 1;
+		int slot = mix(hash) & mask;
+		while (table[slot] != 0){
+			int other = table[slot] - 1;
+			if (hashes[other] == hash && sameTuple(other, size)){
+				//Release the references of the discarded tuple
+				Arrays.fill(values, base, base + width, null);
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		//Add the tuple
+		hashes[size] = hash;
+		table[slot] = size + 1;
+		size++;
+
+		//Keep the load factor at most 1/2
+		if (size * 2 > table.length){
+			rehash();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the given result map. The map's keys must be the result schema nodes.
+	 * @param result The result
+	 * @return True if the result was added, else false (duplicate, or the store is full).
+	 */
+	@Override
+	public boolean add(Map<MyNode, N> result){
+		return addResult(result);
+	}
+
+	/**
+	 * Returns the idx'th result, as a read-only Map view over its tuple.
+	 */
+	@Override
+	public synchronized Map<MyNode, N> get(int idx){
+		if (idx < 0 || idx >= size){
+			throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + size);
+		}
+		return new TupleMap(idx);
+	}
+
+	@Override
+	public synchronized int size(){
+		return size;
+	}
+
+	/**
+	 * Checks if the given result is stored, using the hash index.
+	 */
+	@Override
+	public synchronized boolean contains(Object obj){
+		if (!(obj instanceof Map)){
+			return false;
+		}
+		Map<?, ?> result = (Map<?, ?>) obj;
+		if (result.size() != width){
+			return false;
+		}
+
+		int hash = 1;
+		Object[] tuple = new Object[width];
+		for (int idx = 0; idx < width; idx++){
+			if (!result.containsKey(schema[idx])){
+				return false;
+			}
+			tuple[idx] = result.get(schema[idx]);
+			hash = 31 * hash + (tuple[idx] == null ? 0 : tuple[idx].hashCode());
+		}
+
+		int mask = table.length - 1;
+		int slot = mix(hash) & mask;
+		while (table[slot] != 0){
+			int other = table[slot] - 1;
+			if (hashes[other] == hash && sameTuple(other, tuple)){
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	//--------------------------//
+	// HELPER METHODS
+	//--------------------------//
+
+	private void ensureCapacity(int rows){
+		if (rows > hashes.length){
+			int newRows = Math.max(rows, hashes.length * 2);
+			values = Arrays.copyOf(values, newRows * width);
+			hashes = Arrays.copyOf(hashes, newRows);
+		}
+	}
+
+	private void rehash(){
+		int[] newTable = new int[table.length * 2];
+		int mask = newTable.length - 1;
+
+		for (int row = 0; row < size; row++){
+			int slot = mix(hashes[row]) & mask;
+			while (newTable[slot] != 0){
+				slot = (slot + 1) & mask;
+			}
+			newTable[slot] = row + 1;
+		}
+		table = newTable;
+	}
+
+	private boolean sameTuple(int rowA, int rowB){
+		int baseA = rowA * width;
+		int baseB = rowB * width;
+		for (int idx = 0; idx < width; idx++){
+			Object a = values[baseA + idx];
+			Object b = values[baseB + idx];
+			if (a == null ? b != null : !a.equals(b)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean sameTuple(int row, Object[] tuple){
+		int base = row * width;
+		for (int idx = 0; idx < width; idx++){
+			Object a = values[base + idx];
+			if (a == null ? tuple[idx] != null : !a.equals(tuple[idx])){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Spreads the hash bits, since the index is a power of two table.
+	 */
+	private static int mix(int hash){
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		return hash;
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized N valueAt(int row, int idx){
+		return (N) values[row * width + idx];
+	}
+
+	/**
+	 * A read-only Map view over a stored tuple, from the result schema nodes to the assigned vertices.
+	 */
+	private class TupleMap extends AbstractMap<MyNode, N>{
+		private final int row;
+
+		private TupleMap(int row){
+			this.row = row;
+		}
+
+		@Override
+		public N get(Object key){
+			for (int idx = 0; idx < width; idx++){
+				if (schema[idx].equals(key)){
+					return valueAt(row, idx);
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public boolean containsKey(Object key){
+			for (int idx = 0; idx < width; idx++){
+				if (schema[idx].equals(key)){
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public int size(){
+			return width;
+		}
+
+		@Override
+		public Set<Map.Entry<MyNode, N>> entrySet(){
+			return new AbstractSet<Map.Entry<MyNode, N>>(){
+				@Override
+				public Iterator<Map.Entry<MyNode, N>> iterator(){
+					return new Iterator<Map.Entry<MyNode, N>>(){
+						private int idx = 0;
+
+						@Override
+						public boolean hasNext(){
+							return idx < width;
+						}
+
+						@Override
+						public Map.Entry<MyNode, N> next(){
+							if (idx >= width){
+								throw new NoSuchElementException();
+							}
+							Map.Entry<MyNode, N> entry = new AbstractMap.SimpleImmutableEntry<MyNode, N>(schema[idx], valueAt(row, idx));
+							idx++;
+							return entry;
+						}
+
+						@Override
+						public void remove(){
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size(){
+					return width;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.ucalgary.ispia.graphpatterns.graph.CanonicalForm;
+import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * A bounded cache of policy verdicts (whether a match of the policy exists), keyed by the policy and the binding of
+ * its seeds (the extraInfo of GPChecker.check(Map), from the policy nodes to the "id" values). The same policy is
+ * checked again and again for the same requester and resource ids, so a repeated check becomes a lookup.
+ *
+ * The policy is identified by its canonical form (see CanonicalForm), so isomorphic policies (e.g. the same policy
+ * parsed twice) share their verdicts, and the binding is mapped onto the canonical order of the nodes. A policy
+ * that is too symmetric to canonicalize is identified by its GPHolder instance.
+ *
+ * The verdicts are only valid for the graph they were computed on. Whoever modifies the graph must call
+ * advanceEpoch(), which invalidates every cached verdict at once. A verdict also expires after the time to live,
+ * and the least recently used verdicts are evicted once the cache is full. The cache is thread safe.
+ */
+public class VerdictCache {
+
+	private final int capacity;									//The maximum number of verdicts
+	private final long ttl;										//The time to live of a verdict, in ms; 0 for no expiry
+	private final LinkedHashMap<Key, Entry> verdicts;			//The verdicts, in LRU order
+	private final Map<GPHolder, Shape> shapes;					//The canonical identity of each policy seen
+	private final AtomicLong epoch;								//The graph mutation epoch
+
+	private long hits;
+	private long misses;
+	private long expirations;
+
+	/**
+	 * Initializes the instance variables.
+	 * @param capacity The maximum number of verdicts
+	 * @param ttl The time to live of a verdict, in ms; 0 for no expiry
+	 */
+	public VerdictCache(final int capacity, long ttl){
+		this.capacity = capacity;
+		this.ttl = ttl;
+		//Access ordered, so that the eldest entry is the least recently used
+		this.verdicts = new LinkedHashMap<Key, Entry>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest){
+				return size() > capacity;
+			}
+		};
+		//GPHolder has identity equality; the policies that are no longer used are dropped
+		this.shapes = new WeakHashMap<GPHolder, Shape>();
+		this.epoch = new AtomicLong(0);
+		this.hits = 0;
+		this.misses = 0;
+		this.expirations = 0;
+	}
+
+	/**
+	 * Returns the cached verdict of the policy for the given binding.
+	 * @param policy The policy
+	 * @param extraInfo The binding of the policy nodes to the "id" values; may be null
+	 * @return The verdict, or null if it is not cached (or expired, or computed before the current epoch)
+	 */
+	public Boolean get(GPHolder policy, Map<MyNode, Integer> extraInfo){
+		Key key = key(policy, extraInfo);
+
+		synchronized (this){
+			Entry entry = verdicts.get(key);
+			if (entry == null){
+				misses++;
+				return null;
+			}
+
+			if (entry.epoch != epoch.get() || (ttl > 0 && System.currentTimeMillis() > entry.expires)){
+				verdicts.remove(key);
+				expirations++;
+				misses++;
+				return null;
+			}
+
+			hits++;
+			return entry.verdict;
+		}
+	}
+
+	/**
+	 * Caches the verdict of the policy for the given binding.
+	 * @param policy The policy
+	 * @param extraInfo The binding of the policy nodes to the "id" values; may be null
+	 * @param verdict True if a match of the policy exists
+	 * @param startEpoch The epoch when the evaluation started (see getEpoch()). A verdict computed across a graph
+	 * mutation is not cached.
+	 */
+	public void put(GPHolder policy, Map<MyNode, Integer> extraInfo, boolean verdict, long startEpoch){
+		Key key = key(policy, extraInfo);
+
+		synchronized (this){
+			if (startEpoch != epoch.get()){
+				return;
+			}
+			verdicts.put(key, new Entry(verdict, startEpoch, System.currentTimeMillis() + ttl));
+		}
+	}
+
+	/**
+	 * @return The current graph mutation epoch
+	 */
+	public long getEpoch(){
+		return epoch.get();
+	}
+
+	/**
+	 * Starts a new graph mutation epoch, which invalidates every cached verdict. Call it whenever the graph is
+	 * modified.
+	 * @return The new epoch
+	 */
+	public long advanceEpoch(){
+		return epoch.incrementAndGet();
+	}
+
+	/**
+	 * Removes all of the verdicts.
+	 */
+	public synchronized void clear(){
+		verdicts.clear();
+	}
+
+	/**
+	 * @return The number of verdicts cached (including the ones that are expired, but not yet removed)
+	 */
+	public synchronized int size(){
+		return verdicts.size();
+	}
+
+	/**
+	 * @return The number of lookups answered from the cache
+	 */
+	public synchronized long getHits(){
+		return hits;
+	}
+
+	/**
+	 * @return The number of lookups not answered from the cache
+	 */
+	public synchronized long getMisses(){
+		return misses;
+	}
+
+	/**
+	 * @return The number of verdicts dropped because they expired, or were from an earlier epoch
+	 */
+	public synchronized long getExpirations(){
+		return expirations;
+	}
+
+	//--------------------------//
+	// HELPER METHODS
+	//--------------------------//
+
+	/**
+	 * Returns the key of the policy and binding: the canonical identity of the policy, and the "id" value bound to
+	 * each node in the canonical order.
+	 */
+	private Key key(GPHolder policy, Map<MyNode, Integer> extraInfo){
+		Shape shape;
+		synchronized (shapes){
+			shape = shapes.get(policy);
+			if (shape == null){
+				shape = new Shape(policy);
+				shapes.put(policy, shape);
+			}
+		}
+
+		int[] binding = new int[shape.positions.size()];
+		boolean[] bound = new boolean[binding.length];
+		if (extraInfo != null){
+			for (Map.Entry<MyNode, Integer> entry : extraInfo.entrySet()){
+				Integer pos = shape.positions.get(entry.getKey());
+				if (pos != null){
+					binding[pos] = entry.getValue();
+					bound[pos] = true;
+				}
+			}
+		}
+		return new Key(shape.identity, binding, bound);
+	}
+
+	/**
+	 * The canonical identity of a policy (the encoding of its canonical form, or a token of the GPHolder), and the
+	 * position of each of its nodes in the canonical order.
+	 */
+	private static class Shape {
+		private final Object identity;
+		private final Map<MyNode, Integer> positions;
+
+		private Shape(GPHolder policy){
+			this.positions = new HashMap<MyNode, Integer>();
+
+			CanonicalForm form = CanonicalForm.of(policy);
+			if (form == null){
+				//A token, as a reference to the policy would keep it from being dropped
+				this.identity = new Object();
+				List<MyNode> nodes = policy.getGp().getNodes();
+				for (int pos = 0; pos < nodes.size(); pos++){
+					positions.put(nodes.get(pos), pos);
+				}
+			} else {
+				this.identity = form.getEncoding();
+				for (int pos = 0; pos < form.size(); pos++){
+					positions.put(form.getNode(pos), pos);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The cache key of a verdict.
+	 */
+	private static class Key {
+		private final Object identity;
+		private final int[] binding;
+		private final boolean[] bound;
+		private final int hash;
+
+		private Key(Object identity, int[] binding, boolean[] bound){
+			this.identity = identity;
+			this.binding = binding;
+			this.bound = bound;
+			this.hash = 31 * (31 * identity.hashCode() + Arrays.hashCode(binding)) + Arrays.hashCode(bound);
+		}
+
+		@Override
+		public int hashCode(){
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj){
+			if (!(obj instanceof Key)){
+				return false;
+			}
+			Key other = (Key) obj;
+			return identity.equals(other.identity) && Arrays.equals(binding, other.binding) && Arrays.equals(bound, other.bound);
+		}
+	}
+
+	/**
+	 * A cached verdict.
+	 */
+	private static class Entry {
+		private final boolean verdict;
+		private final long epoch;
+		private final long expires;
+
+		private Entry(boolean verdict, long epoch, long expires){
+			this.verdict = verdict;
+			this.epoch = epoch;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.neo4j.graphdb.Entity;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.AttrBasedStart;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.CachedAccess;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.ConstraintsChecker;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.DBAccess;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.DBSession;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.LeastCandidates;
+import ca.ucalgary.ispia.graphpatterns.graph.CanonicalForm;
+import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.PlanCache;
+import ca.ucalgary.ispia.graphpatterns.graph.QueryPlan;
+import ca.ucalgary.ispia.graphpatterns.tests.Killable;
+
+/**
+ * Evaluates a batch of GPHolders (e.g. the policies triggered by one access request) against the database, with
+ * GPCheckerFCLBJ, sharing the work between the queries:
+ * 1. The queries are grouped by their canonical form (see CanonicalForm). Isomorphic queries (e.g. the same policy
+ *    listed twice, or two policies that only differ in node ids) are evaluated once, and the results are mapped
+ *    onto the nodes of the other queries.
+ * 2. The distinct queries are grouped by their seeds (the values of their "id" requirements). The queries of a
+ *    group start from the same vertices, so their seeded sub-patterns expand the same neighbourhoods.
+ * 3. All of the queries share one CachedAccess, so each neighbourhood expansion (vertex, relationship type,
+ *    direction and requirements) is read from the database once, whichever query requested it first.
+ * 4. The groups are evaluated in parallel on a fixed thread pool, the largest groups first; the queries of a group
+ *    run in order on one thread (in one read transaction), so that they find each other's expansions in the cache.
+ *
+ * The evaluator can be reused for several batches, and the cache is kept between the batches; call
+ * getCache().invalidate() if the database is modified. Call shutdown() once the evaluator is no longer needed.
+ */
+public class BatchEvaluator implements Killable{
+
+	private final DBSession session;					//The session shared by all of the queries
+	private final long cacheCapacity;					//The maximum total weight of the cached expansions
+	private final ExecutorService pool;					//The pool that evaluates the groups
+	private final PlanCache plans;						//The compiled plans of the queries
+	private CachedAccess<Node> cache;					//The shared neighbourhood cache; created with the first batch
+
+	private final Set<Killable> running;				//The checkers currently running
+	private volatile boolean killed;					//The kill flag
+
+	private int distinctQueries;						//The number of queries evaluated in the last batch
+	private int groups;									//The number of seed groups in the last batch
+
+	/**
+	 * Initializes the instance variables.
+	 * @param graphDb The GraphDatabaseService
+	 * @param threads The number of threads that evaluate the groups
+	 * @param cacheCapacity The maximum total weight of the cached expansions (see CachedAccess)
+	 */
+	public BatchEvaluator(GraphDatabaseService graphDb, int threads, long cacheCapacity){
+		this.session = new DBSession(graphDb);
+		this.cacheCapacity = cacheCapacity;
+		this.pool = Executors.newFixedThreadPool(threads);
+		this.plans = new PlanCache(256);
+		this.cache = null;
+		this.running = Collections.synchronizedSet(new HashSet<Killable>());
+		this.killed = false;
+		this.distinctQueries = 0;
+		this.groups = 0;
+	}
+
+	/**
+	 * Evaluates the queries.
+	 * @param queries The queries
+	 * @return The results of each query, in the order of the queries. The result of a query is null if it could not
+	 * be started (as with GPCheckerFCLBJ.check()), or if the batch was killed before it ran.
+	 */
+	public List<List<Map<MyNode, Node>>> evaluate(List<GPHolder> queries){
+		killed = false;
+
+		//Find the isomorphic queries. The queries that cannot be canonicalized are evaluated on their own.
+		Map<CanonicalForm, Integer> representatives = new HashMap<CanonicalForm, Integer>();
+		CanonicalForm[] forms = new CanonicalForm[queries.size()];
+		int[] representative = new int[queries.size()];
+		List<Integer> distinct = new ArrayList<Integer>();
+		for (int idx = 0; idx < queries.size(); idx++){
+			forms[idx] = CanonicalForm.of(queries.get(idx));
+			Integer rep = forms[idx] == null ? null : representatives.get(forms[idx]);
+			if (rep == null){
+				representative[idx] = idx;
+				distinct.add(idx);
+				if (forms[idx] != null){
+					representatives.put(forms[idx], idx);
+				}
+			} else {
+				representative[idx] = rep;
+			}
+		}
+
+		//Group the distinct queries by their seeds
+		Map<String, List<Integer>> seedGroups = new LinkedHashMap<String, List<Integer>>();
+		for (int idx : distinct){
+			String seeds = seeds(queries.get(idx));
+			//The queries without a seed share no starting point, so each is a group of its own
+			String key = seeds.isEmpty() ? "#" + idx : seeds;
+			List<Integer> group = seedGroups.get(key);
+			if (group == null){
+				group = new ArrayList<Integer>();
+				seedGroups.put(key, group);
+			}
+			group.add(idx);
+		}
+
+		List<List<Integer>> tasks = new ArrayList<List<Integer>>(seedGroups.values());
+		//The largest groups first, so that the threads finish at about the same time
+		Collections.sort(tasks, new Comparator<List<Integer>>(){
+			public int compare(List<Integer> a, List<Integer> b){
+				return b.size() - a.size();
+			}
+		});
+
+		distinctQueries = distinct.size();
+		groups = tasks.size();
+		if (queries.isEmpty()){
+			return new ArrayList<List<Map<MyNode, Node>>>();
+		}
+
+		synchronized (this){
+			if (cache == null){
+				//The ConstraintsChecker compiles the attribute requirements of the other queries on their first check
+				//(keyed by the requirements), so one DBAccess serves every query
+				ConstraintsChecker attrChecker = new ConstraintsChecker(plans.getPlan(queries.get(0)), session);
+				cache = new CachedAccess<Node>(new DBAccess(session, attrChecker), cacheCapacity);
+			}
+		}
+
+		//Evaluate the groups
+		final List<List<Map<MyNode, Node>>> results = new ArrayList<List<Map<MyNode, Node>>>();
+		for (int idx = 0; idx < queries.size(); idx++){
+			results.add(null);
+		}
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final List<Integer> task : tasks){
+			final List<GPHolder> group = new ArrayList<GPHolder>();
+			for (int idx : task){
+				group.add(queries.get(idx));
+			}
+			futures.add(pool.submit(new Callable<Void>(){
+				public Void call(){
+					List<List<Map<MyNode, Node>>> groupResults = evaluateGroup(group);
+					synchronized (results){
+						for (int pos = 0; pos < task.size(); pos++){
+							results.set(task.get(pos), groupResults.get(pos));
+						}
+					}
+					return null;
+				}
+			}));
+		}
+
+		for (Future<?> future : futures){
+			try {
+				future.get();
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				kill();
+				break;
+			} catch (ExecutionException e){
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		//Map the results of the representatives onto the isomorphic queries
+		for (int idx = 0; idx < queries.size(); idx++){
+			if (representative[idx] != idx){
+				results.set(idx, mapResults(results.get(representative[idx]), forms[representative[idx]].mapTo(forms[idx])));
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Evaluates the queries of a group, in order, in one read transaction.
+	 */
+	private List<List<Map<MyNode, Node>>> evaluateGroup(List<GPHolder> group){
+		List<List<Map<MyNode, Node>>> groupResults = new ArrayList<List<Map<MyNode, Node>>>();
+
+		session.begin();
+		try {
+			for (GPHolder query : group){
+				if (killed){
+					groupResults.add(null);
+					continue;
+				}
+
+				QueryPlan plan = plans.getPlan(query);
+				ConstraintsEvaluator<Node, Entity> ce = new ConstraintsChecker(plan, session);
+				VariableOrdering<Node> variableOrdering = new LeastCandidates<Node>(query.getGp());
+				AltStart<Node> as = new AttrBasedStart(session, ce);
+				GPCheckerFCLBJ<Node, Entity> gpEval = new GPCheckerFCLBJ<Node, Entity>(plan, ce, cache, variableOrdering, as);
+
+				running.add(gpEval);
+				try {
+					groupResults.add(gpEval.check());
+				} finally {
+					running.remove(gpEval);
+				}
+			}
+		} finally {
+			session.end();
+		}
+
+		return groupResults;
+	}
+
+	/**
+	 * Returns the seeds of the query: the sorted values of the "id" requirements of its nodes.
+	 */
+	private static String seeds(GPHolder query){
+		TreeSet<String> ids = new TreeSet<String>();
+		for (MyNode node : query.getGp().getNodes()){
+			String id = node.getAttribute("id");
+			if (id != null){
+				ids.add(id);
+			}
+		}
+		return ids.isEmpty() ? "" : ids.toString();
+	}
+
+	/**
+	 * Maps the results of a query onto the nodes of an isomorphic query.
+	 */
+	private static List<Map<MyNode, Node>> mapResults(List<Map<MyNode, Node>> source, Map<MyNode, MyNode> mapping){
+		if (source == null){
+			return null;
+		}
+
+		List<Map<MyNode, Node>> mapped = new ArrayList<Map<MyNode, Node>>();
+		for (Map<MyNode, Node> result : source){
+			Map<MyNode, Node> copy = new HashMap<MyNode, Node>();
+			for (Map.Entry<MyNode, Node> entry : result.entrySet()){
+				copy.put(mapping.get(entry.getKey()), entry.getValue());
+			}
+			mapped.add(copy);
+		}
+		return mapped;
+	}
+
+	/**
+	 * @return The shared neighbourhood cache; null until the first batch
+	 */
+	public synchronized CachedAccess<Node> getCache(){
+		return cache;
+	}
+
+	/**
+	 * @return The number of queries evaluated in the last batch (the rest were isomorphic to one of these)
+	 */
+	public int getDistinctQueries(){
+		return distinctQueries;
+	}
+
+	/**
+	 * @return The number of seed groups in the last batch
+	 */
+	public int getGroups(){
+		return groups;
+	}
+
+	/**
+	 * Kills the running checkers, and skips the queries that have not started.
+	 */
+	public void kill(){
+		killed = true;
+		synchronized (running){
+			for (Killable checker : running){
+				checker.kill();
+			}
+		}
+	}
+
+	/**
+	 * Shuts the thread pool down.
+	 */
+	public void shutdown(){
+		pool.shutdownNow();
+	}
+}
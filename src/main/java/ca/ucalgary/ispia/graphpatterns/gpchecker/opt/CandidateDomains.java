@@ -0,0 +1,19 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Provides the implementation of the candidates sets (domains) used by the forward checking engines.
+ * The engines only create candidates sets through this interface, and then use the Set methods
+ * (retainAll, isEmpty, size, iteration) on them.
+ */
+public interface CandidateDomains<N> {
+
+	/**
+	 * Creates a new, modifiable candidates set containing the given vertices.
+	 * @param vertices The vertices to copy into the new set.
+	 * @return The new candidates set.
+	 */
+	public abstract Set<N> copyOf(Collection<N> vertices);
+}
@@ -0,0 +1,18 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt;
+
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * Estimates the number of vertices in the dataset that can be assigned to a graph pattern node,
+ * based on the node's attribute requirements. Used to choose where the search starts.
+ */
+public interface CardinalityEstimator {
+
+	/**
+	 * Estimates the number of vertices that satisfy the attribute requirements of the given node.
+	 * The estimate may be an upper bound, but must be 0 only if no vertex can satisfy the requirements.
+	 * @param node The graph pattern node
+	 * @return The estimated number of candidates
+	 */
+	public abstract long estimate(MyNode node);
+}
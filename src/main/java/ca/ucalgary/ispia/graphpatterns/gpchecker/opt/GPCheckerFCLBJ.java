@@ -1,18 +1,25 @@
 package ca.ucalgary.ispia.graphpatterns.gpchecker.opt;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import ca.ucalgary.ispia.graphpatterns.gpchecker.GPChecker;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.ResultConsumer;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.ResultStore;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.DBAccess;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.HashDomains;
 import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
 import ca.ucalgary.ispia.graphpatterns.graph.GraphPattern;
 import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
 import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
+import ca.ucalgary.ispia.graphpatterns.graph.QueryPlan;
 import ca.ucalgary.ispia.graphpatterns.tests.Killable;
 
 /**
@@ -25,18 +32,25 @@ import ca.ucalgary.ispia.graphpatterns.tests.Killable;
 public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 
 	//private final GraphDatabaseService graphDb;			//The graph database interface
-	private int queryCount;							//The counter for transactions
 	private final GPHolder gph;							//The GPHolder
 	private final GraphPattern gp;						//The graph pattern contained in gph
-	public List<Map<MyNode, N>> queryResults;	//The list of results that satisfy the query
+	private final QueryPlan plan;						//The static plan of gph
+	public ResultStore<N> queryResults;			//The results that satisfy the query
 
 	//The modularized components
 	private final ConstraintsEvaluator<N, E> consEval;
 	private final NeighbourhoodAccess<N> neighbourhoodAccess;
 	private final VariableOrdering<N> variableOrdering;
 	private final AltStart<N> altStart;
-
-	private boolean killed;							//The kill flag.
+	private CandidateDomains<N> candidateDomains;	//Creates the candidates sets
+
+	private volatile boolean killed;				//The kill flag. Volatile, so that the parallel tasks see it.
+	private boolean trailMode;						//If true, search over one shared state with an undo trail
+	private ForkJoinPool pool;						//The pool for the parallel mode; null for the sequential mode
+	private int forkThreshold;						//In the parallel mode, the levels with this many candidates are split
+	private int resultLimit;						//The search stops once this many results are found
+	private volatile boolean stopped;				//Set once the search should stop early (enough results, or the consumer stopped it)
+	private ResultConsumer<N> consumer;				//Receives the results in the streaming mode; null otherwise
 	
 	private int searchSpace;
 	private int allRes;
@@ -47,14 +61,22 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 	 * @param gph The graph pattern holder
 	 */
 	public GPCheckerFCLBJ(GPHolder gph, ConstraintsEvaluator<N, E> consEval, NeighbourhoodAccess<N> neighbourhoodAccess, VariableOrdering<N> variableOrdering, AltStart<N> altStart){
+		this(QueryPlan.compile(gph), consEval, neighbourhoodAccess, variableOrdering, altStart);
+	}
+
+	/**
+	 * Constructor to set and initialize the fields, with an already compiled plan (e.g. from a PlanCache).
+	 * @param plan The plan of the graph pattern holder
+	 */
+	public GPCheckerFCLBJ(QueryPlan plan, ConstraintsEvaluator<N, E> consEval, NeighbourhoodAccess<N> neighbourhoodAccess, VariableOrdering<N> variableOrdering, AltStart<N> altStart){
 		//Assign the fields
 		//this.graphDb = graphDb;
-		this.gph = gph;
+		this.gph = plan.getGPHolder();
 		this.gp = gph.getGp();
+		this.plan = plan;
 
-		//Initialize the results, the counter, and the kill flag
-		queryResults = new ArrayList<Map<MyNode, N>>();
-		queryCount = 0;
+		//Initialize the results, and the kill flag
+		queryResults = new ResultStore<N>(gph.getResultSchema());
 		killed = false;
 
 		this.consEval = consEval;
@@ -64,6 +86,44 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 
 		searchSpace = 0;
 		allRes = 0;
+		trailMode = false;
+		candidateDomains = new HashDomains<N>();
+		pool = null;
+		forkThreshold = Integer.MAX_VALUE;
+		resultLimit = Integer.MAX_VALUE;
+		stopped = false;
+		consumer = null;
+	}
+	
+	/**
+	 * Sets the search mode. In trail mode the search mutates one shared state and records undo entries on a
+	 * trail, instead of cloning the assignments, candidates, and confIn maps for every candidate.
+	 * The results are the same in both modes.
+	 * @param trailMode True to use the trail mode, false to use the cloning mode.
+	 */
+	public void setTrailMode(boolean trailMode){
+		this.trailMode = trailMode;
+	}
+	
+	/**
+	 * Sets the implementation of the candidates sets. Defaults to HashDomains.
+	 * @param candidateDomains The candidates sets implementation (e.g. BitmapDomains for the in-memory dataset).
+	 */
+	public void setCandidateDomains(CandidateDomains<N> candidateDomains){
+		this.candidateDomains = candidateDomains;
+	}
+	
+	/**
+	 * Sets the parallel mode. The candidates of the first level, and of every later level with at least
+	 * forkThreshold candidates, are split into tasks that run in the given pool. Each task searches over its
+	 * own copy of the state. The components (e.g. the NeighbourhoodAccess) must be safe to call from
+	 * multiple threads.
+	 * @param pool The pool to run the tasks in, or null for the sequential mode.
+	 * @param forkThreshold The minimum number of candidates for splitting a later level.
+	 */
+	public void setParallelism(ForkJoinPool pool, int forkThreshold){
+		this.pool = pool;
+		this.forkThreshold = forkThreshold;
 	}
 	
 	public int getMaxNeighbourhood(){
@@ -79,10 +139,10 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 	}
 
 	/**
-	 * @return the query count
+	 * @return the query count, i.e. the number of transactions opened by the neighbourhood access
 	 */
 	public int getQueryCount(){
-		return this.queryCount;
+		return neighbourhoodAccess.getQueryCount();
 	}
 
 	//--------------------------//
@@ -99,7 +159,7 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 		Map<MyNode, Set<N>> candidates = new HashMap<MyNode, Set<N>>();
 
 		//Delegate to the overloaded method
-		return check_init(assignments, candidates);
+		return check_session(assignments, candidates, null);
 
 	}
 
@@ -115,28 +175,105 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 		Map<MyNode, N> assignments = new HashMap<MyNode, N>();
 		Map<MyNode, Set<N>> candidates = new HashMap<MyNode, Set<N>>();
 
-		//For each node in the extraInfo map
-		for (MyNode node : extraInfo.keySet()){
+		//Delegate to the overloaded method, which binds the extraInfo nodes inside the access session
+		return check_session(assignments, candidates, extraInfo);
+	}
+
+	/**
+	 * Runs the query evaluation algorithm, and stops as soon as limit results are found.
+	 * @param limit The maximum number of results.
+	 * @return The query result
+	 */
+	public List<Map<MyNode, N>> check(int limit){
+		//The limit only applies to this evaluation
+		int previous = resultLimit;
+		setResultLimit(limit);
+		try {
+			return check();
+		} finally {
+			setResultLimit(previous);
+		}
+	}
 
-			N vertex = neighbourhoodAccess.findNode(node, extraInfo.get(node));
-			if (vertex != null){
-				Set<N> temp = new HashSet<N>();
-				temp.add(vertex);
-				candidates.put(node, temp);
-			} else {
-				//System.out.println("HERE A");
-				return null;
-			}
+	/**
+	 * Runs the query evaluation algorithm, and passes each result to the consumer as soon as it is found,
+	 * instead of collecting the results. The search stops if the consumer returns false.
+	 * If the result schema does not cover every graph pattern node, the result tuples are still kept
+	 * (compactly) to avoid passing duplicates.
+	 * @param consumer The result consumer
+	 */
+	public void check(ResultConsumer<N> consumer){
+		this.consumer = consumer;
+		try {
+			check();
+		} finally {
+			this.consumer = null;
+		}
+	}
 
+	/**
+	 * Checks if at least one match of the graph pattern exists. The search stops at the first match.
+	 * @return True if a match exists, else false.
+	 */
+	public boolean exists(){
+		return hasResults(check(1));
+	}
+
+	/**
+	 * Checks if at least one match of the graph pattern exists, with certain GP Nodes bound to specific
+	 * nodes in the database. The search stops at the first match.
+	 * @param extraInfo The map of MyNode to bind to specific nodes in the database. The value
+	 * for each key is the value of the "id" attribute
+	 * @return True if a match exists, else false.
+	 */
+	public boolean exists(Map<MyNode, Integer> extraInfo){
+		int previous = resultLimit;
+		setResultLimit(1);
+		try {
+			return hasResults(check(extraInfo));
+		} finally {
+			setResultLimit(previous);
 		}
-		//Continue on by delegating to the overloaded method
-		return check_init(assignments, candidates);
 	}
 
 	//--------------------------//
 	// INIT
 	//--------------------------//
 
+	/**
+	 * Runs the evaluation inside one access session, so that the database accesses of the whole evaluation
+	 * share the underlying resources (e.g. a single read transaction).
+	 * @param assignments The assignments map
+	 * @param candidates The candidates map
+	 * @param extraInfo The map of MyNode to bind to specific nodes in the database; null if none
+	 * @return the query result
+	 */
+	private List<Map<MyNode, N>> check_session(Map<MyNode, N> assignments, Map<MyNode, Set<N>> candidates, Map<MyNode, Integer> extraInfo){
+		//A previous evaluation may have stopped early, and its results must not count towards this one
+		stopped = false;
+		queryResults = queryResults.emptyCopy();
+		neighbourhoodAccess.beginSession();
+		try {
+			if (extraInfo != null){
+				//For each node in the extraInfo map
+				for (MyNode node : extraInfo.keySet()){
+
+					N vertex = neighbourhoodAccess.findNode(node, extraInfo.get(node));
+					if (vertex != null){
+						candidates.put(node, candidateDomains.copyOf(Collections.singleton(vertex)));
+					} else {
+						return null;
+					}
+
+				}
+			}
+
+			return check_init(assignments, candidates);
+		} finally {
+			neighbourhoodAccess.endSession();
+		}
+	}
+
 	/**
 	 * Checks if the given graph pattern holder exists in the associated database.
 	 * @param assignments 
@@ -152,9 +289,7 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 
 				N vertex = neighbourhoodAccess.findNode(node);
 				if (vertex != null){
-					Set<N> temp = new HashSet<N>();
-					temp.add(vertex);
-					candidates.put(node, temp);
+					candidates.put(node, candidateDomains.copyOf(Collections.singleton(vertex)));
 				} else {
 					return null;
 				}				
@@ -180,7 +315,13 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 		}
 
 		//Start the search for the remaining nodes
-		check_rec(assignments, candidates, confIn);
+		if (pool != null){
+			pool.invoke(new SearchTask(assignments, candidates, confIn));
+		} else if (trailMode){
+			check_rec_trail(new SearchTrail<N>(assignments, candidates, confIn));
+		} else {
+			check_rec(assignments, candidates, confIn);
+		}
 
 		
 		/*DBAccess temp = (DBAccess) neighbourhoodAccess;
@@ -207,35 +348,22 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 	 */
 
 	private Set<MyNode> check_rec(Map<MyNode, N> assignments, Map<MyNode, Set<N>> candidates, Map<MyNode, Set<MyNode>> confIn){
-		//If the search has been killed, return false
-		if (killed){
+		//If the search has been killed, or has found enough results, return
+		if (killed || stopped){
 			return null;
 		}
 
 		// BASE CASE
 
 		//If we have assigned every node, then we are done with this result set!
-		if (gp.getNodes().size() == assignments.keySet().size()){
+		if (plan.size() == assignments.size()){
 
 			//allRes++;
 			
-			//Add the assignments for the queryResults list
-			List<MyNode> resultSchema = gph.getResultSchema();
-			Map<MyNode, N> result = new HashMap<MyNode, N>();
-
-			
-			//Copy the nodes from the resultSchema to the result map
-			for (MyNode req : resultSchema){
-				N node = assignments.get(req);
-				result.put(req, node);
-			}
-
-			//Add the result to the queryResults list. Avoid duplication
-			if (!queryResults.contains(result)){
-				queryResults.add(result);
-			}
+			//Add the result (the assignments of the resultSchema nodes) to the queryResults store. Avoid duplication
+			addResult(assignments);
 			Set<MyNode> res = new HashSet<MyNode>();
-			res.addAll(resultSchema);
+			res.addAll(plan.getResultSchema());
 			return res;
 		}
 
@@ -247,6 +375,11 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 			consEval.mexFilter(nextNode, candidates.get(nextNode), assignments, confIn);
 		}
 
+		//In the parallel mode, split the candidates of large levels into tasks
+		if (forkLevel(assignments, candidates.get(nextNode))){
+			return check_par(assignments, candidates, confIn, nextNode);
+		}
+
 		
 		//Dead-end flag
 		boolean deadEnd = true;
@@ -266,9 +399,7 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 
 			for (MyNode key : candidates.keySet()){
 				//Get the set of candidates
-				Set<N> candidatesSet = new HashSet<N>(); 
-				candidatesSet.addAll(candidates.get(key));
-				candsClone.put(key, candidatesSet);
+				candsClone.put(key, candidateDomains.copyOf(candidates.get(key)));
 			}
 
 			Map<MyNode, N> assnClone = new HashMap<MyNode, N>();
@@ -303,7 +434,7 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 
 				Set<MyNode> jumpNodes = check_rec(assnClone, candsClone, confInClone);
 
-				if (killed){
+				if (killed || stopped){
 					return null;
 				}
 
@@ -338,6 +469,117 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 		}
 	}
 
+	/**
+	 * The recursive step of the GP-Eval algorithm, in trail mode. Mirrors check_rec, but instead of cloning
+	 * the maps for each candidate, the changes are recorded on the trail and undone before the next candidate.
+	 * @param trail The trail holding the current state of assignments, candidates, and confIn.
+	 * @return
+	 */
+	private Set<MyNode> check_rec_trail(SearchTrail<N> trail){
+		//If the search has been killed, or has found enough results, return
+		if (killed || stopped){
+			return null;
+		}
+
+		Map<MyNode, N> assignments = trail.getAssignments();
+		Map<MyNode, Set<N>> candidates = trail.getCandidates();
+		Map<MyNode, Set<MyNode>> confIn = trail.getConfIn();
+
+		// BASE CASE
+
+		//If we have assigned every node, then we are done with this result set!
+		if (plan.size() == assignments.size()){
+
+			//Add the result (the assignments of the resultSchema nodes) to the queryResults store. Avoid duplication
+			addResult(assignments);
+			Set<MyNode> res = new HashSet<MyNode>();
+			res.addAll(plan.getResultSchema());
+			return res;
+		}
+
+		// SMALLER PROBLEM AND RECURSIVE STEP
+
+		//Mark the state before this level, so it can be restored before returning
+		int levelMark = trail.mark();
+
+		//Pick the next node to assign such that it is populated but not yet assigned 
+		MyNode nextNode = variableOrdering.pickNextNode(assignments, candidates);
+		if (consEval != null){
+			//The mexFilter modifies the candidates and confIn of nextNode directly, so work on copies
+			trail.replaceCandidates(nextNode, candidateDomains.copyOf(candidates.get(nextNode)));
+			trail.saveConfIn(nextNode);
+			consEval.mexFilter(nextNode, candidates.get(nextNode), assignments, confIn);
+		}
+
+		//In the parallel mode, split the candidates of large levels into tasks
+		if (forkLevel(assignments, candidates.get(nextNode))){
+			Set<MyNode> result = check_par(assignments, candidates, confIn, nextNode);
+			trail.undo(levelMark);
+			return result;
+		}
+
+		//Take nextNode's candidates out of the state. They are not modified while nextNode is assigned.
+		Set<N> nextCandidates = candidates.get(nextNode);
+		trail.unpopulate(nextNode);
+
+		//Dead-end flag
+		boolean deadEnd = true;
+
+		//Set for outgoing conflicts.
+		Set<MyNode> confOut = new HashSet<MyNode>();
+		Set<MyNode> conflicts = new HashSet<MyNode>();
+
+		//Choose a vertex for nextNode.
+		for(N vertex : nextCandidates){
+
+			//Mark the state before this candidate
+			int vertexMark = trail.mark();
+			trail.assign(nextNode, vertex);
+
+			//Perform forward checking
+			boolean validVertex = populateFilterTrail(trail, nextNode, confOut);
+
+			if (validVertex){
+				//Update deadEnd flag
+				deadEnd = false;
+
+				Set<MyNode> jumpNodes = check_rec_trail(trail);
+
+				//The recursion only returns null once the search is killed or stopped
+				if (killed || stopped || jumpNodes == null){
+					return null;
+				}
+
+				if (!jumpNodes.isEmpty() && !jumpNodes.contains(nextNode)){
+					//If there is a future node assignment that leads to a deadend, such that the future node has no conflicts with nextNode,
+					//then no other candidate of nextNode can prevent the deadend. Therefore, we can just return using jumpNodes.
+					trail.undo(levelMark);
+					return jumpNodes;
+				} else {
+					//If the future deadend is affected by NextNode, then we add the jumpNodes to jumpStack, and try the next candidate for nextNode.
+					//When we return from this call stack, we will return using jumpStack.
+					conflicts.addAll(jumpNodes);
+				}
+			}
+
+			//Restore the state for the next candidate
+			trail.undo(vertexMark);
+		}
+
+		Set<MyNode> result = null;
+		if (deadEnd){
+			conflicts.addAll(deadEndJump(nextNode, confOut, confIn));
+			result = conflicts;
+		} else {
+			result = liveEndJump(nextNode, confOut, confIn, assignments.keySet());
+			result.addAll(conflicts);
+		}
+
+		//Restore the state as it was before this level
+		trail.undo(levelMark);
+		return result;
+	}
+
 	//--------------------------//
 	// FORWARD CHECKING
 	//--------------------------//
@@ -355,7 +597,7 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 
 		N vertex = assignments.get(node);
 		//Get all of the relationships from GP that contain the given node.
-		List<MyRelationship> rels = gp.getAllRelationships(node);
+		MyRelationship[] rels = plan.getRelationships(node);
 
 		//Iterate through the relationships
 		for (MyRelationship rel : rels){
@@ -371,16 +613,12 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 					Set<N> temp = candidates.get(otherNode);
 
 					//If there is filtering, then add the incoming conflict.
-					if (!neighbours.containsAll(temp)){
+					if (temp.retainAll(neighbours)){
 						addConflictIn(node, otherNode, confIn);
 					}
-
-					temp.retainAll(neighbours);				
 				} else {
 					//Else populate it
-					Set<N> temp = new HashSet<N>();
-					temp.addAll(neighbours);
-					candidates.put(otherNode, temp);
+					candidates.put(otherNode, candidateDomains.copyOf(neighbours));
 
 					//If there is populating, then add the incoming conflict.
 					addConflictIn(node, otherNode, confIn);
@@ -400,10 +638,332 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 	}
 
 
+	/**
+	 * Populates the candidates map for assignments with possible vertices in the database, in trail mode.
+	 * Every change is recorded on the trail.
+	 * @param trail
+	 * @param node
+	 * @param confOut
+	 * @return
+	 */
+	private boolean populateFilterTrail(SearchTrail<N> trail, MyNode node, Set<MyNode> confOut){
+
+		Map<MyNode, N> assignments = trail.getAssignments();
+		Map<MyNode, Set<N>> candidates = trail.getCandidates();
+
+		N vertex = assignments.get(node);
+		//Get all of the relationships from GP that contain the given node.
+		MyRelationship[] rels = plan.getRelationships(node);
+
+		//Iterate through the relationships
+		for (MyRelationship rel : rels){
+			//Record the other node (from the perspective of the given node)
+			MyNode otherNode = rel.getOther(node);
+
+			//If the other node is not already been assigned, then populate/filter it
+			if (!assignments.containsKey(otherNode)){
+				Set<N> neighbours = neighbourhoodAccess.findNeighbours(rel, node, vertex);
+
+				if (candidates.containsKey(otherNode)){
+					//If the candidates set exists, then filter it
+					//If there is filtering, then add the incoming conflict.
+					if (trail.retain(otherNode, neighbours)){
+						trail.addConflictIn(node, otherNode);
+					}
+				} else {
+					//Else populate it
+					trail.populate(otherNode, candidateDomains.copyOf(neighbours));
+
+					//If there is populating, then add the incoming conflict.
+					trail.addConflictIn(node, otherNode);
+				}
+
+				//If the updated candidates set is empty, then add the outgoing conflict and return false 
+				if (candidates.get(otherNode).isEmpty()){
+					confOut.add(otherNode);
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	//--------------------------//
+	// PARALLEL MODE
+	//--------------------------//
+
+	/**
+	 * Checks if the candidates of the next node should be split into parallel tasks.
+	 * @param assignments The current state of assignments.
+	 * @param nextCandidates The candidates of the next node.
+	 * @return True in the parallel mode, for the first level and for the levels with at least forkThreshold candidates.
+	 */
+	private boolean forkLevel(Map<MyNode, N> assignments, Set<N> nextCandidates){
+		if (pool == null || nextCandidates.size() < 2){
+			return false;
+		}
+
+		return assignments.isEmpty() || nextCandidates.size() >= forkThreshold;
+	}
+
+	/**
+	 * Evaluates one level of the search, splitting the candidates of nextNode into parallel tasks.
+	 * The state maps are only read by the tasks; each candidate is searched over its own copy.
+	 * Computes the same jump set as the sequential loop.
+	 * @param assignments The current state of assignments.
+	 * @param candidates The current state of candidates.
+	 * @param confIn The incoming conflicts.
+	 * @param nextNode The node to assign.
+	 * @return The set of nodes to jump back to, or null if the search was killed or found enough results.
+	 */
+	private Set<MyNode> check_par(Map<MyNode, N> assignments, Map<MyNode, Set<N>> candidates, Map<MyNode, Set<MyNode>> confIn, MyNode nextNode){
+		List<N> vertices = new ArrayList<N>(candidates.get(nextNode));
+		int chunk = Math.max(1, vertices.size() / (pool.getParallelism() * 4));
+
+		ParallelLevel level = new ParallelLevel(assignments, candidates, confIn, nextNode, vertices, chunk);
+		LevelOutcome outcome = new CandidatesTask(level, 0, vertices.size()).invoke();
+
+		if (killed || stopped){
+			return null;
+		}
+
+		if (outcome.jumpNodes != null){
+			//One of the candidates jumped over nextNode
+			return outcome.jumpNodes;
+		}
+
+		if (outcome.deadEnd){
+			outcome.conflicts.addAll(deadEndJump(nextNode, outcome.confOut, confIn));
+			return outcome.conflicts;
+		} else {
+			Set<MyNode> liveEnd = liveEndJump(nextNode, outcome.confOut, confIn, assignments.keySet());
+			liveEnd.addAll(outcome.conflicts);
+			return liveEnd;
+		}
+	}
+
+	/**
+	 * Searches the candidates [from, to) of the level, in order. Mirrors the candidate loop of check_rec.
+	 * @return The outcome for these candidates.
+	 */
+	private LevelOutcome searchCandidates(ParallelLevel level, int from, int to){
+		LevelOutcome outcome = new LevelOutcome();
+		MyNode nextNode = level.nextNode;
+
+		for (int idx = from; idx < to && !level.jumped && !killed && !stopped; idx++){
+			N vertex = level.vertices.get(idx);
+
+			//Clone the candidates and assignments map
+			Map<MyNode, Set<N>> candsClone = new HashMap<MyNode, Set<N>>();
+			for (MyNode key : level.candidates.keySet()){
+				if (!key.equals(nextNode)){
+					candsClone.put(key, candidateDomains.copyOf(level.candidates.get(key)));
+				}
+			}
+
+			Map<MyNode, N> assnClone = new HashMap<MyNode, N>(level.assignments);
+			assnClone.put(nextNode, vertex);
+
+			//Clone the in conflicts maps
+			Map<MyNode, Set<MyNode>> confInClone = new HashMap<MyNode, Set<MyNode>>();
+			for (MyNode key : level.confIn.keySet()){
+				confInClone.put(key, new HashSet<MyNode>(level.confIn.get(key)));
+			}
+
+			//Perform forward checking
+			if (populateFilter(assnClone, candsClone, nextNode, outcome.confOut, confInClone)){
+				outcome.deadEnd = false;
+
+				Set<MyNode> jumpNodes = null;
+				if (trailMode){
+					jumpNodes = check_rec_trail(new SearchTrail<N>(assnClone, candsClone, confInClone));
+				} else {
+					jumpNodes = check_rec(assnClone, candsClone, confInClone);
+				}
+
+				if (killed || stopped || jumpNodes == null){
+					return outcome;
+				}
+
+				if (!jumpNodes.isEmpty() && !jumpNodes.contains(nextNode)){
+					//No other candidate of nextNode can prevent the deadend; stop the other tasks of this level
+					outcome.jumpNodes = jumpNodes;
+					level.jumped = true;
+					return outcome;
+				} else {
+					outcome.conflicts.addAll(jumpNodes);
+				}
+			}
+		}
+
+		return outcome;
+	}
+
+	/**
+	 * The shared, read-only input of a parallel level.
+	 */
+	private class ParallelLevel {
+		private final Map<MyNode, N> assignments;
+		private final Map<MyNode, Set<N>> candidates;
+		private final Map<MyNode, Set<MyNode>> confIn;
+		private final MyNode nextNode;
+		private final List<N> vertices;		//The candidates of nextNode
+		private final int chunk;			//The number of candidates searched by one task
+		private volatile boolean jumped;	//Set once a candidate jumps over nextNode
+
+		private ParallelLevel(Map<MyNode, N> assignments, Map<MyNode, Set<N>> candidates, Map<MyNode, Set<MyNode>> confIn, MyNode nextNode, List<N> vertices, int chunk){
+			this.assignments = assignments;
+			this.candidates = candidates;
+			this.confIn = confIn;
+			this.nextNode = nextNode;
+			this.vertices = vertices;
+			this.chunk = chunk;
+			this.jumped = false;
+		}
+	}
+
+	/**
+	 * The outcome of searching a range of the candidates of a parallel level.
+	 */
+	private class LevelOutcome {
+		private boolean deadEnd = true;							//True if none of the candidates could be extended
+		private Set<MyNode> confOut = new HashSet<MyNode>();	//The outgoing conflicts
+		private Set<MyNode> conflicts = new HashSet<MyNode>();	//The jump sets that contain nextNode
+		private Set<MyNode> jumpNodes = null;					//The jump set that skips nextNode, if any
+
+		/**
+		 * Merges the other outcome (for the following candidates) into this one.
+		 */
+		private LevelOutcome merge(LevelOutcome other){
+			if (jumpNodes != null){
+				return this;
+			}
+			if (other.jumpNodes != null){
+				return other;
+			}
+
+			deadEnd = deadEnd && other.deadEnd;
+			confOut.addAll(other.confOut);
+			conflicts.addAll(other.conflicts);
+			return this;
+		}
+	}
+
+	/**
+	 * Searches a range of the candidates of a parallel level, splitting it in halves down to the chunk size.
+	 */
+	private class CandidatesTask extends RecursiveTask<LevelOutcome> {
+		private static final long serialVersionUID = 1L;
+
+		private final ParallelLevel level;
+		private final int from;
+		private final int to;
+
+		private CandidatesTask(ParallelLevel level, int from, int to){
+			this.level = level;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected LevelOutcome compute(){
+			if (to - from <= level.chunk){
+				return searchCandidates(level, from, to);
+			}
+
+			int mid = (from + to) >>> 1;
+			CandidatesTask left = new CandidatesTask(level, from, mid);
+			CandidatesTask right = new CandidatesTask(level, mid, to);
+
+			left.fork();
+			LevelOutcome rightOutcome = right.compute();
+			return left.join().merge(rightOutcome);
+		}
+	}
+
+	/**
+	 * Runs the search from the initial state, inside the pool.
+	 */
+	private class SearchTask extends RecursiveTask<Set<MyNode>> {
+		private static final long serialVersionUID = 1L;
+
+		private final Map<MyNode, N> assignments;
+		private final Map<MyNode, Set<N>> candidates;
+		private final Map<MyNode, Set<MyNode>> confIn;
+
+		private SearchTask(Map<MyNode, N> assignments, Map<MyNode, Set<N>> candidates, Map<MyNode, Set<MyNode>> confIn){
+			this.assignments = assignments;
+			this.candidates = candidates;
+			this.confIn = confIn;
+		}
+
+		@Override
+		protected Set<MyNode> compute(){
+			if (trailMode){
+				return check_rec_trail(new SearchTrail<N>(assignments, candidates, confIn));
+			} else {
+				return check_rec(assignments, candidates, confIn);
+			}
+		}
+	}
+
 	//--------------------------//
 	// HELPER METHODS
 	//--------------------------//	
 
+	/**
+	 * Sets the maximum number of results, after which the search stops.
+	 * @param limit The maximum number of results.
+	 */
+	private void setResultLimit(int limit){
+		resultLimit = limit;
+		queryResults.setLimit(limit);
+	}
+
+	/**
+	 * Adds the result for the given complete assignments to the queryResults store, which avoids duplication.
+	 * Flags the search to stop once the result limit is reached. In the streaming mode, passes the new results
+	 * to the consumer instead.
+	 * @param assignments The complete assignments
+	 */
+	private void addResult(Map<MyNode, N> assignments){
+		if (consumer == null){
+			queryResults.addResult(assignments);
+			if (queryResults.isFull()){
+				stopped = true;
+			}
+			return;
+		}
+
+		//Streaming mode. The store is only needed for detecting the duplicates, which cannot occur
+		//if every graph pattern node is in the result schema.
+		List<MyNode> resultSchema = plan.getResultSchema();
+		boolean dedup = !plan.isSchemaComplete();
+
+		//Serialize the consumer calls of the parallel tasks
+		synchronized (consumer){
+			if (stopped || (dedup && !queryResults.addResult(assignments))){
+				return;
+			}
+
+			Map<MyNode, N> result = new HashMap<MyNode, N>();
+			for (MyNode req : resultSchema){
+				result.put(req, assignments.get(req));
+			}
+			if (!consumer.accept(result)){
+				stopped = true;
+			}
+		}
+	}
+
+	/**
+	 * @return True if the query result is not null and not empty.
+	 */
+	private boolean hasResults(List<Map<MyNode, N>> results){
+		return results != null && !results.isEmpty();
+	}
+
 	//-------------------------//
 	// KILLABLE FEATURES	
 	//-------------------------//
@@ -479,6 +1039,7 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 	
 	/**
 	 * Computes the set of nodes to jump back to in case the current node has at least one assignment that can be extended. 
+	 * In the existential mode, the result schema nodes are not added, so the search can jump over them.
 	 * @param src The current node.
 	 * @param confOut The outgoing conflicts set.
 	 * @param confIn The incoming conflicts map.
@@ -486,11 +1047,17 @@ public class GPCheckerFCLBJ<N, E> implements GPChecker<N, E>, Killable{
 	 * @return The set of nodes to jump back to.
 	 */
 	private Set<MyNode> liveEndJump(MyNode src, Set<MyNode> confOut, Map<MyNode, Set<MyNode>> confIn, Set<MyNode> assignedNodes){
+		if (resultLimit == 1){
+			//Existential mode: the search stops at the first match, so the result schema never has to be
+			//enumerated. Until then, no match was found below src, so explain it the same way as a deadend.
+			return deadEndJump(src, confOut, confIn);
+		}
+
 		Set<MyNode> jumpVars = new HashSet<MyNode>();
-		jumpVars.addAll(gph.getResultSchema());
+		jumpVars.addAll(plan.getResultSchema());
 		
 		//Get the filtering chains for the future Result Schema nodes
-		for (MyNode node : gph.getResultSchema()){
+		for (MyNode node : plan.getResultSchema()){
 			if (!assignedNodes.contains(node)){
 				if (confIn.containsKey(node)){
 					jumpVars.addAll(confIn.get(node));
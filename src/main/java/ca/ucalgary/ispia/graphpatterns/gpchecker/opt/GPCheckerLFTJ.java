@@ -0,0 +1,629 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.GPChecker;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.ResultConsumer;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.ResultStore;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.DSConstraintsChecker;
+import ca.ucalgary.ispia.graphpatterns.graph.DataSetCSR;
+import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
+import ca.ucalgary.ispia.graphpatterns.graph.HasAttributes;
+import ca.ucalgary.ispia.graphpatterns.graph.MyDirection;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
+import ca.ucalgary.ispia.graphpatterns.graph.QueryPlan;
+import ca.ucalgary.ispia.graphpatterns.tests.Killable;
+
+/**
+ * This class provides a worst-case optimal join engine (Generic Join, with leapfrog intersection) for
+ * checking a graph pattern against the in-memory dataset (see DataSetCSR).
+ *
+ * The graph pattern nodes are bound one at a time, in an order computed for each evaluation (each next node has
+ * the most relationships to the already bound nodes, and the fixed nodes come first among equals). The candidates of a node are the intersection of the sorted adjacency ranges of
+ * all of its bound neighbours, computed at once by leapfrogging (galloping) through the ranges, instead of
+ * intersecting candidate sets pairwise. For cyclic patterns (e.g. triangles and cliques) this keeps the work
+ * within the AGM bound of the pattern.
+ *
+ * The semantics are the same as GPCheckerFCLBJ: attribute requirements (checked with the DSConstraintsChecker),
+ * mutual exclusion constraints, and results projected onto the result schema without duplicates. Once every
+ * result schema node is bound, the remaining nodes only have to be extended once.
+ */
+public class GPCheckerLFTJ implements GPChecker<MyNode, HasAttributes>, Killable{
+
+	private final GPHolder gph;							//The GPHolder
+	private final QueryPlan plan;						//The static plan of gph
+	private final DataSetCSR csr;						//The adjacency store
+	private final DSConstraintsChecker checker;			//Checks the attribute requirements; null if there are none
+	private final MyNode[] vertices;					//The lookup from id to vertex
+	public ResultStore<MyNode> queryResults;			//The results that satisfy the query
+
+	private int[] order;								//The node numbers, in the binding order of the current evaluation
+	private Level[] levels;								//The constraints of each level of the binding order
+	private int[] schemaBound;							//The number of result schema nodes bound before each level
+
+	private final int[] binding;						//The vertex id bound to each node number
+	private final int[] fixed;							//The vertex id each node number is fixed to, or -1
+
+	private volatile boolean killed;					//The kill flag
+	private boolean stopped;							//Set once the search should stop early (enough results, or the consumer stopped it)
+	private ResultConsumer<MyNode> consumer;			//Receives the results in the streaming mode; null otherwise
+
+	private int maxNeighbourhood;
+	private int allRes;
+	private int searchSpace;
+
+	/**
+	 * Constructor to set and initialize the fields.
+	 * @param gph The graph pattern holder
+	 * @param csr The adjacency store
+	 * @param checker Checks the attribute requirements (on the same dataset); may be null if there are none
+	 */
+	public GPCheckerLFTJ(GPHolder gph, DataSetCSR csr, DSConstraintsChecker checker){
+		this(QueryPlan.compile(gph), csr, checker);
+	}
+
+	/**
+	 * Constructor to set and initialize the fields, with an already compiled plan (e.g. from a PlanCache).
+	 * @param plan The plan of the graph pattern holder
+	 * @param csr The adjacency store
+	 * @param checker Checks the attribute requirements (on the same dataset); may be null if there are none
+	 */
+	public GPCheckerLFTJ(QueryPlan plan, DataSetCSR csr, DSConstraintsChecker checker){
+		this.gph = plan.getGPHolder();
+		this.plan = plan;
+		this.csr = csr;
+		this.checker = checker;
+		this.vertices = csr.getNodes();
+		this.queryResults = new ResultStore<MyNode>(plan.getResultSchema());
+
+		int size = plan.size();
+		this.binding = new int[size];
+		this.fixed = new int[size];
+
+		killed = false;
+		stopped = false;
+		consumer = null;
+		maxNeighbourhood = 0;
+		allRes = 0;
+		searchSpace = 0;
+	}
+
+	public int getQueryCount(){
+		return 0;
+	}
+
+	public int getMaxNeighbourhood(){
+		return maxNeighbourhood;
+	}
+
+	public int getAllRes(){
+		return allRes;
+	}
+
+	public int getSearchSpace(){
+		return searchSpace;
+	}
+
+	//--------------------------//
+	// PUBLICLY EXPOSED METHODS
+	//--------------------------//
+
+	/**
+	 * Runs the query evaluation algorithm.
+	 * @return The query result
+	 */
+	public List<Map<MyNode, MyNode>> check(){
+		return check_init(null);
+	}
+
+	/**
+	 * Runs the query evaluation algorithm. Use the extra information to bind certain GP Nodes
+	 * to specific nodes in the dataset
+	 * @param extraInfo The map of MyNode to bind to specific nodes in the dataset. The value
+	 * for each key is the value of the "id" attribute
+	 * @return The query result
+	 */
+	public List<Map<MyNode, MyNode>> check(Map<MyNode, Integer> extraInfo){
+		return check_init(extraInfo);
+	}
+
+	/**
+	 * Runs the query evaluation algorithm, and stops as soon as limit results are found.
+	 * @param limit The maximum number of results.
+	 * @return The query result
+	 */
+	public List<Map<MyNode, MyNode>> check(int limit){
+		//The limit only applies to this evaluation
+		int previous = queryResults.getLimit();
+		queryResults.setLimit(limit);
+		try {
+			return check();
+		} finally {
+			queryResults.setLimit(previous);
+		}
+	}
+
+	/**
+	 * Runs the query evaluation algorithm, and passes each result to the consumer as soon as it is found,
+	 * instead of collecting the results.
+	 * @param consumer The result consumer
+	 */
+	public void check(ResultConsumer<MyNode> consumer){
+		this.consumer = consumer;
+		try {
+			check();
+		} finally {
+			this.consumer = null;
+		}
+	}
+
+	/**
+	 * Checks if at least one match of the graph pattern exists. The search stops at the first match.
+	 * @return True if a match exists, else false.
+	 */
+	public boolean exists(){
+		return !check(1).isEmpty();
+	}
+
+	/**
+	 * Checks if at least one match of the graph pattern exists, with certain GP Nodes bound to specific
+	 * nodes in the dataset. The search stops at the first match.
+	 * @param extraInfo The map of MyNode to bind to specific nodes in the dataset
+	 * @return True if a match exists, else false.
+	 */
+	public boolean exists(Map<MyNode, Integer> extraInfo){
+		int previous = queryResults.getLimit();
+		queryResults.setLimit(1);
+		try {
+			return !check(extraInfo).isEmpty();
+		} finally {
+			queryResults.setLimit(previous);
+		}
+	}
+
+	/**
+	 * Sets the kill switch to true
+	 */
+	public void kill(){
+		this.killed = true;
+	}
+
+	//--------------------------//
+	// SEARCH
+	//--------------------------//
+
+	private List<Map<MyNode, MyNode>> check_init(Map<MyNode, Integer> extraInfo){
+		Arrays.fill(fixed, -1);
+		if (extraInfo != null){
+			for (Map.Entry<MyNode, Integer> entry : extraInfo.entrySet()){
+				int num = plan.getNumber(entry.getKey());
+				if (num >= 0){
+					fixed[num] = entry.getValue();
+				}
+			}
+		}
+
+		//A previous evaluation may have stopped early, and its results must not count towards this one
+		stopped = false;
+		queryResults = queryResults.emptyCopy();
+		prepare();
+
+		if (plan.size() > 0){
+			search(0);
+		}
+		return queryResults;
+	}
+
+	/**
+	 * Computes the binding order for the fixed nodes of the current evaluation, and the constraints of its levels.
+	 */
+	private void prepare(){
+		int size = plan.size();
+		order = bindingOrder();
+		levels = new Level[size];
+		schemaBound = new int[size + 1];
+		int[] positions = new int[size];
+		for (int level = 0; level < size; level++){
+			positions[order[level]] = level;
+		}
+		for (int level = 0; level < size; level++){
+			levels[level] = new Level(order[level], positions);
+			schemaBound[level + 1] = schemaBound[level] + (plan.inResultSchema(order[level]) ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Binds the node of the given level to each of its candidates, and recurses.
+	 * @param level The level in the binding order
+	 * @return True if at least one complete binding was found below this level
+	 */
+	private boolean search(int level){
+		if (level == order.length){
+			addResult();
+			return true;
+		}
+
+		Level lvl = levels[level];
+		int[] candidates = candidates(lvl);
+
+		//Once every result schema node is bound, one extension is enough
+		boolean once = schemaBound[level] == plan.getResultSchema().size();
+		boolean found = false;
+
+		for (int id : candidates){
+			if (killed || stopped){
+				return found;
+			}
+			searchSpace++;
+
+			if (!admissible(lvl, id)){
+				continue;
+			}
+
+			binding[lvl.node] = id;
+			if (search(level + 1)){
+				found = true;
+				if (once){
+					return true;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Computes the candidates of the level's node: the leapfrog intersection of the adjacency ranges of its bound
+	 * neighbours, or all of the vertices if it has none.
+	 */
+	private int[] candidates(Level lvl){
+		int num = lvl.node;
+		MyNode node = plan.getNode(num);
+
+		if (lvl.rels.length == 0){
+			if (fixed[num] >= 0){
+				return new int[]{fixed[num]};
+			}
+
+			//No bound neighbours
+			String id = node.getAttribute("id");
+			if (id != null){
+				//In the in-memory dataset, the "id" of a node is its index
+				try {
+					return new int[]{Integer.parseInt(id)};
+				} catch (NumberFormatException e){
+					return new int[0];
+				}
+			}
+
+			int[] all = new int[vertices.length];
+			int count = 0;
+			for (int idx = 0; idx < vertices.length; idx++){
+				if (vertices[idx] != null){
+					all[count++] = idx;
+				}
+			}
+			return Arrays.copyOf(all, count);
+		}
+
+		IntBuffer[] buffers = new IntBuffer[lvl.rels.length];
+		int[] starts = new int[lvl.rels.length];
+		int[] ends = new int[lvl.rels.length];
+		for (int idx = 0; idx < lvl.rels.length; idx++){
+			MyRelationship rel = lvl.rels[idx];
+			int other = binding[lvl.others[idx]];
+			MyDirection dir = lvl.dirs[idx];
+
+			IntBuffer offsets = csr.getOffsets(rel.getIdentifier(), dir);
+			IntBuffer targets = csr.getTargets(rel.getIdentifier(), dir);
+			int start = other + 1 < offsets.limit() ? offsets.get(other) : 0;
+			int end = other + 1 < offsets.limit() ? offsets.get(other + 1) : 0;
+			maxNeighbourhood = Math.max(maxNeighbourhood, end - start);
+
+			if (rel.hasAttributes() && checker != null){
+				//Keep only the neighbours through relationships with the required attributes
+				IntBuffer relIds = csr.getRelIds(rel.getIdentifier(), dir);
+				int[] filtered = new int[end - start];
+				int count = 0;
+				for (int pos = start; pos < end; pos++){
+					if (checker.checkRelAttrs(rel, relIds.get(pos))){
+						filtered[count++] = targets.get(pos);
+					}
+				}
+				buffers[idx] = IntBuffer.wrap(filtered, 0, count);
+				starts[idx] = 0;
+				ends[idx] = count;
+			} else {
+				buffers[idx] = targets;
+				starts[idx] = start;
+				ends[idx] = end;
+			}
+		}
+
+		int[] result = leapfrog(buffers, starts, ends);
+		if (fixed[num] >= 0){
+			//The fixed vertex must still be a neighbour of the bound nodes
+			return Arrays.binarySearch(result, fixed[num]) >= 0 ? new int[]{fixed[num]} : new int[0];
+		}
+		return result;
+	}
+
+	/**
+	 * Checks the candidate against the node's attribute requirements, its mex constraints with the bound nodes, and
+	 * its relationships to itself.
+	 */
+	private boolean admissible(Level lvl, int id){
+		if (id < 0 || id >= vertices.length || vertices[id] == null){
+			return false;
+		}
+
+		MyNode node = plan.getNode(lvl.node);
+		if (node.hasAttributes() && checker != null && !checker.checkNodeAttrs(node, id)){
+			return false;
+		}
+
+		for (int other : lvl.mex){
+			if (binding[other] == id){
+				return false;
+			}
+		}
+
+		for (MyRelationship loop : lvl.loops){
+			if (!loopExists(loop, id)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the vertex has a relationship to itself that satisfies the given loop's type and attributes.
+	 */
+	private boolean loopExists(MyRelationship loop, int id){
+		IntBuffer offsets = csr.getOffsets(loop.getIdentifier(), MyDirection.OUTGOING);
+		IntBuffer targets = csr.getTargets(loop.getIdentifier(), MyDirection.OUTGOING);
+		IntBuffer relIds = csr.getRelIds(loop.getIdentifier(), MyDirection.OUTGOING);
+		if (id + 1 >= offsets.limit()){
+			return false;
+		}
+
+		int end = offsets.get(id + 1);
+		for (int pos = seek(targets, offsets.get(id), end, id); pos < end && targets.get(pos) == id; pos++){
+			if (!loop.hasAttributes() || checker == null || checker.checkRelAttrs(loop, relIds.get(pos))){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the result for the current complete binding. Flags the search to stop once the result limit is reached.
+	 * In the streaming mode, passes the new results to the consumer instead.
+	 */
+	private void addResult(){
+		allRes++;
+
+		Map<MyNode, MyNode> assignments = new HashMap<MyNode, MyNode>();
+		for (MyNode node : plan.getResultSchema()){
+			int num = plan.getNumber(node);
+			if (num >= 0){
+				assignments.put(node, vertices[binding[num]]);
+			}
+		}
+
+		if (consumer == null){
+			queryResults.addResult(assignments);
+			if (queryResults.isFull()){
+				stopped = true;
+			}
+			return;
+		}
+
+		//Streaming mode. The store is only needed for detecting the duplicates.
+		if (!plan.isSchemaComplete() && !queryResults.addResult(assignments)){
+			return;
+		}
+		if (!consumer.accept(assignments)){
+			stopped = true;
+		}
+	}
+
+	//--------------------------//
+	// LEAPFROG INTERSECTION
+	//--------------------------//
+
+	/**
+	 * Intersects the sorted ranges [starts[i], ends[i]) of the buffers, by repeatedly seeking every range to the
+	 * largest current head. Duplicates within a range are allowed; the result is sorted and distinct.
+	 */
+	private static int[] leapfrog(IntBuffer[] buffers, int[] starts, int[] ends){
+		int ranges = buffers.length;
+		int[] pos = starts.clone();
+		int smallest = Integer.MAX_VALUE;
+		for (int idx = 0; idx < ranges; idx++){
+			if (pos[idx] >= ends[idx]){
+				return new int[0];
+			}
+			smallest = Math.min(smallest, ends[idx] - starts[idx]);
+		}
+
+		int[] result = new int[smallest];
+		int count = 0;
+		int key = buffers[0].get(pos[0]);
+		while (true){
+			boolean agreed = true;
+			for (int idx = 0; idx < ranges; idx++){
+				pos[idx] = seek(buffers[idx], pos[idx], ends[idx], key);
+				if (pos[idx] >= ends[idx]){
+					return Arrays.copyOf(result, count);
+				}
+				int head = buffers[idx].get(pos[idx]);
+				if (head > key){
+					key = head;
+					agreed = false;
+				}
+			}
+
+			if (agreed){
+				result[count++] = key;
+				if (key == Integer.MAX_VALUE){
+					return Arrays.copyOf(result, count);
+				}
+				key++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the first position in [from, to) whose value is at least key, by galloping from from.
+	 */
+	private static int seek(IntBuffer buffer, int from, int to, int key){
+		if (from >= to || buffer.get(from) >= key){
+			return from;
+		}
+
+		//Gallop until the value at high is at least key, then binary search (low, high]
+		int low = from;
+		int step = 1;
+		int high = from + 1;
+		while (high < to && buffer.get(high) < key){
+			low = high;
+			step <<= 1;
+			high = from + step;
+		}
+		high = Math.min(high, to);
+
+		while (low + 1 < high){
+			int mid = (low + high) >>> 1;
+			if (buffer.get(mid) < key){
+				low = mid;
+			} else {
+				high = mid;
+			}
+		}
+		return high;
+	}
+
+	//--------------------------//
+	// BINDING ORDER
+	//--------------------------//
+
+	/**
+	 * Orders the nodes: each next node has the most relationships to the already ordered nodes. Ties prefer the
+	 * nodes fixed by the extraInfo, then the nodes with an "id" requirement (so that the search starts from a
+	 * single vertex), then the result schema nodes (so that the search can switch to a single extension early),
+	 * then the nodes with attribute requirements, then the nodes with more relationships.
+	 */
+	private int[] bindingOrder(){
+		int size = plan.size();
+		int[] result = new int[size];
+		boolean[] ordered = new boolean[size];
+
+		for (int level = 0; level < size; level++){
+			int best = -1;
+			int bestConnections = -1;
+			for (int num = 0; num < size; num++){
+				if (ordered[num]){
+					continue;
+				}
+				int connections = 0;
+				for (int other : plan.getOthers(num)){
+					if (ordered[other] && other != num){
+						connections++;
+					}
+				}
+				if (best < 0 || connections > bestConnections || (connections == bestConnections && preferred(num, best))){
+					best = num;
+					bestConnections = connections;
+				}
+			}
+			result[level] = best;
+			ordered[best] = true;
+		}
+		return result;
+	}
+
+	private boolean preferred(int num, int best){
+		if ((fixed[num] >= 0) != (fixed[best] >= 0)){
+			return fixed[num] >= 0;
+		}
+		boolean id = plan.getNode(num).getAttribute("id") != null;
+		if (id != (plan.getNode(best).getAttribute("id") != null)){
+			return id;
+		}
+		if (plan.inResultSchema(num) != plan.inResultSchema(best)){
+			return plan.inResultSchema(num);
+		}
+		boolean attrs = plan.getNode(num).hasAttributes();
+		if (attrs != plan.getNode(best).hasAttributes()){
+			return attrs;
+		}
+		return plan.getOthers(num).length > plan.getOthers(best).length;
+	}
+
+	/**
+	 * The constraints of a level of the binding order: the relationships to the nodes bound at earlier levels
+	 * (with the direction from the bound node), the relationships of the node to itself, and the mex neighbours
+	 * bound at earlier levels.
+	 */
+	private class Level {
+		private final int node;
+		private final MyRelationship[] rels;
+		private final int[] others;
+		private final MyDirection[] dirs;
+		private final MyRelationship[] loops;
+		private final int[] mex;
+
+		private Level(int node, int[] positions){
+			this.node = node;
+			int level = positions[node];
+
+			List<MyRelationship> relList = new ArrayList<MyRelationship>();
+			List<Integer> otherList = new ArrayList<Integer>();
+			List<MyDirection> dirList = new ArrayList<MyDirection>();
+			List<MyRelationship> loopList = new ArrayList<MyRelationship>();
+
+			MyRelationship[] nodeRels = plan.getRelationships(node);
+			int[] nodeOthers = plan.getOthers(node);
+			MyDirection[] nodeDirs = plan.getDirections(node);
+			for (int idx = 0; idx < nodeRels.length; idx++){
+				int other = nodeOthers[idx];
+				if (other == node){
+					//A loop is listed at both of its ends; check it once
+					if (nodeDirs[idx] == MyDirection.OUTGOING && !loopList.contains(nodeRels[idx])){
+						loopList.add(nodeRels[idx]);
+					}
+				} else if (positions[other] < level){
+					relList.add(nodeRels[idx]);
+					otherList.add(other);
+					//The range of the bound node, towards this node
+					dirList.add(nodeDirs[idx] == MyDirection.OUTGOING ? MyDirection.INCOMING : MyDirection.OUTGOING);
+				}
+			}
+
+			List<Integer> mexList = new ArrayList<Integer>();
+			for (int other : plan.getMexNeighbours(node)){
+				if (positions[other] < level){
+					mexList.add(other);
+				}
+			}
+
+			this.rels = relList.toArray(new MyRelationship[relList.size()]);
+			this.others = new int[otherList.size()];
+			for (int idx = 0; idx < others.length; idx++){
+				others[idx] = otherList.get(idx);
+			}
+			this.dirs = dirList.toArray(new MyDirection[dirList.size()]);
+			this.loops = loopList.toArray(new MyRelationship[loopList.size()]);
+			this.mex = new int[mexList.size()];
+			for (int idx = 0; idx < mex.length; idx++){
+				mex[idx] = mexList.get(idx);
+			}
+		}
+	}
+}
@@ -0,0 +1,752 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.GPChecker;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.ResultConsumer;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.ResultStore;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.DSConstraintsChecker;
+import ca.ucalgary.ispia.graphpatterns.graph.DataSetCSR;
+import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
+import ca.ucalgary.ispia.graphpatterns.graph.HasAttributes;
+import ca.ucalgary.ispia.graphpatterns.graph.MyDirection;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
+import ca.ucalgary.ispia.graphpatterns.graph.QueryPlan;
+import ca.ucalgary.ispia.graphpatterns.graph.TreeDecomposition;
+import ca.ucalgary.ispia.graphpatterns.tests.Killable;
+
+/**
+ * This class provides an engine that evaluates a graph pattern over its tree decomposition (see TreeDecomposition),
+ * on the in-memory dataset (see DataSetCSR).
+ *
+ * Each tree of the decomposition is rooted at its most selective bag. A bag is evaluated for a given binding of its
+ * separator (the nodes it shares with its parent bag): its other nodes are bound by backtracking, and for each
+ * complete binding of the bag, its child bags are evaluated. The result of a bag is the set of the projections
+ * of its subtree's matches onto the result schema nodes of the subtree (excluding the separator). The results are
+ * memoized per separator binding, so a sub-search that is shared by many branches (e.g. the rest of a long chain)
+ * is computed once. A bag whose subtree has no result schema nodes stops at its first match.
+ *
+ * For a pattern of width w over n vertices, the work is polynomial (about n^(w+1) per bag), plus the size of the
+ * result. The semantics are the same as GPCheckerFCLBJ: attribute requirements (checked with the
+ * DSConstraintsChecker), mutual exclusion constraints, and results projected onto the result schema without duplicates.
+ */
+public class GPCheckerTD implements GPChecker<MyNode, HasAttributes>, Killable{
+
+	private final GPHolder gph;							//The GPHolder
+	private final QueryPlan plan;						//The static plan of gph
+	private final TreeDecomposition td;					//The tree decomposition of the graph pattern
+	private final DataSetCSR csr;						//The adjacency store
+	private final DSConstraintsChecker checker;			//Checks the attribute requirements; null if there are none
+	private final MyNode[] vertices;					//The lookup from id to vertex
+	public ResultStore<MyNode> queryResults;			//The results that satisfy the query
+
+	private final int[] binding;						//The vertex id bound to each node number
+	private final int[] fixed;							//The vertex id each node number is fixed to, or -1
+
+	//The rooted decomposition, for the current evaluation. The last bag is a virtual root (with no nodes) whose
+	//children are the roots of the trees.
+	private int[][] children;							//The child bags of each bag
+	private int[][] separators;							//The nodes each bag shares with its parent bag
+	private Variable[][] variables;						//The other nodes of each bag, in the binding order
+	private int[][] ownSchema;							//The result schema nodes among the variables of each bag
+	private int[][] outputs;							//The result schema nodes of the subtree of each bag, excluding the separator
+	private List<Map<Key, Set<Key>>> memos;				//The results of each bag, by separator binding
+
+	private volatile boolean killed;					//The kill flag
+	private ResultConsumer<MyNode> consumer;			//Receives the results in the streaming mode; null otherwise
+
+	private int maxNeighbourhood;
+	private int allRes;
+	private int searchSpace;
+	private int memoHits;
+
+	/**
+	 * Constructor to set and initialize the fields.
+	 * @param gph The graph pattern holder
+	 * @param csr The adjacency store
+	 * @param checker Checks the attribute requirements (on the same dataset); may be null if there are none
+	 */
+	public GPCheckerTD(GPHolder gph, DataSetCSR csr, DSConstraintsChecker checker){
+		this(QueryPlan.compile(gph), csr, checker);
+	}
+
+	/**
+	 * Constructor to set and initialize the fields, with an already compiled plan (e.g. from a PlanCache).
+	 * @param plan The plan of the graph pattern holder
+	 * @param csr The adjacency store
+	 * @param checker Checks the attribute requirements (on the same dataset); may be null if there are none
+	 */
+	public GPCheckerTD(QueryPlan plan, DataSetCSR csr, DSConstraintsChecker checker){
+		this.gph = plan.getGPHolder();
+		this.plan = plan;
+		this.td = TreeDecomposition.of(plan);
+		this.csr = csr;
+		this.checker = checker;
+		this.vertices = csr.getNodes();
+		this.queryResults = new ResultStore<MyNode>(plan.getResultSchema());
+
+		this.binding = new int[plan.size()];
+		this.fixed = new int[plan.size()];
+
+		killed = false;
+		consumer = null;
+		maxNeighbourhood = 0;
+		allRes = 0;
+		searchSpace = 0;
+		memoHits = 0;
+	}
+
+	public int getQueryCount(){
+		return 0;
+	}
+
+	public int getMaxNeighbourhood(){
+		return maxNeighbourhood;
+	}
+
+	public int getAllRes(){
+		return allRes;
+	}
+
+	public int getSearchSpace(){
+		return searchSpace;
+	}
+
+	/**
+	 * @return The number of bag evaluations answered from the memo
+	 */
+	public int getMemoHits(){
+		return memoHits;
+	}
+
+	/**
+	 * @return The tree decomposition the evaluation is based on
+	 */
+	public TreeDecomposition getTreeDecomposition(){
+		return td;
+	}
+
+	//--------------------------//
+	// PUBLICLY EXPOSED METHODS
+	//--------------------------//
+
+	/**
+	 * Runs the query evaluation algorithm.
+	 * @return The query result
+	 */
+	public List<Map<MyNode, MyNode>> check(){
+		return check_init(null);
+	}
+
+	/**
+	 * Runs the query evaluation algorithm. Use the extra information to bind certain GP Nodes
+	 * to specific nodes in the dataset
+	 * @param extraInfo The map of MyNode to bind to specific nodes in the dataset. The value
+	 * for each key is the value of the "id" attribute
+	 * @return The query result
+	 */
+	public List<Map<MyNode, MyNode>> check(Map<MyNode, Integer> extraInfo){
+		return check_init(extraInfo);
+	}
+
+	/**
+	 * Runs the query evaluation algorithm, and returns at most limit results.
+	 * @param limit The maximum number of results.
+	 * @return The query result
+	 */
+	public List<Map<MyNode, MyNode>> check(int limit){
+		//The limit only applies to this evaluation
+		int previous = queryResults.getLimit();
+		queryResults.setLimit(limit);
+		try {
+			return check();
+		} finally {
+			queryResults.setLimit(previous);
+		}
+	}
+
+	/**
+	 * Runs the query evaluation algorithm, and passes each result to the consumer instead of collecting the results.
+	 * The results are passed once the evaluation (which is bottom-up) is complete.
+	 * @param consumer The result consumer
+	 */
+	public void check(ResultConsumer<MyNode> consumer){
+		this.consumer = consumer;
+		try {
+			check();
+		} finally {
+			this.consumer = null;
+		}
+	}
+
+	/**
+	 * Checks if at least one match of the graph pattern exists. The result schema is ignored, so every bag stops at
+	 * its first match.
+	 * @return True if a match exists, else false.
+	 */
+	public boolean exists(){
+		return exists(null);
+	}
+
+	/**
+	 * Checks if at least one match of the graph pattern exists, with certain GP Nodes bound to specific
+	 * nodes in the dataset.
+	 * @param extraInfo The map of MyNode to bind to specific nodes in the dataset
+	 * @return True if a match exists, else false.
+	 */
+	public boolean exists(Map<MyNode, Integer> extraInfo){
+		return !evaluate(extraInfo, true).isEmpty();
+	}
+
+	/**
+	 * Sets the kill switch to true
+	 */
+	public void kill(){
+		this.killed = true;
+	}
+
+	//--------------------------//
+	// EVALUATION
+	//--------------------------//
+
+	private List<Map<MyNode, MyNode>> check_init(Map<MyNode, Integer> extraInfo){
+		//The results of a previous evaluation must not count towards this one
+		queryResults = queryResults.emptyCopy();
+
+		int top = td.size();
+		Set<Key> tuples = evaluate(extraInfo, false);
+
+		for (Key tuple : tuples){
+			if (killed){
+				break;
+			}
+			allRes++;
+
+			Map<MyNode, MyNode> assignments = new HashMap<MyNode, MyNode>();
+			for (int idx = 0; idx < outputs[top].length; idx++){
+				assignments.put(plan.getNode(outputs[top][idx]), vertices[tuple.values[idx]]);
+			}
+
+			if (consumer == null){
+				queryResults.addResult(assignments);
+				if (queryResults.isFull()){
+					break;
+				}
+			} else if (!consumer.accept(assignments)){
+				break;
+			}
+		}
+		return queryResults;
+	}
+
+	/**
+	 * Evaluates the decomposition, and returns the results of the virtual root: the matches projected onto the result
+	 * schema. In the existential mode, no node is treated as a result schema node, so the result has at most one
+	 * (empty) tuple.
+	 */
+	private Set<Key> evaluate(Map<MyNode, Integer> extraInfo, boolean existential){
+		Arrays.fill(fixed, -1);
+		if (extraInfo != null){
+			for (Map.Entry<MyNode, Integer> entry : extraInfo.entrySet()){
+				int num = plan.getNumber(entry.getKey());
+				if (num >= 0){
+					fixed[num] = entry.getValue();
+				}
+			}
+		}
+
+		root(existential);
+		return solve(td.size());
+	}
+
+	/**
+	 * Returns the results of the bag for the current binding of its separator.
+	 */
+	private Set<Key> solve(int bag){
+		Key sepKey = key(separators[bag]);
+		Set<Key> result = memos.get(bag).get(sepKey);
+		if (result != null){
+			memoHits++;
+			return result;
+		}
+
+		result = new LinkedHashSet<Key>();
+		assign(bag, 0, result);
+		if (!killed){
+			memos.get(bag).put(sepKey, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Binds the variables of the bag from the given position on. For each complete binding, evaluates the child
+	 * bags and adds the combined results.
+	 * @return True if the bag needs no further bindings (its subtree has no result schema nodes, and a match was found)
+	 */
+	private boolean assign(int bag, int pos, Set<Key> result){
+		if (killed){
+			return true;
+		}
+
+		if (pos == variables[bag].length){
+			searchSpace++;
+
+			List<Set<Key>> parts = new ArrayList<Set<Key>>();
+			for (int child : children[bag]){
+				Set<Key> part = solve(child);
+				if (part.isEmpty()){
+					return false;
+				}
+				parts.add(part);
+			}
+
+			int[] tuple = new int[outputs[bag].length];
+			for (int idx = 0; idx < ownSchema[bag].length; idx++){
+				tuple[idx] = binding[ownSchema[bag][idx]];
+			}
+			combine(parts, 0, tuple, ownSchema[bag].length, result);
+			return outputs[bag].length == 0;
+		}
+
+		Variable var = variables[bag][pos];
+		for (int id : candidates(var)){
+			if (admissible(var, id)){
+				binding[var.node] = id;
+				if (assign(bag, pos + 1, result)){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the cartesian product of the children's results (from the given child on) to the result, after the
+	 * values already in the tuple.
+	 */
+	private void combine(List<Set<Key>> parts, int part, int[] tuple, int offset, Set<Key> result){
+		if (part == parts.size()){
+			result.add(new Key(tuple.clone()));
+			return;
+		}
+		for (Key sub : parts.get(part)){
+			System.arraycopy(sub.values, 0, tuple, offset, sub.values.length);
+			combine(parts, part + 1, tuple, offset + sub.values.length, result);
+		}
+	}
+
+	/**
+	 * Returns the candidates of the variable: the neighbours of a bound node through one of its relationships
+	 * (the one with the smallest range), else the vertex given by its "id" requirement, else all of the vertices.
+	 */
+	private int[] candidates(Variable var){
+		if (fixed[var.node] >= 0){
+			return new int[]{fixed[var.node]};
+		}
+
+		if (var.rels.length == 0){
+			String id = plan.getNode(var.node).getAttribute("id");
+			if (id != null){
+				//In the in-memory dataset, the "id" of a node is its index
+				try {
+					return new int[]{Integer.parseInt(id)};
+				} catch (NumberFormatException e){
+					return new int[0];
+				}
+			}
+
+			int[] all = new int[vertices.length];
+			int count = 0;
+			for (int idx = 0; idx < vertices.length; idx++){
+				if (vertices[idx] != null){
+					all[count++] = idx;
+				}
+			}
+			return Arrays.copyOf(all, count);
+		}
+
+		//Pick the smallest range
+		int best = -1;
+		int bestStart = 0;
+		int bestEnd = 0;
+		for (int idx = 0; idx < var.rels.length; idx++){
+			IntBuffer offsets = csr.getOffsets(var.rels[idx].getIdentifier(), var.dirs[idx]);
+			int other = binding[var.others[idx]];
+			int start = other + 1 < offsets.limit() ? offsets.get(other) : 0;
+			int end = other + 1 < offsets.limit() ? offsets.get(other + 1) : 0;
+			if (best < 0 || end - start < bestEnd - bestStart){
+				best = idx;
+				bestStart = start;
+				bestEnd = end;
+			}
+		}
+		maxNeighbourhood = Math.max(maxNeighbourhood, bestEnd - bestStart);
+
+		MyRelationship rel = var.rels[best];
+		IntBuffer targets = csr.getTargets(rel.getIdentifier(), var.dirs[best]);
+		IntBuffer relIds = csr.getRelIds(rel.getIdentifier(), var.dirs[best]);
+		int[] result = new int[bestEnd - bestStart];
+		int count = 0;
+		for (int pos = bestStart; pos < bestEnd; pos++){
+			int target = targets.get(pos);
+			//The range is sorted, so the duplicates are adjacent
+			if (count > 0 && result[count - 1] == target){
+				continue;
+			}
+			if (!rel.hasAttributes() || checker == null || checker.checkRelAttrs(rel, relIds.get(pos))){
+				result[count++] = target;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Checks the candidate against the variable's attribute requirements, relationships and mex constraints with the
+	 * bound nodes of its bag, and relationships to itself.
+	 */
+	private boolean admissible(Variable var, int id){
+		if (id < 0 || id >= vertices.length || vertices[id] == null){
+			return false;
+		}
+
+		MyNode node = plan.getNode(var.node);
+		if (node.hasAttributes() && checker != null && !checker.checkNodeAttrs(node, id)){
+			return false;
+		}
+
+		for (int other : var.mex){
+			if (binding[other] == id){
+				return false;
+			}
+		}
+
+		for (int idx = 0; idx < var.rels.length; idx++){
+			int other = binding[var.others[idx]];
+			//The range of the bound node is INCOMING if the variable is the source
+			boolean source = var.dirs[idx] == MyDirection.INCOMING;
+			if (!(source ? connected(var.rels[idx], id, other) : connected(var.rels[idx], other, id))){
+				return false;
+			}
+		}
+
+		for (MyRelationship loop : var.loops){
+			if (!connected(loop, id, id)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the dataset has a relationship from src to tgt that satisfies the given relationship's type and
+	 * attributes.
+	 */
+	private boolean connected(MyRelationship rel, int src, int tgt){
+		IntBuffer offsets = csr.getOffsets(rel.getIdentifier(), MyDirection.OUTGOING);
+		if (src + 1 >= offsets.limit()){
+			return false;
+		}
+		IntBuffer targets = csr.getTargets(rel.getIdentifier(), MyDirection.OUTGOING);
+		IntBuffer relIds = csr.getRelIds(rel.getIdentifier(), MyDirection.OUTGOING);
+
+		//Binary search for the first position of tgt in the sorted range
+		int low = offsets.get(src);
+		int end = offsets.get(src + 1);
+		int high = end;
+		while (low < high){
+			int mid = (low + high) >>> 1;
+			if (targets.get(mid) < tgt){
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		for (int pos = low; pos < end && targets.get(pos) == tgt; pos++){
+			if (!rel.hasAttributes() || checker == null || checker.checkRelAttrs(rel, relIds.get(pos))){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Key key(int[] nodes){
+		int[] values = new int[nodes.length];
+		for (int idx = 0; idx < nodes.length; idx++){
+			values[idx] = binding[nodes[idx]];
+		}
+		return new Key(values);
+	}
+
+	//--------------------------//
+	// ROOTING
+	//--------------------------//
+
+	/**
+	 * Roots each tree of the decomposition at the bag with the most selective node, and prepares the bags for the
+	 * evaluation. In the existential mode, no node is treated as a result schema node.
+	 */
+	private void root(boolean existential){
+		int size = td.size();
+		int top = size;
+
+		int[] parent = new int[size + 1];
+		Arrays.fill(parent, -2);
+		List<List<Integer>> childLists = new ArrayList<List<Integer>>();
+		for (int bag = 0; bag <= size; bag++){
+			childLists.add(new ArrayList<Integer>());
+		}
+		List<Integer> order = new ArrayList<Integer>();
+
+		//Find the trees, and root each at its best bag
+		for (int start = 0; start < size; start++){
+			if (parent[start] != -2){
+				continue;
+			}
+
+			List<Integer> tree = new ArrayList<Integer>();
+			parent[start] = -1;
+			tree.add(start);
+			for (int idx = 0; idx < tree.size(); idx++){
+				for (int neighbour : td.getNeighbours(tree.get(idx))){
+					if (parent[neighbour] == -2){
+						parent[neighbour] = -1;
+						tree.add(neighbour);
+					}
+				}
+			}
+
+			int best = start;
+			for (int bag : tree){
+				if (score(bag) > score(best)){
+					best = bag;
+				}
+			}
+
+			//Orient the tree from the best bag
+			parent[best] = top;
+			childLists.get(top).add(best);
+			int first = order.size();
+			order.add(best);
+			for (int idx = first; idx < order.size(); idx++){
+				int bag = order.get(idx);
+				for (int neighbour : td.getNeighbours(bag)){
+					if (neighbour != parent[bag]){
+						parent[neighbour] = bag;
+						childLists.get(bag).add(neighbour);
+						order.add(neighbour);
+					}
+				}
+			}
+		}
+
+		children = new int[size + 1][];
+		separators = new int[size + 1][];
+		variables = new Variable[size + 1][];
+		ownSchema = new int[size + 1][];
+		outputs = new int[size + 1][];
+		memos = new ArrayList<Map<Key, Set<Key>>>();
+
+		for (int bag = 0; bag <= size; bag++){
+			memos.add(new HashMap<Key, Set<Key>>());
+
+			int[] nodes = bag == top ? new int[0] : td.getBag(bag);
+			int[] parentNodes = parent[bag] == top || bag == top ? new int[0] : td.getBag(parent[bag]);
+
+			List<Integer> sep = new ArrayList<Integer>();
+			List<Integer> rest = new ArrayList<Integer>();
+			for (int num : nodes){
+				if (Arrays.binarySearch(parentNodes, num) >= 0){
+					sep.add(num);
+				} else {
+					rest.add(num);
+				}
+			}
+			separators[bag] = toArray(sep);
+			variables[bag] = order(sep, rest);
+
+			List<Integer> own = new ArrayList<Integer>();
+			for (int num : rest){
+				if (!existential && plan.inResultSchema(num)){
+					own.add(num);
+				}
+			}
+			ownSchema[bag] = toArray(own);
+
+			//The children evaluated first are the ones with no result schema nodes, as they are cheaper to reject
+			children[bag] = toArray(childLists.get(bag));
+		}
+
+		//The outputs, and the order of the children, bottom-up
+		for (int idx = order.size() - 1; idx >= 0; idx--){
+			computeOutputs(order.get(idx));
+		}
+		computeOutputs(top);
+	}
+
+	private void computeOutputs(int bag){
+		List<Integer> existentialChildren = new ArrayList<Integer>();
+		List<Integer> otherChildren = new ArrayList<Integer>();
+		for (int child : children[bag]){
+			if (outputs[child].length == 0){
+				existentialChildren.add(child);
+			} else {
+				otherChildren.add(child);
+			}
+		}
+		existentialChildren.addAll(otherChildren);
+		children[bag] = toArray(existentialChildren);
+
+		List<Integer> out = new ArrayList<Integer>();
+		for (int num : ownSchema[bag]){
+			out.add(num);
+		}
+		for (int child : children[bag]){
+			for (int num : outputs[child]){
+				out.add(num);
+			}
+		}
+		outputs[bag] = toArray(out);
+	}
+
+	/**
+	 * Returns the selectivity score of the bag: 3 if it has a node with a fixed vertex, 2 if it has a node with an
+	 * "id" requirement, 1 if it has a node with attribute requirements, else 0.
+	 */
+	private int score(int bag){
+		int score = 0;
+		for (int num : td.getBag(bag)){
+			MyNode node = plan.getNode(num);
+			if (fixed[num] >= 0){
+				score = Math.max(score, 3);
+			} else if (node.getAttribute("id") != null){
+				score = Math.max(score, 2);
+			} else if (node.hasAttributes()){
+				score = Math.max(score, 1);
+			}
+		}
+		return score;
+	}
+
+	/**
+	 * Orders the variables of a bag: each next variable has the most relationships to the bound nodes of the bag.
+	 */
+	private Variable[] order(List<Integer> sep, List<Integer> rest){
+		List<Integer> bound = new ArrayList<Integer>(sep);
+		List<Integer> remaining = new ArrayList<Integer>(rest);
+		Variable[] result = new Variable[rest.size()];
+
+		for (int pos = 0; pos < result.length; pos++){
+			int best = -1;
+			int bestConnections = -1;
+			for (int num : remaining){
+				int connections = 0;
+				for (int other : plan.getOthers(num)){
+					if (other != num && bound.contains(other)){
+						connections++;
+					}
+				}
+				if (connections > bestConnections){
+					best = num;
+					bestConnections = connections;
+				}
+			}
+			result[pos] = new Variable(best, bound);
+			bound.add(best);
+			remaining.remove((Integer) best);
+		}
+		return result;
+	}
+
+	private static int[] toArray(List<Integer> list){
+		int[] result = new int[list.size()];
+		for (int idx = 0; idx < result.length; idx++){
+			result[idx] = list.get(idx);
+		}
+		return result;
+	}
+
+	/**
+	 * A node bound by a bag, with its relationships (and the direction from the bound node) and mex constraints to
+	 * the nodes bound before it in the bag, and its relationships to itself.
+	 */
+	private class Variable {
+		private final int node;
+		private final MyRelationship[] rels;
+		private final int[] others;
+		private final MyDirection[] dirs;
+		private final MyRelationship[] loops;
+		private final int[] mex;
+
+		private Variable(int node, List<Integer> bound){
+			this.node = node;
+
+			List<MyRelationship> relList = new ArrayList<MyRelationship>();
+			List<Integer> otherList = new ArrayList<Integer>();
+			List<MyDirection> dirList = new ArrayList<MyDirection>();
+			List<MyRelationship> loopList = new ArrayList<MyRelationship>();
+
+			MyRelationship[] nodeRels = plan.getRelationships(node);
+			int[] nodeOthers = plan.getOthers(node);
+			MyDirection[] nodeDirs = plan.getDirections(node);
+			for (int idx = 0; idx < nodeRels.length; idx++){
+				int other = nodeOthers[idx];
+				if (other == node){
+					//A loop is listed at both of its ends; check it once
+					if (nodeDirs[idx] == MyDirection.OUTGOING && !loopList.contains(nodeRels[idx])){
+						loopList.add(nodeRels[idx]);
+					}
+				} else if (bound.contains(other)){
+					relList.add(nodeRels[idx]);
+					otherList.add(other);
+					//The range of the bound node, towards this node
+					dirList.add(nodeDirs[idx] == MyDirection.OUTGOING ? MyDirection.INCOMING : MyDirection.OUTGOING);
+				}
+			}
+
+			List<Integer> mexList = new ArrayList<Integer>();
+			for (int other : plan.getMexNeighbours(node)){
+				if (other != node && bound.contains(other)){
+					mexList.add(other);
+				}
+			}
+
+			this.rels = relList.toArray(new MyRelationship[relList.size()]);
+			this.others = toArray(otherList);
+			this.dirs = dirList.toArray(new MyDirection[dirList.size()]);
+			this.loops = loopList.toArray(new MyRelationship[loopList.size()]);
+			this.mex = toArray(mexList);
+		}
+	}
+
+	/**
+	 * A tuple of vertex ids, used as a separator binding and as a (projected) result.
+	 */
+	private static class Key {
+		private final int[] values;
+		private final int hash;
+
+		private Key(int[] values){
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode(){
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj){
+			return obj instanceof Key && Arrays.equals(values, ((Key) obj).values);
+		}
+	}
+}
@@ -29,4 +29,20 @@ public interface NeighbourhoodAccess<N> {
 	public abstract boolean relationshipExists (N src, N tgt, MyRelationship rel);
 	
 	public abstract int getMaxNeighbourhood();
+	
+	/**
+	 * Starts an access session in the current thread. The accesses until the matching endSession() may share
+	 * the underlying resources (e.g. one database transaction). Sessions nest.
+	 */
+	public abstract void beginSession();
+	
+	/**
+	 * Ends the access session started by the matching beginSession().
+	 */
+	public abstract void endSession();
+	
+	/**
+	 * @return The number of queries (transactions) issued against the underlying database.
+	 */
+	public abstract int getQueryCount();
 }
@@ -0,0 +1,276 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * Holds the single, shared search state (assignments, candidates, and incoming conflicts) for the
+ * trail based search mode of the forward checking engines. Every change to the state is recorded
+ * as an undo entry on the trail. Backtracking pops the trail back to an earlier mark, instead of
+ * throwing away cloned copies of the maps.
+ */
+public class SearchTrail<N> {
+
+	//The undo operations
+	private static final byte ASSIGN = 0;			//node was assigned; remove the assignment
+	private static final byte POPULATE = 1;			//node's candidates set was created; remove it
+	private static final byte UNPOPULATE = 2;		//node's candidates set was removed; put it back
+	private static final byte REMOVE_CAND = 3;		//vertex was removed from node's candidates set; add it back
+	private static final byte RESTORE_CANDS = 4;	//node's candidates set was replaced; put the old one back
+	private static final byte CONF_NEW = 5;			//node's confIn set was created; remove it
+	private static final byte CONF_ADD = 6;			//node was added to a confIn set; remove it
+	private static final byte RESTORE_CONF = 7;		//node's confIn set was replaced; put the old one back (null = remove)
+
+	private final Map<MyNode, N> assignments;				//The current state of assignments
+	private final Map<MyNode, Set<N>> candidates;			//The current state of candidates
+	private final Map<MyNode, Set<MyNode>> confIn;			//The current state of incoming conflicts
+
+	//The trail, stored as parallel arrays to avoid allocating an object per entry
+	private byte[] ops;
+	private MyNode[] nodes;
+	private Object[] values;
+	private int size;
+
+	/**
+	 * Initializes the trail over the given state.
+	 * @param assignments The assignments map
+	 * @param candidates The candidates map
+	 * @param confIn The incoming conflicts map
+	 */
+	public SearchTrail(Map<MyNode, N> assignments, Map<MyNode, Set<N>> candidates, Map<MyNode, Set<MyNode>> confIn){
+		this.assignments = assignments;
+		this.candidates = candidates;
+		this.confIn = confIn;
+
+		ops = new byte[64];
+		nodes = new MyNode[64];
+		values = new Object[64];
+		size = 0;
+	}
+
+	/**
+	 * @return The assignments map
+	 */
+	public Map<MyNode, N> getAssignments(){
+		return assignments;
+	}
+
+	/**
+	 * @return The candidates map
+	 */
+	public Map<MyNode, Set<N>> getCandidates(){
+		return candidates;
+	}
+
+	/**
+	 * @return The incoming conflicts map
+	 */
+	public Map<MyNode, Set<MyNode>> getConfIn(){
+		return confIn;
+	}
+
+	/**
+	 * @return The current position of the trail. Pass it to undo() to restore the current state.
+	 */
+	public int mark(){
+		return size;
+	}
+
+	/**
+	 * Pops the trail back to the given mark, undoing every change recorded after it.
+	 * @param mark The mark to return to.
+	 */
+	@SuppressWarnings("unchecked")
+	public void undo(int mark){
+		while (size > mark){
+			size--;
+			MyNode node = nodes[size];
+			Object value = values[size];
+
+			switch (ops[size]){
+			case ASSIGN:
+				assignments.remove(node);
+				break;
+			case POPULATE:
+				candidates.remove(node);
+				break;
+			case UNPOPULATE:
+			case RESTORE_CANDS:
+				candidates.put(node, (Set<N>) value);
+				break;
+			case REMOVE_CAND:
+				candidates.get(node).add((N) value);
+				break;
+			case CONF_NEW:
+				confIn.remove(node);
+				break;
+			case CONF_ADD:
+				confIn.get(node).remove(value);
+				break;
+			case RESTORE_CONF:
+				if (value == null){
+					confIn.remove(node);
+				} else {
+					confIn.put(node, (Set<MyNode>) value);
+				}
+				break;
+			}
+
+			//Release the references
+			nodes[size] = null;
+			values[size] = null;
+		}
+	}
+
+	//--------------------------//
+	// RECORDED CHANGES
+	//--------------------------//
+
+	/**
+	 * Assigns the vertex to the node.
+	 * @param node The graph pattern node
+	 * @param vertex The assigned vertex
+	 */
+	public void assign(MyNode node, N vertex){
+		assignments.put(node, vertex);
+		push(ASSIGN, node, null);
+	}
+
+	/**
+	 * Creates the candidates set for the node.
+	 * @param node The graph pattern node
+	 * @param cands The new candidates set
+	 */
+	public void populate(MyNode node, Set<N> cands){
+		candidates.put(node, cands);
+		push(POPULATE, node, null);
+	}
+
+	/**
+	 * Removes the candidates set of the node (e.g. once the node is assigned).
+	 * @param node The graph pattern node
+	 */
+	public void unpopulate(MyNode node){
+		Set<N> old = candidates.remove(node);
+		if (old != null){
+			push(UNPOPULATE, node, old);
+		}
+	}
+
+	/**
+	 * Replaces the candidates set of the node with a copy of itself, so that the copy can be
+	 * modified by code that does not record its changes (e.g. ConstraintsEvaluator.mexFilter).
+	 * @param node The graph pattern node
+	 * @param copy The copy to install
+	 */
+	public void replaceCandidates(MyNode node, Set<N> copy){
+		Set<N> old = candidates.put(node, copy);
+		push(RESTORE_CANDS, node, old);
+	}
+
+	/**
+	 * Filters the candidates set of the node so that it only retains the given neighbours.
+	 * @param node The graph pattern node
+	 * @param neighbours The neighbours to retain
+	 * @return True if at least one candidate was removed, else false.
+	 */
+	public boolean retain(MyNode node, Set<N> neighbours){
+		Set<N> cands = candidates.get(node);
+		boolean filtered = false;
+
+		Iterator<N> ite = cands.iterator();
+		while (ite.hasNext()){
+			N vertex = ite.next();
+			if (!neighbours.contains(vertex)){
+				ite.remove();
+				push(REMOVE_CAND, node, vertex);
+				filtered = true;
+			}
+		}
+
+		return filtered;
+	}
+
+	/**
+	 * Saves the current confIn set of the node and installs a copy of it, so that the copy can be
+	 * modified by code that does not record its changes (e.g. ConstraintsEvaluator.mexFilter).
+	 * @param node The graph pattern node
+	 */
+	public void saveConfIn(MyNode node){
+		Set<MyNode> old = confIn.get(node);
+		if (old != null){
+			confIn.put(node, new HashSet<MyNode>(old));
+		}
+		push(RESTORE_CONF, node, old);
+	}
+
+	/**
+	 * Adds an incoming conflict to the confIn map. Also maintains the influence chains.
+	 * @param src The source node that filtered the target node's candidates set.
+	 * @param tgt The target node whose candidates set is filtered.
+	 */
+	public void addConflictIn(MyNode src, MyNode tgt){
+
+		Set<MyNode> confSet = confIn.get(tgt);
+		if (confSet == null){
+			//If the target doesn't have incoming conflicts, then create a new set
+			confSet = new HashSet<MyNode>();
+			confIn.put(tgt, confSet);
+			push(CONF_NEW, tgt, null);
+		}
+
+		addConflict(tgt, confSet, src);
+
+		//Maintain the influence chains.
+		//Add the src's confIn conflicts to the tgt's.
+		Set<MyNode> srcSet = confIn.get(src);
+		if (srcSet != null){
+			for (MyNode other : srcSet){
+				addConflict(tgt, confSet, other);
+			}
+		}
+	}
+
+	//--------------------------//
+	// HELPER METHODS
+	//--------------------------//
+
+	/**
+	 * Adds the conflict to the set, and records it only if it was not already present.
+	 */
+	private void addConflict(MyNode tgt, Set<MyNode> confSet, MyNode src){
+		if (confSet.add(src)){
+			push(CONF_ADD, tgt, src);
+		}
+	}
+
+	/**
+	 * Pushes an entry onto the trail, growing the arrays if needed.
+	 */
+	private void push(byte op, MyNode node, Object value){
+		if (size == ops.length){
+			int newLength = size * 2;
+
+			byte[] newOps = new byte[newLength];
+			MyNode[] newNodes = new MyNode[newLength];
+			Object[] newValues = new Object[newLength];
+
+			System.arraycopy(ops, 0, newOps, 0, size);
+			System.arraycopy(nodes, 0, newNodes, 0, size);
+			System.arraycopy(values, 0, newValues, 0, size);
+
+			ops = newOps;
+			nodes = newNodes;
+			values = newValues;
+		}
+
+		ops[size] = op;
+		nodes[size] = node;
+		values[size] = value;
+		size++;
+	}
+}
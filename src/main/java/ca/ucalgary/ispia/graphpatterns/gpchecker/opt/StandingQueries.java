@@ -0,0 +1,334 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.VerdictCache;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.CachedAccess;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.DSAccess;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.DSConstraintsChecker;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.LeastCandidates;
+import ca.ucalgary.ispia.graphpatterns.graph.AttributeStore;
+import ca.ucalgary.ispia.graphpatterns.graph.DataSet;
+import ca.ucalgary.ispia.graphpatterns.graph.DataSetInterface;
+import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
+import ca.ucalgary.ispia.graphpatterns.graph.GraphStatistics;
+import ca.ucalgary.ispia.graphpatterns.graph.HasAttributes;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
+import ca.ucalgary.ispia.graphpatterns.graph.QueryPlan;
+
+/**
+ * Keeps the results of a set of standing graph patterns (e.g. the policies of a system) up to date, as
+ * relationships are added to and removed from the in-memory dataset. The results of a pattern are materialized
+ * once, when it is registered; after that, only the delta of each update is computed, with GPCheckerFCLBJ:
+ * 1. Insertion: the new matches are the ones that map a pattern relationship onto the new relationship. For each
+ *    pattern relationship of the same type, the search is seeded with its source and target bound to the
+ *    endpoints of the new relationship. The results not already in the view are added.
+ * 2. Deletion: the results that may be lost are the ones with a match that maps a pattern relationship onto the
+ *    removed relationship (found in the same way, before the removal). After the removal, each of these results
+ *    is checked again, with its result schema nodes bound; the results without a remaining match are removed.
+ *
+ * The updates must go through this class, which applies them to both the DataSet and the DataSetInterface. As
+ * with DSAccess, the relationship attribute requirements are not checked, and as with GPCheckerFCLBJ, the self
+ * loops of the patterns are not checked either (so they never match an update).
+ */
+public class StandingQueries {
+
+	private final DataSet dataSet;						//The dataset (keeps the relationships)
+	private final DataSetInterface dsi;					//The adjacency matrices, searched by the checkers
+	private final AttributeStore nodeAttrs;				//The node attributes, by node id
+	private final AttributeStore relAttrs;				//The relationship attributes, by relationship id
+	private final AltStart<MyNode> altStart;			//Seeds the initial evaluation of the unanchored patterns
+	private final Map<GPHolder, Standing> standing;		//The registered patterns, in registration order
+
+	private GraphStatistics statistics = null;			//The statistics kept in step with the updates; null for none
+	private VerdictCache verdictCache = null;			//The verdicts invalidated by the updates; null for none
+	private CachedAccess<MyNode> cachedAccess = null;	//The neighbourhoods invalidated by the updates; null for none
+
+	private long deltaSearches = 0;						//The number of seeded searches run for the updates
+
+	/**
+	 * Initializes the instance variables.
+	 * @param dataSet The dataset
+	 * @param dsi The adjacency matrices of the dataset
+	 * @param nodeAttrs The node attributes, by node id
+	 * @param relAttrs The relationship attributes, by relationship id
+	 * @param altStart Populates the candidates of the patterns without an "id" requirement, for their initial
+	 * evaluation (e.g. IndexBasedStart); may be null if every pattern has one
+	 */
+	public StandingQueries(DataSet dataSet, DataSetInterface dsi, AttributeStore nodeAttrs, AttributeStore relAttrs, AltStart<MyNode> altStart){
+		this.dataSet = dataSet;
+		this.dsi = dsi;
+		this.nodeAttrs = nodeAttrs;
+		this.relAttrs = relAttrs;
+		this.altStart = altStart;
+		this.standing = new LinkedHashMap<GPHolder, Standing>();
+	}
+
+	/**
+	 * Sets the graph statistics, which are then updated with each relationship added or removed.
+	 * @param statistics The statistics; null for none
+	 */
+	public synchronized void setStatistics(GraphStatistics statistics){
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Sets the verdict cache, whose epoch is then advanced by each update.
+	 * @param verdictCache The verdict cache; null for none
+	 */
+	public synchronized void setVerdictCache(VerdictCache verdictCache){
+		this.verdictCache = verdictCache;
+	}
+
+	/**
+	 * Sets the neighbourhood cache (over the same dataset), whose expansions of the source and the target are then
+	 * invalidated by each update.
+	 * @param cachedAccess The neighbourhood cache; null for none
+	 */
+	public synchronized void setCachedAccess(CachedAccess<MyNode> cachedAccess){
+		this.cachedAccess = cachedAccess;
+	}
+
+	/**
+	 * Registers the graph pattern, and materializes its results.
+	 * @param gph The graph pattern
+	 * @return The current results of the graph pattern
+	 */
+	public synchronized List<Map<MyNode, MyNode>> register(GPHolder gph){
+		Standing query = standing.get(gph);
+		if (query == null){
+			query = new Standing(QueryPlan.compile(gph));
+			List<Map<MyNode, MyNode>> results = query.newChecker(altStart).check();
+			if (results != null){
+				query.view.addAll(results);
+			}
+			standing.put(gph, query);
+		}
+		return new ArrayList<Map<MyNode, MyNode>>(query.view);
+	}
+
+	/**
+	 * Unregisters the graph pattern, and drops its results.
+	 * @param gph The graph pattern
+	 * @return True if the graph pattern was registered, else false.
+	 */
+	public synchronized boolean unregister(GPHolder gph){
+		return standing.remove(gph) != null;
+	}
+
+	/**
+	 * Returns the current results of the graph pattern.
+	 * @param gph The graph pattern
+	 * @return The results, or null if the graph pattern is not registered
+	 */
+	public synchronized List<Map<MyNode, MyNode>> getResults(GPHolder gph){
+		Standing query = standing.get(gph);
+		return query == null ? null : new ArrayList<Map<MyNode, MyNode>>(query.view);
+	}
+
+	/**
+	 * Adds the relationship to the dataset, and updates the results of the registered patterns.
+	 * @param rel The relationship; its source and target must already be in the dataset
+	 * @return The new results of each registered pattern (empty lists for the patterns without new results). An
+	 * equal relationship (same source, target, type and attributes) already in the dataset is not added again.
+	 */
+	public synchronized Map<GPHolder, List<Map<MyNode, MyNode>>> addRelationship(MyRelationship rel){
+		Map<GPHolder, List<Map<MyNode, MyNode>>> delta = new LinkedHashMap<GPHolder, List<Map<MyNode, MyNode>>>();
+
+		//The DataSet keeps one of the equal relationships, so adding it again changes nothing
+		Set<MyRelationship> outgoing = dataSet.getOutgoingRels().get(rel.getSource());
+		if (outgoing != null && outgoing.contains(rel)){
+			for (GPHolder gph : standing.keySet()){
+				delta.put(gph, new ArrayList<Map<MyNode, MyNode>>());
+			}
+			return delta;
+		}
+
+		//A parallel relationship of the same type already connects the nodes for the checkers
+		boolean connected = hasParallel(rel, null);
+
+		dsi.addRelationship(rel);
+		dataSet.addRelationship(rel);
+		updated(rel, true);
+
+		for (Map.Entry<GPHolder, Standing> entry : standing.entrySet()){
+			Standing query = entry.getValue();
+			List<Map<MyNode, MyNode>> added = new ArrayList<Map<MyNode, MyNode>>();
+			if (!connected){
+				for (Map<MyNode, MyNode> result : query.matchesOn(rel)){
+					if (query.view.add(result)){
+						added.add(result);
+					}
+				}
+			}
+			delta.put(entry.getKey(), added);
+		}
+		return delta;
+	}
+
+	/**
+	 * Removes the relationship from the dataset, and updates the results of the registered patterns.
+	 * @param rel The relationship
+	 * @return The lost results of each registered pattern (empty lists for the patterns without lost results),
+	 * or null if the relationship was not in the dataset
+	 */
+	public synchronized Map<GPHolder, List<Map<MyNode, MyNode>>> removeRelationship(MyRelationship rel){
+		Set<MyRelationship> outgoing = dataSet.getOutgoingRels().get(rel.getSource());
+		if (outgoing == null || !outgoing.contains(rel)){
+			return null;
+		}
+
+		//The checkers do not see parallel relationships, so the nodes stay connected if one remains
+		boolean connected = hasParallel(rel, rel);
+
+		//The results that may depend on the relationship, found while it is still there
+		Map<GPHolder, Set<Map<MyNode, MyNode>>> affected = new HashMap<GPHolder, Set<Map<MyNode, MyNode>>>();
+		if (!connected){
+			for (Map.Entry<GPHolder, Standing> entry : standing.entrySet()){
+				affected.put(entry.getKey(), entry.getValue().matchesOn(rel));
+			}
+		}
+
+		dataSet.removeRelationship(rel);
+		if (!connected){
+			dsi.removeRelationship(rel);
+		}
+		updated(rel, false);
+
+		Map<GPHolder, List<Map<MyNode, MyNode>>> delta = new LinkedHashMap<GPHolder, List<Map<MyNode, MyNode>>>();
+		for (Map.Entry<GPHolder, Standing> entry : standing.entrySet()){
+			Standing query = entry.getValue();
+			List<Map<MyNode, MyNode>> lost = new ArrayList<Map<MyNode, MyNode>>();
+			if (!connected){
+				for (Map<MyNode, MyNode> result : affected.get(entry.getKey())){
+					if (query.view.contains(result) && !query.stillMatches(result)){
+						query.view.remove(result);
+						lost.add(result);
+					}
+				}
+			}
+			delta.put(entry.getKey(), lost);
+		}
+		return delta;
+	}
+
+	/**
+	 * @return The number of seeded searches run for the updates so far
+	 */
+	public synchronized long getDeltaSearches(){
+		return deltaSearches;
+	}
+
+	//--------------------------//
+	// HELPER METHODS
+	//--------------------------//
+
+	/**
+	 * Checks if the dataset has another relationship with the same type, source and target as rel.
+	 * @param rel The relationship
+	 * @param except The relationship to ignore; null for none
+	 */
+	private boolean hasParallel(MyRelationship rel, MyRelationship except){
+		Set<MyRelationship> rels = dataSet.getOutgoingRels().get(rel.getSource());
+		if (rels == null){
+			return false;
+		}
+		for (MyRelationship other : rels){
+			if (!other.equals(except) && other.getIdentifier() == rel.getIdentifier() && other.getTarget().equals(rel.getTarget())){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Keeps the statistics, the verdict cache and the neighbourhood cache in step with an update.
+	 */
+	private void updated(MyRelationship rel, boolean added){
+		if (statistics != null){
+			if (added){
+				statistics.addRelationship(rel);
+			} else {
+				statistics.removeRelationship(rel);
+			}
+		}
+		if (verdictCache != null){
+			verdictCache.advanceEpoch();
+		}
+		if (cachedAccess != null){
+			cachedAccess.invalidate(rel.getSource());
+			cachedAccess.invalidate(rel.getTarget());
+		}
+	}
+
+	/**
+	 * A registered pattern: its compiled plan and checkers' dependencies, and its current results.
+	 */
+	private class Standing {
+		private final QueryPlan plan;
+		private final DSConstraintsChecker consChecker;
+		private final DSAccess access;
+		private final Set<Map<MyNode, MyNode>> view;	//The current results
+
+		private Standing(QueryPlan plan){
+			this.plan = plan;
+			this.consChecker = new DSConstraintsChecker(plan, nodeAttrs, relAttrs);
+			this.access = new DSAccess(dsi, consChecker);
+			this.view = new LinkedHashSet<Map<MyNode, MyNode>>();
+		}
+
+		/**
+		 * Creates a checker for one search; the checkers keep the results of their search, so they are not reused.
+		 */
+		private GPCheckerFCLBJ<MyNode, HasAttributes> newChecker(AltStart<MyNode> start){
+			VariableOrdering<MyNode> variableOrdering = new LeastCandidates<MyNode>(plan.getGPHolder().getGp());
+			return new GPCheckerFCLBJ<MyNode, HasAttributes>(plan, consChecker, access, variableOrdering, start);
+		}
+
+		/**
+		 * Returns the results of the matches that map a pattern relationship onto the given relationship.
+		 */
+		private Set<Map<MyNode, MyNode>> matchesOn(MyRelationship rel){
+			Set<Map<MyNode, MyNode>> results = new LinkedHashSet<Map<MyNode, MyNode>>();
+
+			for (MyRelationship patternRel : plan.getGPHolder().getGp().getAllRelationships()){
+				//The self loops are not checked by GPCheckerFCLBJ
+				if (patternRel.getIdentifier() != rel.getIdentifier() || patternRel.getSource().equals(patternRel.getTarget())){
+					continue;
+				}
+
+				//Seed the search with the endpoints of the relationship
+				Map<MyNode, Integer> extraInfo = new HashMap<MyNode, Integer>();
+				extraInfo.put(patternRel.getSource(), rel.getSource().getId());
+				extraInfo.put(patternRel.getTarget(), rel.getTarget().getId());
+
+				deltaSearches++;
+				List<Map<MyNode, MyNode>> found = newChecker(null).check(extraInfo);
+				if (found != null){
+					results.addAll(found);
+				}
+			}
+			return results;
+		}
+
+		/**
+		 * Checks if the result still has a match, with its result schema nodes bound.
+		 */
+		private boolean stillMatches(Map<MyNode, MyNode> result){
+			Map<MyNode, Integer> extraInfo = new HashMap<MyNode, Integer>();
+			for (Map.Entry<MyNode, MyNode> entry : result.entrySet()){
+				extraInfo.put(entry.getKey(), entry.getValue().getId());
+			}
+
+			deltaSearches++;
+			return newChecker(null).exists(extraInfo);
+		}
+	}
+}
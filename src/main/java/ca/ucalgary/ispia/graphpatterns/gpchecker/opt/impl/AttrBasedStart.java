@@ -6,10 +6,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.neo4j.graphdb.Entity;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.ResourceIterator;
-import org.neo4j.graphdb.Transaction;
 
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.AltStart;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.ConstraintsEvaluator;
@@ -26,16 +26,27 @@ public class AttrBasedStart implements AltStart<Node>{
 	
 	
 	private final GraphDatabaseService graphDb;					//GraphDatabaseService: Provides access to database
-	private final ConstraintsEvaluator constraintsEvaluator;	//ConstraintsEvaluator: Provides access to constraints evaluator component.
+	private final DBSession session;							//DBSession: Scopes the transactions
+	private final ConstraintsEvaluator<Node, Entity> constraintsEvaluator;	//ConstraintsEvaluator: Provides access to constraints evaluator component.
 	
 	/**
 	 * Initializes the instance variables.
 	 * @param graphDb The graph database service
 	 * @param constraintsChecker The constraints checker module
 	 */
-	public AttrBasedStart(GraphDatabaseService graphDb, ConstraintsEvaluator constraintsEvaluator){
+	public AttrBasedStart(GraphDatabaseService graphDb, ConstraintsEvaluator<Node, Entity> constraintsEvaluator){
+		this(new DBSession(graphDb), constraintsEvaluator);
+	}
+	
+	/**
+	 * Initializes the instance variables.
+	 * @param session The database session, shared with the constraints checker module
+	 * @param constraintsChecker The constraints checker module
+	 */
+	public AttrBasedStart(DBSession session, ConstraintsEvaluator<Node, Entity> constraintsEvaluator){
 		//Assign the instance variables.
-		this.graphDb = graphDb;
+		this.graphDb = session.getGraphDb();
+		this.session = session;
 		this.constraintsEvaluator = constraintsEvaluator;
 	}
 	
@@ -64,7 +75,8 @@ public class AttrBasedStart implements AltStart<Node>{
 				List<String> keys = new ArrayList<String>();
 				keys.addAll(attrs.keySet());
 				
-				try (Transaction tx = graphDb.beginTx()){
+				session.begin();
+				try {
 					
 					//Get the first required attribute, and query the database
 					//for nodes that can satisfy the attribute requirement
@@ -99,12 +111,12 @@ public class AttrBasedStart implements AltStart<Node>{
 					//If the nodeCads list is empty, meaning no vertex could satisfy the attribute requirements attrBasedPop(candidates))
 					//for the node, then return false.
 					if (nodeCads.isEmpty()){
-						tx.success();
 						return false;
 					}
 					//Otherwise, update the candidates map
 					candidates.put(node, nodeCads);
-					tx.success();
+				} finally {
+					session.end();
 				}
 			}
 		}
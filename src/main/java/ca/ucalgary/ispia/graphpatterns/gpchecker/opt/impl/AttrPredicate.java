@@ -0,0 +1,117 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.Map;
+
+import org.neo4j.graphdb.Entity;
+
+import ca.ucalgary.ispia.graphpatterns.graph.HasAttributes;
+import ca.ucalgary.ispia.graphpatterns.util.AttributeTypes;
+
+/**
+ * The attribute requirements of a graph pattern node or relationship, compiled into a typed predicate.
+ * The property keys are resolved, and the required values of the int typed attributes are parsed, once.
+ * Testing an entity reads its properties and compares them against the constants, without parsing
+ * or building strings (except for comparing a non-String property to a String requirement).
+ *
+ * The comparison semantics are the same as the uncompiled check: an int typed requirement with an int value
+ * matches an Integer property with the same value; any other requirement matches a property whose string
+ * form is the required value (int typed requirements with a non-int value only match String properties).
+ */
+public class AttrPredicate {
+
+	private static final byte INT_VALUE = 0;		//Compare as an int, against an Integer property
+	private static final byte EXACT_VALUE = 1;		//The property must equal the required String
+	private static final byte STRING_VALUE = 2;		//The string form of the property must equal the required String
+
+	private final String[] keys;		//The property keys
+	private final byte[] kinds;			//The comparison kind of each key
+	private final int[] intVals;		//The parsed int requirement of each key (for INT_VALUE)
+	private final String[] strVals;		//The required value of each key
+
+	/**
+	 * Compiles the attribute requirements of the given entity.
+	 * @param source The MyNode or MyRelationship object from gp.
+	 */
+	public AttrPredicate(HasAttributes source){
+		Map<String, String> attrReqs = source.getAttributes();
+		int size = attrReqs.size();
+
+		keys = new String[size];
+		kinds = new byte[size];
+		intVals = new int[size];
+		strVals = new String[size];
+
+		int idx = 0;
+		for (Map.Entry<String, String> entry : attrReqs.entrySet()){
+			keys[idx] = entry.getKey();
+			strVals[idx] = entry.getValue();
+
+			if (AttributeTypes.isIntType(keys[idx])){
+				try {
+					intVals[idx] = Integer.parseInt(strVals[idx]);
+					kinds[idx] = INT_VALUE;
+				} catch (NumberFormatException e){
+					kinds[idx] = EXACT_VALUE;
+				}
+			} else {
+				kinds[idx] = STRING_VALUE;
+			}
+			idx++;
+		}
+	}
+
+	/**
+	 * @return True if there are no attribute requirements.
+	 */
+	public boolean isEmpty(){
+		return keys.length == 0;
+	}
+
+	/**
+	 * Checks if the given entity has the required attributes. Must be called inside a transaction.
+	 * @param target The Node or Relationship object from the database.
+	 * @return true if the target can satisfy the required attributes, else false.
+	 */
+	public boolean test(Entity target){
+		if (keys.length == 0){
+			return true;
+		}
+		if (keys.length == 1){
+			return matches(0, target.getProperty(keys[0], null));
+		}
+
+		//Read all required properties at once
+		Map<String, Object> vals = target.getProperties(keys);
+		for (int idx = 0; idx < keys.length; idx++){
+			if (!matches(idx, vals.get(keys[idx]))){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the property value satisfies the idx'th requirement.
+	 */
+	private boolean matches(int idx, Object val){
+		if (val == null){
+			//The target does not have the required attribute/property
+			return false;
+		}
+
+		switch (kinds[idx]){
+		case INT_VALUE:
+			if (val instanceof Integer){
+				return ((Integer) val).intValue() == intVals[idx];
+			}
+			return strVals[idx].equals(val);
+		case EXACT_VALUE:
+			return strVals[idx].equals(val);
+		default:
+			if (val instanceof String){
+				return strVals[idx].equals(val);
+			}
+			return strVals[idx].equals(String.valueOf(val));
+		}
+	}
+}
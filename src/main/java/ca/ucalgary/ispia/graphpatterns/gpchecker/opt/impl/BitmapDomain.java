@@ -0,0 +1,154 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.SortedIdSet;
+import ca.ucalgary.ispia.graphpatterns.util.IdBitmap;
+
+/**
+ * A set of dataset nodes backed by a compressed bitmap of their ids. The node ids must be valid
+ * indexes in the lookup array (as in DataSetInterface, where the id of a node is its index).
+ * retainAll and containsAll against another BitmapDomain run on the bitmaps directly.
+ */
+public class BitmapDomain extends AbstractSet<MyNode>{
+
+	private final MyNode[] nodes;	//The lookup from id to node
+	private final IdBitmap bits;	//The ids in the set
+
+	/**
+	 * Creates an empty set.
+	 * @param nodes The lookup from id to node
+	 */
+	public BitmapDomain(MyNode[] nodes){
+		this(nodes, new IdBitmap());
+	}
+
+	/**
+	 * Creates a set over the given bitmap. The bitmap is not copied.
+	 * @param nodes The lookup from id to node
+	 * @param bits The ids in the set
+	 */
+	public BitmapDomain(MyNode[] nodes, IdBitmap bits){
+		this.nodes = nodes;
+		this.bits = bits;
+	}
+
+	/**
+	 * @return The bitmap of ids backing this set
+	 */
+	public IdBitmap getBits(){
+		return bits;
+	}
+
+	@Override
+	public int size(){
+		return bits.cardinality();
+	}
+
+	@Override
+	public boolean isEmpty(){
+		return bits.isEmpty();
+	}
+
+	@Override
+	public boolean contains(Object obj){
+		if (obj instanceof MyNode){
+			return bits.contains(((MyNode) obj).getId());
+		}
+		return false;
+	}
+
+	@Override
+	public boolean add(MyNode node){
+		int id = node.getId();
+		if (id >= nodes.length || nodes[id] == null){
+			throw new IllegalArgumentException("Node is not in the dataset: " + id);
+		}
+		return bits.add(id);
+	}
+
+	@Override
+	public boolean remove(Object obj){
+		if (obj instanceof MyNode){
+			return bits.remove(((MyNode) obj).getId());
+		}
+		return false;
+	}
+
+	@Override
+	public void clear(){
+		bits.clear();
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> other){
+		return bits.and(toBitmap(other));
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> other){
+		if (other instanceof BitmapDomain){
+			return bits.containsAll(((BitmapDomain) other).bits);
+		}
+		return super.containsAll(other);
+	}
+
+	@Override
+	public Iterator<MyNode> iterator(){
+		return new Iterator<MyNode>(){
+			private int next = bits.nextSetBit(0);
+			private int last = -1;
+
+			@Override
+			public boolean hasNext(){
+				return next >= 0;
+			}
+
+			@Override
+			public MyNode next(){
+				if (next < 0){
+					throw new NoSuchElementException();
+				}
+				last = next;
+				next = bits.nextSetBit(next + 1);
+				return nodes[last];
+			}
+
+			@Override
+			public void remove(){
+				if (last < 0){
+					throw new IllegalStateException();
+				}
+				bits.remove(last);
+				last = -1;
+			}
+		};
+	}
+
+	/**
+	 * Returns the ids of the given collection as a bitmap. If the collection is a BitmapDomain, its
+	 * bitmap is returned without copying. If it is a SortedIdSet, the bitmap is built from its sorted range.
+	 * @param other The collection of nodes
+	 * @return The bitmap of the node ids
+	 */
+	public static IdBitmap toBitmap(Collection<?> other){
+		if (other instanceof BitmapDomain){
+			return ((BitmapDomain) other).bits;
+		}
+		if (other instanceof SortedIdSet){
+			return ((SortedIdSet) other).toBitmap();
+		}
+
+		IdBitmap result = new IdBitmap();
+		for (Object obj : other){
+			if (obj instanceof MyNode){
+				result.add(((MyNode) obj).getId());
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,45 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.Collection;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.CandidateDomains;
+import ca.ucalgary.ispia.graphpatterns.graph.DataSetInterface;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * Candidates sets backed by compressed bitmaps of node ids. Only for the in-memory backend, where
+ * the node ids are dense array indexes (DataSetInterface).
+ */
+public class BitmapDomains implements CandidateDomains<MyNode>{
+
+	private final MyNode[] nodes;	//The lookup from id to node
+
+	/**
+	 * Initializes the instance variables.
+	 * @param dataset The dataset; its nodes array is used as the lookup from id to node.
+	 */
+	public BitmapDomains(DataSetInterface dataset){
+		this(dataset.getNodes());
+	}
+
+	/**
+	 * Initializes the instance variables.
+	 * @param nodes The lookup from id to node
+	 */
+	public BitmapDomains(MyNode[] nodes){
+		this.nodes = nodes;
+	}
+
+	/**
+	 * Creates a new BitmapDomain containing the given vertices.
+	 * @param vertices The vertices to copy into the new set.
+	 * @return The new candidates set.
+	 */
+	public Set<MyNode> copyOf(Collection<MyNode> vertices){
+		if (vertices instanceof BitmapDomain){
+			return new BitmapDomain(nodes, ((BitmapDomain) vertices).getBits().copy());
+		}
+		return new BitmapDomain(nodes, BitmapDomain.toBitmap(vertices));
+	}
+}
@@ -0,0 +1,164 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.nio.IntBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.NeighbourhoodAccess;
+import ca.ucalgary.ispia.graphpatterns.graph.DataSetCSR;
+import ca.ucalgary.ispia.graphpatterns.graph.MyDirection;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
+
+/**
+ * This class provides the wrapper for querying the compressed (CSR) adjacency store of an in-memory dataset.
+ * The neighbourhoods are returned as read-only views over the sorted ranges, so the callers must copy them
+ * before modifying them (the engines already do, through the CandidateDomains).
+ *
+ * If a DSConstraintsChecker is given, the vertex and relationship attribute requirements are checked against
+ * its attribute stores (through the relationship ids of the adjacency), and the constrained neighbourhoods
+ * are returned as filtered copies.
+ */
+public class CSRAccess implements NeighbourhoodAccess<MyNode>{
+
+	private DataSetCSR dataset;
+	private DSConstraintsChecker constraintsChecker;	//Checks the attribute requirements; null to ignore them
+	private volatile int maxNeighbourhood;
+
+	/**
+	 * Initilizes the instance variables.
+	 * @param dataset The compressed adjacency store
+	 */
+	public CSRAccess (DataSetCSR dataset){
+		this(dataset, null);
+	}
+
+	/**
+	 * Initilizes the instance variables.
+	 * @param dataset The compressed adjacency store
+	 * @param constraintsChecker Checks the attribute requirements against the attribute stores; null to ignore them
+	 */
+	public CSRAccess (DataSetCSR dataset, DSConstraintsChecker constraintsChecker){
+		//Initialize the instance variables
+		this.dataset = dataset;
+		this.constraintsChecker = constraintsChecker;
+		this.maxNeighbourhood = 0;
+	}
+
+	public int getMaxNeighbourhood(){
+		return maxNeighbourhood;
+	}
+
+	public void beginSession(){
+		//The in-memory dataset does not need sessions
+	}
+
+	public void endSession(){
+	}
+
+	public int getQueryCount(){
+		//No database queries for the in-memory dataset
+		return 0;
+	}
+
+	/**
+	 * Returns the set of neighbours, for the given node (with assigned vertex) and the relationship, that satisfy all required constraints.
+	 * @param rel The target relationship. Used to specifying the relationship direction and the relationship attribute requirements.
+	 * @param node The gp node. Used for specifying the relationship direction and the node attribute requirements.
+	 * @param vertex The vertex assigned to the node. Used for actually querying the database.
+	 * @return The set of neighbours that satisfy the associated constraints.
+	 */
+	public Set<MyNode> findNeighbours(MyRelationship rel, MyNode node, MyNode vertex){
+
+		//Get the direction
+		MyDirection dir = null;
+		if (rel.getSource().equals(node)){
+			dir = MyDirection.OUTGOING;
+		} else {
+			dir = MyDirection.INCOMING;
+		}
+
+		Set<MyNode> result = null;
+		MyNode otherNode = rel.getOther(node);
+		if (constraintsChecker != null && (rel.hasAttributes() || otherNode.hasAttributes())){
+			result = filterNeighbours(rel, otherNode, vertex, dir);
+		} else {
+			result = dataset.getNeighbours(vertex, rel.getIdentifier(), dir);
+		}
+
+		int size = result.size();
+		//Synchronized, as the parallel mode of the checkers queries from multiple threads
+		if (size > maxNeighbourhood){
+			synchronized (this){
+				if (size > maxNeighbourhood){
+					maxNeighbourhood = size;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	public MyNode findNode(MyNode src) {
+		return findNode(src, Integer.parseInt(src.getAttribute("id")));
+	}
+
+	@Override
+	public MyNode findNode(MyNode src, Integer id) {
+		MyNode tgt = dataset.findNode(id);
+
+		if (tgt != null && constraintsChecker != null && !constraintsChecker.checkNodeAttrs(src, tgt.getId())){
+			//If other attr requirements fail, then tgt is not the correct node
+			tgt = null;
+		}
+		return tgt;
+	}
+
+	@Override
+	public boolean relationshipExists(MyNode src, MyNode tgt, MyRelationship rel) {
+		if (constraintsChecker != null && rel.hasAttributes()){
+			//Check the relationship attributes of the parallel relationships
+			IntBuffer offsets = dataset.getOffsets(rel.getIdentifier(), MyDirection.OUTGOING);
+			IntBuffer targets = dataset.getTargets(rel.getIdentifier(), MyDirection.OUTGOING);
+			IntBuffer relIds = dataset.getRelIds(rel.getIdentifier(), MyDirection.OUTGOING);
+			if (src.getId() + 1 >= offsets.limit()){
+				return false;
+			}
+			for (int idx = offsets.get(src.getId()); idx < offsets.get(src.getId() + 1); idx++){
+				if (targets.get(idx) == tgt.getId() && constraintsChecker.checkRelAttrs(rel, relIds.get(idx))){
+					return true;
+				}
+			}
+			return false;
+		}
+
+		//Binary search in src's sorted outgoing range
+		return dataset.hasRelationship(src.getId(), tgt.getId(), rel.getIdentifier());
+	}
+
+	/**
+	 * Returns the neighbours of the vertex through the relationships that satisfy the relationship
+	 * attribute requirements, and that satisfy the neighbour attribute requirements.
+	 */
+	private Set<MyNode> filterNeighbours(MyRelationship rel, MyNode otherNode, MyNode vertex, MyDirection dir){
+		Set<MyNode> neighbours = new HashSet<MyNode>();
+		MyNode[] nodes = dataset.getNodes();
+		int id = vertex.getId();
+
+		IntBuffer offsets = dataset.getOffsets(rel.getIdentifier(), dir);
+		IntBuffer targets = dataset.getTargets(rel.getIdentifier(), dir);
+		IntBuffer relIds = dataset.getRelIds(rel.getIdentifier(), dir);
+		if (id + 1 >= offsets.limit()){
+			return neighbours;
+		}
+
+		for (int idx = offsets.get(id); idx < offsets.get(id + 1); idx++){
+			int target = targets.get(idx);
+			if (constraintsChecker.checkRelAttrs(rel, relIds.get(idx)) && constraintsChecker.checkNodeAttrs(otherNode, target)){
+				neighbours.add(nodes[target]);
+			}
+		}
+		return neighbours;
+	}
+}
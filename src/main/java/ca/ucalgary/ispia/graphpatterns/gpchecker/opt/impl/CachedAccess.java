@@ -0,0 +1,294 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.NeighbourhoodAccess;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
+import ca.ucalgary.ispia.graphpatterns.graph.RelType;
+
+/**
+ * A caching decorator for a NeighbourhoodAccess (e.g. DBAccess or DSAccess). The same neighbourhood expansion,
+ * i.e. the same (vertex, relationship type, direction, relationship attribute requirements, neighbour attribute
+ * requirements), is requested repeatedly across the sibling branches of the search, and across the queries of
+ * a batch. The cache keeps the expansions in LRU order, bounded by their total size (the number of neighbours
+ * cached), and evicts the least recently used expansions once the bound is exceeded.
+ *
+ * The cached neighbourhoods are shared between the callers, so the returned sets must not be modified. They are
+ * returned as the decorated access created them (not wrapped), so that the candidate domains still recognize
+ * their own set types (e.g. BitmapDomain, SortedIdSet). The cache does not observe the graph: whoever modifies
+ * the graph must call invalidate(...) for the affected vertices (or invalidate() for everything). StandingQueries
+ * does so for its updates, once given the cache (setCachedAccess).
+ * The cache is thread safe; the expansions themselves are computed outside the lock. An expansion whose
+ * computation overlaps an invalidation is returned, but not cached, as it may predate the modification.
+ */
+public class CachedAccess<N> implements NeighbourhoodAccess<N>{
+
+	private final NeighbourhoodAccess<N> access;				//The decorated neighbourhood access
+	private final long capacity;								//The maximum total weight of the cached expansions
+	private final LinkedHashMap<Key<N>, Set<N>> cache;			//The cached expansions, in LRU order
+
+	private long weight;										//The total weight of the cached expansions
+	private long generation;									//Incremented by each invalidation
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Initializes the instance variables.
+	 * @param access The neighbourhood access to decorate
+	 * @param capacity The maximum total weight of the cached expansions. The weight of an expansion is
+	 * the number of neighbours + 1.
+	 */
+	public CachedAccess(NeighbourhoodAccess<N> access, long capacity){
+		this.access = access;
+		this.capacity = capacity;
+		//Access ordered, so that the iteration order is from the least recently used
+		this.cache = new LinkedHashMap<Key<N>, Set<N>>(16, 0.75f, true);
+		this.weight = 0;
+		this.generation = 0;
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+	}
+
+	/**
+	 * @return The decorated neighbourhood access
+	 */
+	public NeighbourhoodAccess<N> getAccess(){
+		return access;
+	}
+
+	//--------------------------//
+	// NEIGHBOURHOOD ACCESS
+	//--------------------------//
+
+	/**
+	 * Returns the set of neighbours from the cache, or from the decorated access if not cached.
+	 * @param rel The target relationship. Used to specifying the relationship direction and the relationship attribute requirements.
+	 * @param node The gp node. Used for specifying the relationship direction and the node attribute requirements.
+	 * @param vertex The vertex assigned to the node. Used for actually querying the database.
+	 * @return The set of neighbours that satisfy the associated constraints. The set must not be modified.
+	 */
+	public Set<N> findNeighbours(MyRelationship rel, MyNode node, N vertex){
+		Key<N> key = new Key<N>(vertex, rel, node);
+		long missGeneration;
+
+		synchronized (this){
+			Set<N> neighbours = cache.get(key);
+			if (neighbours != null){
+				hits++;
+				return neighbours;
+			}
+			misses++;
+			missGeneration = generation;
+		}
+
+		//Compute the expansion outside the lock
+		Set<N> neighbours = access.findNeighbours(rel, node, vertex);
+		long entryWeight = neighbours.size() + 1;
+
+		//Expansions larger than the whole cache are not cached
+		if (entryWeight <= capacity){
+			synchronized (this){
+				//An invalidation since the miss may have removed this very expansion, so do not put it back
+				if (generation != missGeneration){
+					return neighbours;
+				}
+
+				//Copy the attribute requirements, so that the stored key does not change with the gp
+				Set<N> old = cache.put(key.detach(), neighbours);
+				if (old != null){
+					weight -= old.size() + 1;
+				}
+				weight += entryWeight;
+				evict();
+			}
+		}
+
+		return neighbours;
+	}
+
+	public N findNode(MyNode src){
+		return access.findNode(src);
+	}
+
+	public N findNode(MyNode src, Integer id){
+		return access.findNode(src, id);
+	}
+
+	public boolean relationshipExists (N src, N tgt, MyRelationship rel){
+		return access.relationshipExists(src, tgt, rel);
+	}
+
+	public int getMaxNeighbourhood(){
+		return access.getMaxNeighbourhood();
+	}
+
+	public void beginSession(){
+		access.beginSession();
+	}
+
+	public void endSession(){
+		access.endSession();
+	}
+
+	public int getQueryCount(){
+		return access.getQueryCount();
+	}
+
+	//--------------------------//
+	// INVALIDATION
+	//--------------------------//
+
+	/**
+	 * Removes all cached expansions. Call when the graph is modified.
+	 */
+	public synchronized void invalidate(){
+		generation++;
+		cache.clear();
+		weight = 0;
+	}
+
+	/**
+	 * Removes the cached expansions of the given vertex. Call for both ends of a relationship that is
+	 * added or removed, and for a vertex whose attributes change (as it may appear in other expansions,
+	 * the latter also requires invalidating its neighbours).
+	 * @param vertex The vertex
+	 */
+	public synchronized void invalidate(N vertex){
+		generation++;
+		Iterator<Map.Entry<Key<N>, Set<N>>> ite = cache.entrySet().iterator();
+		while (ite.hasNext()){
+			Map.Entry<Key<N>, Set<N>> entry = ite.next();
+			if (entry.getKey().vertex.equals(vertex)){
+				weight -= entry.getValue().size() + 1;
+				ite.remove();
+			}
+		}
+	}
+
+	//--------------------------//
+	// STATISTICS
+	//--------------------------//
+
+	public synchronized long getHits(){
+		return hits;
+	}
+
+	public synchronized long getMisses(){
+		return misses;
+	}
+
+	public synchronized long getEvictions(){
+		return evictions;
+	}
+
+	/**
+	 * @return The fraction of the lookups answered from the cache; 0 if there were no lookups.
+	 */
+	public synchronized double getHitRate(){
+		long total = hits + misses;
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	/**
+	 * @return The number of cached expansions
+	 */
+	public synchronized int size(){
+		return cache.size();
+	}
+
+	/**
+	 * @return The total weight of the cached expansions
+	 */
+	public synchronized long getWeight(){
+		return weight;
+	}
+
+	/**
+	 * Resets the hit/miss/eviction counters. The cached expansions are kept.
+	 */
+	public synchronized void resetStatistics(){
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	//--------------------------//
+	// HELPER METHODS
+	//--------------------------//
+
+	/**
+	 * Evicts the least recently used expansions until the total weight is within the capacity.
+	 */
+	private void evict(){
+		Iterator<Map.Entry<Key<N>, Set<N>>> ite = cache.entrySet().iterator();
+		while (weight > capacity && ite.hasNext()){
+			Map.Entry<Key<N>, Set<N>> entry = ite.next();
+			weight -= entry.getValue().size() + 1;
+			ite.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * The cache key of an expansion.
+	 */
+	private static class Key<N> {
+		private final N vertex;
+		private final RelType type;
+		private final boolean outgoing;
+		private final Map<String, String> relAttrs;		//The relationship attribute requirements
+		private final Map<String, String> nodeAttrs;	//The neighbour attribute requirements
+		private final int hash;
+
+		private Key(N vertex, MyRelationship rel, MyNode node){
+			this(vertex, rel.getIdentifier(), rel.getSource().equals(node), rel.getAttributes(), rel.getOther(node).getAttributes());
+		}
+
+		private Key(N vertex, RelType type, boolean outgoing, Map<String, String> relAttrs, Map<String, String> nodeAttrs){
+			this.vertex = vertex;
+			this.type = type;
+			this.outgoing = outgoing;
+			this.relAttrs = relAttrs;
+			this.nodeAttrs = nodeAttrs;
+
+			int h = vertex.hashCode();
+			h = 31 * h + type.hashCode();
+			h = 31 * h + (outgoing ? 1 : 0);
+			h = 31 * h + relAttrs.hashCode();
+			h = 31 * h + nodeAttrs.hashCode();
+			this.hash = h;
+		}
+
+		/**
+		 * @return An equal key with its own copies of the attribute requirements.
+		 */
+		private Key<N> detach(){
+			return new Key<N>(vertex, type, outgoing, new HashMap<String, String>(relAttrs), new HashMap<String, String>(nodeAttrs));
+		}
+
+		@Override
+		public int hashCode(){
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj){
+			if (this == obj){
+				return true;
+			}
+			if (!(obj instanceof Key)){
+				return false;
+			}
+			Key<?> other = (Key<?>) obj;
+			return hash == other.hash && outgoing == other.outgoing && type == other.type
+					&& vertex.equals(other.vertex) && relAttrs.equals(other.relAttrs) && nodeAttrs.equals(other.nodeAttrs);
+		}
+	}
+}
@@ -1,21 +1,24 @@
 package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
 
-import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.neo4j.graphdb.Entity;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Transaction;
 
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.ConstraintsEvaluator;
+import ca.ucalgary.ispia.graphpatterns.graph.CanonicalForm;
 import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
+import ca.ucalgary.ispia.graphpatterns.graph.GraphPattern;
 import ca.ucalgary.ispia.graphpatterns.graph.HasAttributes;
 import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
-import ca.ucalgary.ispia.graphpatterns.util.AttributeTypes;
+import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
+import ca.ucalgary.ispia.graphpatterns.graph.QueryPlan;
 import ca.ucalgary.ispia.graphpatterns.util.Pair;
 
 /**
@@ -28,7 +31,10 @@ public class ConstraintsChecker implements ConstraintsEvaluator<Node, Entity>{
 
 
 	private final GPHolder gph;					//GPHolder - gives access to the constraints
-	private final GraphDatabaseService graphDb;	//GraphDatabaseService - gives access to underlying database
+	private final QueryPlan plan;				//The static plan of gph (the mex constraints by node)
+	private final DBSession session;			//DBSession - scopes the transactions against the underlying database
+	private final Map<HasAttributes, AttrPredicate> predicates;	//The compiled attribute requirements of the gp nodes and relationships
+	private final Map<String, AttrPredicate> shared;			//The compiled attribute requirements of other entities, by their encoding
 	
 	/**
 	 * Simple constructor. Assigns the instance variables.
@@ -36,9 +42,43 @@ public class ConstraintsChecker implements ConstraintsEvaluator<Node, Entity>{
 	 * @param graphDb The GraphDatabaseService
 	 */
 	public ConstraintsChecker(GPHolder gph, GraphDatabaseService graphDb){
+		this(gph, new DBSession(graphDb));
+	}
+	
+	/**
+	 * Assigns the instance variables. The session should be shared with the DBAccess, so that the attribute
+	 * reads run in the transaction of the neighbourhood expansion.
+	 * @param gph The GPHolder
+	 * @param session The DBSession
+	 */
+	public ConstraintsChecker(GPHolder gph, DBSession session){
+		this(QueryPlan.compile(gph), session);
+	}
+	
+	/**
+	 * Assigns the instance variables, with an already compiled plan (e.g. from a PlanCache).
+	 * @param plan The plan of the GPHolder
+	 * @param session The DBSession
+	 */
+	public ConstraintsChecker(QueryPlan plan, DBSession session){
 		//Initialize instance variables.
-		this.gph = gph;
-		this.graphDb = graphDb;
+		this.gph = plan.getGPHolder();
+		this.plan = plan;
+		this.session = session;
+		
+		//Compile the attribute requirements once. Identity based, as the gp entities are the keys;
+		//read-only after construction, so the parallel search may share it.
+		this.predicates = new IdentityHashMap<HasAttributes, AttrPredicate>();
+		GraphPattern gp = gph.getGp();
+		for (MyNode node : gp.getNodes()){
+			predicates.put(node, new AttrPredicate(node));
+		}
+		for (MyRelationship rel : gp.getAllRelationships()){
+			predicates.put(rel, new AttrPredicate(rel));
+		}
+		//The entities of other graph patterns (e.g. when one DBAccess serves a batch of queries) are compiled on
+		//their first check, and shared by the entities with the same requirements
+		this.shared = new ConcurrentHashMap<String, AttrPredicate>();
 	}
 	
 	/**
@@ -49,7 +89,7 @@ public class ConstraintsChecker implements ConstraintsEvaluator<Node, Entity>{
 	 */
 	public void mexFilter(MyNode variable, Set<Node> candidates, Map<MyNode, Node> assignments, Map<MyNode, Set<MyNode>> confIn){
 		//Get the mutual exclusion constraints containing the variable
-		List<Pair<MyNode, MyNode>> mexList = gph.getMexList(variable); 
+		List<Pair<MyNode, MyNode>> mexList = plan.getMexList(variable); 
 
 		if (!confIn.containsKey(variable)){
 			confIn.put(variable, new HashSet<MyNode>());
@@ -77,59 +117,32 @@ public class ConstraintsChecker implements ConstraintsEvaluator<Node, Entity>{
 	
 	
 	/**
-	 * Checks if the given entity has the required attributes.
+	 * Checks if the given entity has the required attributes, using the compiled attribute requirements.
 	 * @param source The MyNode or MyRelationship object from gp.
 	 * @param target The Node or Relationship object from the database.
 	 * @return true if the target can satisfy the required attributes, else false.
 	 */
 	public boolean checkAttrs(HasAttributes source, Entity target){
-		//Prepare the list of source attribute requirements (if any)
-		Map<String, String> attrReqs = source.getAttributes();
-		List<String> attrNames = new ArrayList<String>();
-		attrNames.addAll(attrReqs.keySet());
-
-		//Check if the target satisfies all attribute requirements.
-		for (String attr : attrNames){
-
-			//Get the attribute/property from the target
-			Object val = null;
-			try (Transaction tx = graphDb.beginTx()){
-				val = target.getProperty(attr, null);
-				tx.success();
-			}
-
-			if (val != null){	//Ensure that the target has the attribute/property
-				if (AttributeTypes.isIntType(attr)){
-					//Compare the property, based on if its an int or a String
-					//If the values don't match, return false.
-					try{
-						int reqVal = Integer.parseInt(attrReqs.get(attr));
-						if (reqVal != (int) val){
-							return false;
-						}
-					} catch (NumberFormatException | ClassCastException e){
-						String reqVal = attrReqs.get(attr);
-						if (!reqVal.equals(val)){
-							return false;
-						}
-					}
-
-				} else {
-					String reqVal = attrReqs.get(attr);
-					String tempVal = val+"";
-					if (!reqVal.equals(tempVal)){
-						return false;
-					}
-				}
-			} else {
-				//If the target did not have the required attribute/property, return false
-				return false;
+		AttrPredicate predicate = predicates.get(source);
+		if (predicate == null){
+			//Not from the gp; compile it once per distinct set of requirements
+			String key = CanonicalForm.encode(source.getAttributes());
+			predicate = shared.get(key);
+			if (predicate == null){
+				predicate = new AttrPredicate(source);
+				shared.put(key, predicate);
 			}
-
+		}
+		if (predicate.isEmpty()){
+			return true;
 		}
 
-		//If the target satisfies all attribute requirements, return true
-		return true;
+		session.begin();
+		try {
+			return predicate.test(target);
+		} finally {
+			session.end();
+		}
 	}
 	
 }
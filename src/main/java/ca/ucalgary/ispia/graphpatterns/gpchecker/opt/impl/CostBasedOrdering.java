@@ -0,0 +1,142 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.VariableOrdering;
+import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
+import ca.ucalgary.ispia.graphpatterns.graph.GraphPattern;
+import ca.ucalgary.ispia.graphpatterns.graph.GraphStatistics;
+import ca.ucalgary.ispia.graphpatterns.graph.MyDirection;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
+
+/**
+ * This class provides the method(s) for variable ordering.
+ * Like LeastCandidates, the node with the smallest candidates size is picked first. Ties are broken by:
+ * 1. The number of relationships to the assigned nodes (more is better, as each one constrains the node).
+ * 2. The expected fan-out of the relationships to the unassigned nodes, i.e. the size of the candidates sets
+ *    that assigning the node would populate (less is better). The fan-out of each relationship type and
+ *    direction is taken from the statistics catalog (see GraphStatistics.getExpectedFanOut), so the nodes
+ *    that lead to hubs are postponed. Without a catalog, each relationship counts as 1.
+ * 3. Membership in the result schema (members first).
+ * 4. The position in the graph pattern.
+ *
+ * The per node relationships and fan-outs are computed once, when the ordering is created.
+ */
+public class CostBasedOrdering<N> implements VariableOrdering<N>{
+
+	private final Map<MyNode, Integer> positions;			//The position of each gp node
+	private final Map<MyNode, List<MyNode>> neighbours;		//The other end of each relationship of each gp node
+	private final Map<MyNode, double[]> fanOuts;			//The expected fan-out of each relationship of each gp node
+	private final Set<MyNode> schema;						//The nodes in the result schema
+
+	/**
+	 * Initializes the instance variables.
+	 * @param gph The GPHolder associated with the current problem.
+	 * @param stats The statistics catalog of the dataset; may be null
+	 */
+	public CostBasedOrdering(GPHolder gph, GraphStatistics stats){
+		//Identity based, as the gp nodes are the keys; read-only after construction
+		this.positions = new IdentityHashMap<MyNode, Integer>();
+		this.neighbours = new IdentityHashMap<MyNode, List<MyNode>>();
+		this.fanOuts = new IdentityHashMap<MyNode, double[]>();
+		this.schema = new HashSet<MyNode>();
+		if (gph.getResultSchema() != null){
+			schema.addAll(gph.getResultSchema());
+		}
+
+		GraphPattern gp = gph.getGp();
+		List<MyNode> nodes = gp.getNodes();
+		for (int idx = 0; idx < nodes.size(); idx++){
+			MyNode node = nodes.get(idx);
+			positions.put(node, idx);
+
+			List<MyNode> others = new ArrayList<MyNode>();
+			List<MyRelationship> rels = gp.getAllRelationships(node);
+			double[] fanOut = new double[rels.size()];
+
+			for (int rel = 0; rel < rels.size(); rel++){
+				MyRelationship relationship = rels.get(rel);
+				others.add(relationship.getOther(node));
+
+				//Expanding from the source follows the outgoing relationships, and vice versa
+				MyDirection dir = relationship.getSource().equals(node) ? MyDirection.OUTGOING : MyDirection.INCOMING;
+				fanOut[rel] = stats == null ? 1.0 : stats.getExpectedFanOut(relationship.getIdentifier(), dir);
+			}
+			neighbours.put(node, others);
+			fanOuts.put(node, fanOut);
+		}
+	}
+
+	/**
+	 * Find nodes such that they are populated but not yet assigned.
+	 * Pick and return the node with the smallest candidates size, breaking ties by cost.
+	 * @param assignments The map of currently assigned nodes and their assignments
+	 * @param candidates The map of populated nodes and their candidates
+	 * @return The next node to be assigned in the algorithm
+	 */
+	public MyNode pickNextNode(Map<MyNode, N> assignments, Map<MyNode, Set<N>> candidates){
+
+		MyNode nextNode = null;
+		int candidatesSize = 0;
+		int connections = 0;
+		double fanOut = 0.0;
+
+		//Loop through the populated nodes
+		for (Map.Entry<MyNode, Set<N>> entry : candidates.entrySet()){
+			MyNode node = entry.getKey();
+			if (assignments.containsKey(node)){
+				continue;
+			}
+
+			int newSize = entry.getValue().size();
+			if (nextNode != null && newSize > candidatesSize){
+				continue;
+			}
+
+			//Count the relationships to the assigned nodes, and add up the fan-out of the rest
+			int newConnections = 0;
+			double newFanOut = 0.0;
+			List<MyNode> others = neighbours.get(node);
+			double[] relFanOuts = fanOuts.get(node);
+			for (int rel = 0; rel < others.size(); rel++){
+				if (assignments.containsKey(others.get(rel))){
+					newConnections++;
+				} else {
+					newFanOut += relFanOuts[rel];
+				}
+			}
+
+			if (nextNode == null || isBetter(node, newSize, newConnections, newFanOut, nextNode, candidatesSize, connections, fanOut)){
+				nextNode = node;
+				candidatesSize = newSize;
+				connections = newConnections;
+				fanOut = newFanOut;
+			}
+		}
+
+		return nextNode;
+	}
+
+	private boolean isBetter(MyNode node, int size, int connections, double fanOut, MyNode best, int bestSize, int bestConnections, double bestFanOut){
+		if (size != bestSize){
+			return size < bestSize;
+		}
+		if (connections != bestConnections){
+			return connections > bestConnections;
+		}
+		if (fanOut != bestFanOut){
+			return fanOut < bestFanOut;
+		}
+		boolean inSchema = schema.contains(node);
+		if (inSchema != schema.contains(best)){
+			return inSchema;
+		}
+		return positions.get(node) < positions.get(best);
+	}
+}
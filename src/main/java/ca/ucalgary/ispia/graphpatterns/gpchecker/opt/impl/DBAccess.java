@@ -13,7 +13,6 @@ import org.neo4j.graphdb.Entity;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Transaction;
 
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.ConstraintsEvaluator;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.NeighbourhoodAccess;
@@ -29,6 +28,7 @@ import ca.ucalgary.ispia.graphpatterns.util.LabelEnum;
 
 public class DBAccess implements NeighbourhoodAccess<Node>{
 	private final GraphDatabaseService graphDb;					//GraphDatabaseService - gives access to the database
+	private final DBSession session;							//DBSession - scopes the transactions
 	private final ConstraintsEvaluator<Node, Entity> constraintsEvaluator;	//ConstraintsEvaluator - gives access to the components that ensures constraints are satisfied
 	
 	//public Map<Integer, Integer> neighbourhoodSizes; 
@@ -41,8 +41,19 @@ public class DBAccess implements NeighbourhoodAccess<Node>{
 	 * @param constraintsChecker The ConstraintsChecker
 	 */
 	public DBAccess (GraphDatabaseService graphDb, ConstraintsEvaluator<Node, Entity> constraintsEvaluator){
+		this(new DBSession(graphDb), constraintsEvaluator);
+	}
+	
+	/**
+	 * Initilizes the instance variables. The session should be shared with the ConstraintsChecker
+	 * (and AttrBasedStart), so that their attribute reads run in the same transaction.
+	 * @param session The DBSession
+	 * @param constraintsChecker The ConstraintsChecker
+	 */
+	public DBAccess (DBSession session, ConstraintsEvaluator<Node, Entity> constraintsEvaluator){
 		//Initialize the instance variables
-		this.graphDb = graphDb;
+		this.graphDb = session.getGraphDb();
+		this.session = session;
 		this.constraintsEvaluator = constraintsEvaluator;
 		//this.neighbourhoodSizes = new HashMap<Integer, Integer>();
 		maxNeighbourhood = 0;
@@ -52,6 +63,21 @@ public class DBAccess implements NeighbourhoodAccess<Node>{
 		return this.maxNeighbourhood;
 	}
 	
+	public void beginSession(){
+		session.begin();
+	}
+	
+	public void endSession(){
+		session.end();
+	}
+	
+	/**
+	 * @return The number of transactions opened
+	 */
+	public int getQueryCount(){
+		return session.getTransactionCount();
+	}
+	
 	/**
 	 * Returns the set of neighbours, for the given node (with assigned vertex) and the relationship, that satisfy all required constraints.
 	 * @param rel The target relationship. Used to specifying the relationship direction and the relationship attribute requirements.
@@ -80,8 +106,10 @@ public class DBAccess implements NeighbourhoodAccess<Node>{
 
 		
 		//Query the database for the neighbours of vertex, where direction = dir.
-		//Only keep the neighbours where the edge and vertex attributes are satisfied
-		try (Transaction tx = graphDb.beginTx()){
+		//Only keep the neighbours where the edge and vertex attributes are satisfied.
+		//The attribute reads of the whole expansion run in the same transaction.
+		session.begin();
+		try {
 			Iterable<Relationship> result = vertex.getRelationships(rel.getIdentifier(), dir);
 			
 			for (Relationship tempR : result){
@@ -93,8 +121,9 @@ public class DBAccess implements NeighbourhoodAccess<Node>{
 					neighbours.add(neighbour);
 				}
 			}
+		} finally {
 			//End transaction
-			tx.success();
+			session.end();
 		}
 
 		/*int size = neighbours.size();
@@ -118,7 +147,8 @@ public class DBAccess implements NeighbourhoodAccess<Node>{
 	public Node findNode(MyNode src, Integer id){
 		Node tgt = null;
 		
-		try (Transaction tx = graphDb.beginTx()){
+		session.begin();
+		try {
 			
 			tgt = graphDb.findNode(LabelEnum.PERSON, "id", id);
 			
@@ -131,8 +161,8 @@ public class DBAccess implements NeighbourhoodAccess<Node>{
 				//If other attr requirements fail, then tgt is not the correct node
 				tgt = null;						
 			}
-
-			tx.success();
+		} finally {
+			session.end();
 		}
 		return tgt;
 	}
@@ -143,7 +173,8 @@ public class DBAccess implements NeighbourhoodAccess<Node>{
 		boolean retVal = false;
 		
 		//Check if the relationship exists between them.
-		try (Transaction tx = graphDb.beginTx()){
+		session.begin();
+		try {
 			Iterator<Relationship> relIte = src.getRelationships(rel.getIdentifier(), Direction.OUTGOING).iterator();
 
 			while (relIte.hasNext() && dbRel == null){
@@ -160,8 +191,8 @@ public class DBAccess implements NeighbourhoodAccess<Node>{
 					dbRel = null;
 				}
 			}
-			
-			tx.success();
+		} finally {
+			session.end();
 		}
 		
 		return retVal;
@@ -0,0 +1,79 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.Map;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.CardinalityEstimator;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.util.AttributeTypes;
+import ca.ucalgary.ispia.graphpatterns.util.LabelEnum;
+
+/**
+ * Estimates the candidate counts for the Neo4j database, by probing the property index of each attribute
+ * requirement of the node (graphDb.findNodes) and counting the hits up to a cap. The estimate of a node is the
+ * smallest count among its requirements. The cap bounds the cost of a probe: the counts of the broad
+ * requirements are not needed exactly, only to be known to be larger than the selective ones.
+ */
+public class DBCardinalityEstimator implements CardinalityEstimator{
+
+	private final GraphDatabaseService graphDb;		//GraphDatabaseService: Provides access to database
+	private final DBSession session;				//DBSession: Scopes the transactions
+	private final long cap;							//The maximum count of a probe
+
+	/**
+	 * Initializes the instance variables.
+	 * @param session The database session
+	 * @param cap The maximum count of a probe
+	 */
+	public DBCardinalityEstimator(DBSession session, long cap){
+		this.graphDb = session.getGraphDb();
+		this.session = session;
+		this.cap = cap;
+	}
+
+	public long estimate(MyNode node){
+		Map<String, String> attrs = node.getAttributes();
+		if (attrs.isEmpty()){
+			return cap;
+		}
+
+		long min = cap;
+		session.begin();
+		try {
+			for (String key : attrs.keySet()){
+				//Compare the property, based on if its an int or a String
+				Object val = attrs.get(key);
+				if (AttributeTypes.isIntType(key)){
+					try{
+						val = Integer.parseInt(attrs.get(key));
+					} catch (NumberFormatException e){
+						val = attrs.get(key);
+					}
+				}
+
+				long count = 0;
+				ResourceIterator<Node> rite = graphDb.findNodes(LabelEnum.PERSON, key.trim(), val);
+				try {
+					//Only count up to the current minimum; more does not change the estimate
+					while (count < min && rite.hasNext()){
+						rite.next();
+						count++;
+					}
+				} finally {
+					rite.close();
+				}
+				min = Math.min(min, count);
+
+				if (min == 0){
+					break;
+				}
+			}
+		} finally {
+			session.end();
+		}
+		return min;
+	}
+}
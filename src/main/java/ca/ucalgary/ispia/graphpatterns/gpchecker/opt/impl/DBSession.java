@@ -0,0 +1,98 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Scopes the read transactions against the database. A session opens one transaction per thread, and
+ * the begin/end calls nest: only the outermost begin() opens a transaction, and only the matching end()
+ * closes it. The database components (DBAccess, ConstraintsChecker, AttrBasedStart) share a session, so
+ * that a whole check() runs inside a single read transaction, instead of opening a nested transaction
+ * for every neighbourhood expansion and every attribute read.
+ *
+ * Usage:
+ * <pre>
+ * session.begin();
+ * try {
+ *     ...
+ * } finally {
+ *     session.end();
+ * }
+ * </pre>
+ */
+public class DBSession {
+
+	private final GraphDatabaseService graphDb;		//GraphDatabaseService - gives access to the database
+	private final ThreadLocal<Scope> scopes;		//The open transaction of each thread, if any
+	private final AtomicInteger transactionCount;	//The number of transactions opened
+
+	/**
+	 * Initializes the instance variables.
+	 * @param graphDb The GraphDatabaseService
+	 */
+	public DBSession(GraphDatabaseService graphDb){
+		this.graphDb = graphDb;
+		this.scopes = new ThreadLocal<Scope>();
+		this.transactionCount = new AtomicInteger(0);
+	}
+
+	/**
+	 * @return The GraphDatabaseService
+	 */
+	public GraphDatabaseService getGraphDb(){
+		return graphDb;
+	}
+
+	/**
+	 * Enters the session in the current thread. Opens a transaction, unless the thread already has one.
+	 */
+	public void begin(){
+		Scope scope = scopes.get();
+		if (scope == null){
+			scope = new Scope(graphDb.beginTx());
+			scopes.set(scope);
+			transactionCount.incrementAndGet();
+		}
+		scope.depth++;
+	}
+
+	/**
+	 * Leaves the session in the current thread. Closes the transaction if this matches the outermost begin().
+	 */
+	public void end(){
+		Scope scope = scopes.get();
+		if (scope == null){
+			throw new IllegalStateException("DBSession.end() without a matching begin()");
+		}
+
+		scope.depth--;
+		if (scope.depth == 0){
+			scopes.remove();
+			//The session only reads, so the transaction is always successful
+			scope.tx.success();
+			scope.tx.close();
+		}
+	}
+
+	/**
+	 * @return The number of transactions opened by the session
+	 */
+	public int getTransactionCount(){
+		return transactionCount.get();
+	}
+
+	/**
+	 * The open transaction of a thread, and the number of begin() calls not yet ended.
+	 */
+	private static class Scope {
+		private final Transaction tx;
+		private int depth;
+
+		private Scope(Transaction tx){
+			this.tx = tx;
+			this.depth = 0;
+		}
+	}
+}
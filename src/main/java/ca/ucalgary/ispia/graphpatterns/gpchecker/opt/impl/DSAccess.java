@@ -21,6 +21,7 @@ import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
 public class DSAccess implements NeighbourhoodAccess<MyNode>{
 
 	private DataSetInterface dataset;
+	private DSConstraintsChecker constraintsChecker;	//Checks the vertex attribute requirements; null to ignore them
 	private Map<Integer, Integer> neighbourhoodSizes;
 
 
@@ -30,8 +31,19 @@ public class DSAccess implements NeighbourhoodAccess<MyNode>{
 	 * @param constraintsChecker The ConstraintsChecker
 	 */
 	public DSAccess (DataSetInterface dataset){
+		this(dataset, null);
+	}
+	
+	/**
+	 * Initilizes the instance variables. The DataSetInterface does not keep the relationships, so only the
+	 * vertex attribute requirements are checked; use CSRAccess to also check the relationship attributes.
+	 * @param dataset The dataset
+	 * @param constraintsChecker Checks the vertex attribute requirements against the attribute store; null to ignore them
+	 */
+	public DSAccess (DataSetInterface dataset, DSConstraintsChecker constraintsChecker){
 		//Initialize the instance variables
 		this.dataset = dataset;
+		this.constraintsChecker = constraintsChecker;
 		neighbourhoodSizes = new HashMap<Integer, Integer>();
 	}
 	
@@ -39,6 +51,18 @@ public class DSAccess implements NeighbourhoodAccess<MyNode>{
 		return 0;
 	}
 	
+	public void beginSession(){
+		//The in-memory dataset does not need sessions
+	}
+	
+	public void endSession(){
+	}
+	
+	public int getQueryCount(){
+		//No database queries for the in-memory dataset
+		return 0;
+	}
+	
 	public Map<Integer, Integer> getNeighbourhoodSizes() {
 		return neighbourhoodSizes;
 	}
@@ -67,12 +91,27 @@ public class DSAccess implements NeighbourhoodAccess<MyNode>{
 		
 		Set<MyNode> result = dataset.getNeighbours(vertex, rel.getIdentifier(), dir);
 		
+		//Only keep the neighbours where the vertex attributes are satisfied
+		MyNode otherNode = rel.getOther(node);
+		if (constraintsChecker != null && otherNode.hasAttributes()){
+			Set<MyNode> filtered = new HashSet<MyNode>();
+			for (MyNode neighbour : result){
+				if (constraintsChecker.checkNodeAttrs(otherNode, neighbour.getId())){
+					filtered.add(neighbour);
+				}
+			}
+			result = filtered;
+		}
+		
 		int size = result.size();
-		if (neighbourhoodSizes.containsKey(size)){
-			int val = neighbourhoodSizes.get(size)+1;
-			neighbourhoodSizes.put(size, val);
-		} else {
-			neighbourhoodSizes.put(size, 1);
+		//Synchronized, as the parallel mode of the checkers queries from multiple threads
+		synchronized (neighbourhoodSizes){
+			if (neighbourhoodSizes.containsKey(size)){
+				int val = neighbourhoodSizes.get(size)+1;
+				neighbourhoodSizes.put(size, val);
+			} else {
+				neighbourhoodSizes.put(size, 1);
+			}
 		}
 		
 		if (size == 394){
@@ -99,6 +138,9 @@ public class DSAccess implements NeighbourhoodAccess<MyNode>{
 		if (tgt == null){
 			//If the node is not found, return null
 			System.out.println("Not fixed: " + id+"");
+		} else if (constraintsChecker != null && !constraintsChecker.checkNodeAttrs(src, tgt.getId())){
+			//If other attr requirements fail, then tgt is not the correct node
+			tgt = null;
 		}
 
 		return tgt;
@@ -0,0 +1,219 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.ConstraintsEvaluator;
+import ca.ucalgary.ispia.graphpatterns.graph.AttributeStore;
+import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
+import ca.ucalgary.ispia.graphpatterns.graph.GraphPattern;
+import ca.ucalgary.ispia.graphpatterns.graph.HasAttributes;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.MyRelationship;
+import ca.ucalgary.ispia.graphpatterns.graph.QueryPlan;
+import ca.ucalgary.ispia.graphpatterns.util.Pair;
+
+/**
+ * This class provides the methods for constraints checking for the graph pattern evaluation against the
+ * in-memory dataset: mutual exclusion constraints, and attribute requirements checked against the columnar
+ * attribute stores of the nodes and relationships (instead of the attribute maps of the entities).
+ *
+ * The attribute requirements of the gp nodes and relationships are compiled once, against the columns:
+ * int requirements are parsed, and string requirements are resolved to their dictionary codes, so that
+ * each check compares ints. The stores must not be modified after the checker is created.
+ * In the in-memory dataset, the "id" of a node is its index, so a node "id" requirement without
+ * an "id" column compares the index.
+ */
+public class DSConstraintsChecker implements ConstraintsEvaluator<MyNode, HasAttributes>{
+
+	private final GPHolder gph;							//GPHolder - gives access to the constraints
+	private final QueryPlan plan;						//The static plan of gph (the mex constraints by node)
+	private final AttributeStore nodeAttrs;				//The node attributes, by node id
+	private final AttributeStore relAttrs;				//The relationship attributes, by relationship id
+	private final Map<HasAttributes, Requirements> compiled;	//The compiled attribute requirements of the gp nodes and relationships
+
+	/**
+	 * Assigns the instance variables, and compiles the attribute requirements of the graph pattern.
+	 * @param gph The GPHolder
+	 * @param nodeAttrs The node attributes, by node id
+	 * @param relAttrs The relationship attributes, by relationship id
+	 */
+	public DSConstraintsChecker(GPHolder gph, AttributeStore nodeAttrs, AttributeStore relAttrs){
+		this(QueryPlan.compile(gph), nodeAttrs, relAttrs);
+	}
+
+	/**
+	 * Assigns the instance variables, with an already compiled plan (e.g. from a PlanCache), and compiles the
+	 * attribute requirements of the graph pattern.
+	 * @param plan The plan of the GPHolder
+	 * @param nodeAttrs The node attributes, by node id
+	 * @param relAttrs The relationship attributes, by relationship id
+	 */
+	public DSConstraintsChecker(QueryPlan plan, AttributeStore nodeAttrs, AttributeStore relAttrs){
+		//Initialize instance variables.
+		this.gph = plan.getGPHolder();
+		this.plan = plan;
+		this.nodeAttrs = nodeAttrs;
+		this.relAttrs = relAttrs;
+
+		//Identity based, as the gp entities are the keys; read-only after construction
+		this.compiled = new IdentityHashMap<HasAttributes, Requirements>();
+		GraphPattern gp = gph.getGp();
+		for (MyNode node : gp.getNodes()){
+			compiled.put(node, new Requirements(node, nodeAttrs, true));
+		}
+		for (MyRelationship rel : gp.getAllRelationships()){
+			compiled.put(rel, new Requirements(rel, relAttrs, false));
+		}
+	}
+
+	/**
+	 * Filters the candidates set based on the mutual exclusion constraints and current assignment
+	 * @param variable The target graph pattern node
+	 * @param node The assignment for the target node
+	 * @param candidates The list of candidates for the currently populated nodes
+	 */
+	public void mexFilter(MyNode variable, Set<MyNode> candidates, Map<MyNode, MyNode> assignments, Map<MyNode, Set<MyNode>> confIn){
+		//Get the mutual exclusion constraints containing the variable
+		List<Pair<MyNode, MyNode>> mexList = plan.getMexList(variable);
+
+		if (!confIn.containsKey(variable)){
+			confIn.put(variable, new HashSet<MyNode>());
+		}
+
+		for (Pair<MyNode, MyNode> mex : mexList){
+			//For the constraint, get the other node
+			MyNode other = null;
+			if (mex.first.equals(variable)){
+				other = mex.second;
+			} else {
+				other = mex.first;
+			}
+
+			//If the other node is populate
+			if (assignments.containsKey(other)){
+				//Remove 'node' from its candidates set
+				candidates.remove(assignments.get(other));
+
+				confIn.get(variable).add(other);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the given dataset entity has the required attributes.
+	 * @param source The MyNode or MyRelationship object from gp.
+	 * @param target The MyNode or MyRelationship object from the dataset.
+	 * @return true if the target can satisfy the required attributes, else false.
+	 */
+	public boolean checkAttrs(HasAttributes source, HasAttributes target){
+		if (target instanceof MyRelationship){
+			return checkRelAttrs(source, ((MyRelationship) target).getId());
+		}
+		return checkNodeAttrs(source, ((MyNode) target).getId());
+	}
+
+	/**
+	 * Checks if the dataset node with the given id has the required attributes.
+	 * @param source The MyNode object from gp.
+	 * @param nodeId The id of the dataset node.
+	 * @return true if the node can satisfy the required attributes, else false.
+	 */
+	public boolean checkNodeAttrs(HasAttributes source, int nodeId){
+		return requirements(source, nodeAttrs, true).test(nodeId);
+	}
+
+	/**
+	 * Checks if the dataset relationship with the given id has the required attributes.
+	 * @param source The MyRelationship object from gp.
+	 * @param relId The id of the dataset relationship.
+	 * @return true if the relationship can satisfy the required attributes, else false.
+	 */
+	public boolean checkRelAttrs(HasAttributes source, int relId){
+		return requirements(source, relAttrs, false).test(relId);
+	}
+
+	private Requirements requirements(HasAttributes source, AttributeStore store, boolean nodes){
+		Requirements req = compiled.get(source);
+		if (req == null){
+			//Not from the gp; compile it for this check only
+			req = new Requirements(source, store, nodes);
+		}
+		return req;
+	}
+
+	/**
+	 * The attribute requirements of a gp entity, compiled against the columns of an attribute store.
+	 */
+	private static class Requirements {
+		private final AttributeStore.Column[] columns;	//The column of each requirement; null to compare the index
+		private final int[] expected;					//The required int value (or index), or the required dictionary code
+		private final boolean satisfiable;				//False if a requirement can never be satisfied
+
+		private Requirements(HasAttributes source, AttributeStore store, boolean nodes){
+			Map<String, String> attrReqs = source.getAttributes();
+			columns = new AttributeStore.Column[attrReqs.size()];
+			expected = new int[attrReqs.size()];
+
+			boolean sat = true;
+			int idx = 0;
+			for (Map.Entry<String, String> entry : attrReqs.entrySet()){
+				AttributeStore.Column column = store.getColumn(entry.getKey());
+				columns[idx] = column;
+
+				if (column instanceof AttributeStore.IntColumn){
+					try {
+						expected[idx] = Integer.parseInt(entry.getValue());
+					} catch (NumberFormatException e){
+						sat = false;
+					}
+				} else if (column instanceof AttributeStore.StringColumn){
+					expected[idx] = ((AttributeStore.StringColumn) column).codeOf(entry.getValue());
+					if (expected[idx] == AttributeStore.StringColumn.MISSING){
+						//No entity has the required value
+						sat = false;
+					}
+				} else if (nodes && entry.getKey().equals("id")){
+					//The node id is the index
+					try {
+						expected[idx] = Integer.parseInt(entry.getValue());
+					} catch (NumberFormatException e){
+						sat = false;
+					}
+				} else {
+					//No entity has the attribute
+					sat = false;
+				}
+				idx++;
+			}
+			satisfiable = sat;
+		}
+
+		private boolean test(int idx){
+			if (!satisfiable){
+				return false;
+			}
+
+			for (int col = 0; col < columns.length; col++){
+				if (columns[col] == null){
+					if (idx != expected[col]){
+						return false;
+					}
+				} else if (columns[col] instanceof AttributeStore.IntColumn){
+					AttributeStore.IntColumn column = (AttributeStore.IntColumn) columns[col];
+					if (!column.has(idx) || column.getInt(idx) != expected[col]){
+						return false;
+					}
+				} else {
+					if (((AttributeStore.StringColumn) columns[col]).getCode(idx) != expected[col]){
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.CandidateDomains;
+
+/**
+ * The default candidates sets: plain HashSets. Works for every backend.
+ */
+public class HashDomains<N> implements CandidateDomains<N>{
+
+	/**
+	 * Creates a new HashSet containing the given vertices.
+	 * @param vertices The vertices to copy into the new set.
+	 * @return The new candidates set.
+	 */
+	public Set<N> copyOf(Collection<N> vertices){
+		Set<N> result = new HashSet<N>();
+		result.addAll(vertices);
+		return result;
+	}
+}
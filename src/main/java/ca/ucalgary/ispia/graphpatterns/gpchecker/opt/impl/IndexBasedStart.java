@@ -0,0 +1,108 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.AltStart;
+import ca.ucalgary.ispia.graphpatterns.graph.AttributeIndex;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * This class populates the candidates set based on the attribute requirements for nodes, for the in-memory
+ * dataset. Unlike AttrBasedStart, which looks up the first attribute requirement and checks the rest on every
+ * hit, the candidates are the intersection of the postings of all of the attribute requirements of the node
+ * (see AttributeIndex), so no further checks are needed.
+ */
+public class IndexBasedStart implements AltStart<MyNode>{
+
+	private final AttributeIndex index;		//The inverted index of the node attributes
+	private final MyNode[] nodes;			//The lookup from id to node
+
+	/**
+	 * Initializes the instance variables.
+	 * @param index The inverted index of the node attributes
+	 * @param nodes The lookup from id to node (e.g. DataSetCSR.getNodes())
+	 */
+	public IndexBasedStart(AttributeIndex index, MyNode[] nodes){
+		//Assign the instance variables.
+		this.index = index;
+		this.nodes = nodes;
+	}
+
+	/**
+	 * Populates the candidates maps based on the attribute requirements of the graph pattern.
+	 * Assumption: The candidates map is empty.
+	 * @param gpNodes The list of all nodes in the graph pattern
+	 * @param candidates The candidates map
+	 * @return False if there was even 1 node with attr requirements that could not be satisfied,
+	 * else true.
+	 *
+	 * Side Effect: candidates will be updated
+	 */
+	public boolean startPop(List<MyNode> gpNodes, Map<MyNode, Set<MyNode>> candidates){
+
+		//Iterate through all nodes
+		for (MyNode node : gpNodes){
+			if (node.hasAttributes()){	//Populate the candidate set for each node that has at least one required attribute
+				int[] ids = lookup(node);
+
+				//If no vertex could satisfy the attribute requirements for the node, then return false.
+				if (ids.length == 0){
+					return false;
+				}
+
+				Set<MyNode> nodeCads = new HashSet<MyNode>();
+				for (int id : ids){
+					if (id >= 0 && id < nodes.length && nodes[id] != null){
+						nodeCads.add(nodes[id]);
+					}
+				}
+				if (nodeCads.isEmpty()){
+					return false;
+				}
+
+				//Otherwise, update the candidates map
+				candidates.put(node, nodeCads);
+			}
+		}
+		//If reached here, then there is at least one candidate for each
+		//Node with attr requirement.
+		return true;
+	}
+
+	/**
+	 * Returns the sorted ids of the vertices that satisfy all of the attribute requirements of the node.
+	 */
+	private int[] lookup(MyNode node){
+		Map<String, String> attrReqs = node.getAttributes();
+
+		//In the in-memory dataset, the "id" of a node is its index
+		String id = attrReqs.get("id");
+		if (id == null || index.getPostings("id", id).length > 0){
+			return index.lookup(attrReqs);
+		}
+
+		int vertex;
+		try {
+			vertex = Integer.parseInt(id);
+		} catch (NumberFormatException e){
+			return new int[0];
+		}
+		//No vertex has a negative index
+		if (vertex < 0){
+			return new int[0];
+		}
+
+		Map<String, String> rest = new HashMap<String, String>(attrReqs);
+		rest.remove("id");
+		int[] ids = index.lookup(rest);
+		if (ids != null && Arrays.binarySearch(ids, vertex) < 0){
+			return new int[0];
+		}
+		return new int[]{vertex};
+	}
+}
@@ -0,0 +1,45 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.CardinalityEstimator;
+import ca.ucalgary.ispia.graphpatterns.graph.AttributeIndex;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * Estimates the candidate counts for the in-memory dataset from the postings lengths of the attribute index.
+ * The estimate of a node is the length of the shortest postings among its requirements (an upper bound
+ * of the size of the intersection). Nodes without requirements can be assigned any vertex.
+ */
+public class IndexCardinalityEstimator implements CardinalityEstimator{
+
+	private final AttributeIndex index;		//The inverted index of the node attributes
+	private final long numNodes;			//The number of nodes in the dataset
+
+	/**
+	 * Initializes the instance variables.
+	 * @param index The inverted index of the node attributes
+	 * @param numNodes The number of nodes in the dataset
+	 */
+	public IndexCardinalityEstimator(AttributeIndex index, long numNodes){
+		this.index = index;
+		this.numNodes = numNodes;
+	}
+
+	public long estimate(MyNode node){
+		Map<String, String> attrReqs = node.getAttributes();
+		if (attrReqs.isEmpty()){
+			return numNodes;
+		}
+
+		//In the in-memory dataset, the "id" of a node is its index
+		if (attrReqs.containsKey("id") && index.getPostings("id", attrReqs.get("id")).length == 0){
+			Map<String, String> rest = new HashMap<String, String>(attrReqs);
+			rest.remove("id");
+			return rest.isEmpty() ? 1 : Math.min(1, index.estimate(rest));
+		}
+
+		return index.estimate(attrReqs);
+	}
+}
@@ -0,0 +1,82 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.AltStart;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.CardinalityEstimator;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * Populates the candidates set of only the most selective graph pattern node(s). The candidate counts of the
+ * nodes with attribute requirements are estimated first (see CardinalityEstimator), and only the cheapest
+ * node is materialized through the given AltStart. The other nodes are populated by forward checking, which
+ * checks their attribute requirements on the neighbourhoods, so the broad nodes are never materialized in full.
+ *
+ * Nodes whose estimate is at most seedThreshold are seeded as well, since seeding them is cheap.
+ */
+public class SelectiveStart<N> implements AltStart<N>{
+
+	private final AltStart<N> altStart;				//Materializes the seeds
+	private final CardinalityEstimator estimator;	//Estimates the candidate counts
+	private final long seedThreshold;				//The nodes with estimates at most this are always seeded
+
+	/**
+	 * Initializes the instance variables.
+	 * @param altStart Materializes the candidates of the seeds (e.g. AttrBasedStart or IndexBasedStart)
+	 * @param estimator Estimates the candidate counts
+	 * @param seedThreshold The nodes with estimates at most this are always seeded
+	 */
+	public SelectiveStart(AltStart<N> altStart, CardinalityEstimator estimator, long seedThreshold){
+		this.altStart = altStart;
+		this.estimator = estimator;
+		this.seedThreshold = seedThreshold;
+	}
+
+	/**
+	 * Populates the candidates maps for the most selective nodes.
+	 * Assumption: The candidates map is empty.
+	 * @param nodes The list of all nodes in the graph pattern
+	 * @param candidates The candidates map
+	 * @return False if there was even 1 node with attr requirements that cannot be satisfied,
+	 * else true.
+	 *
+	 * Side Effect: candidates will be updated
+	 */
+	public boolean startPop(List<MyNode> nodes, Map<MyNode, Set<N>> candidates){
+
+		List<MyNode> seeds = new ArrayList<MyNode>();
+		MyNode best = null;
+		long bestEstimate = Long.MAX_VALUE;
+
+		for (MyNode node : nodes){
+			if (node.hasAttributes()){
+				long estimate = estimator.estimate(node);
+
+				//No vertex can satisfy the requirements
+				if (estimate == 0){
+					return false;
+				}
+
+				if (estimate <= seedThreshold){
+					seeds.add(node);
+				} else if (estimate < bestEstimate){
+					best = node;
+					bestEstimate = estimate;
+				}
+			}
+		}
+
+		//Seed the cheapest node, unless the cheap nodes are already seeded
+		if (seeds.isEmpty() && best != null){
+			seeds.add(best);
+		}
+
+		if (seeds.isEmpty()){
+			return true;
+		}
+		return altStart.startPop(seeds, candidates);
+	}
+}
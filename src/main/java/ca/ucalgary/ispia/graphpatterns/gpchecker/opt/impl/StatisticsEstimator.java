@@ -0,0 +1,36 @@
+package ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.CardinalityEstimator;
+import ca.ucalgary.ispia.graphpatterns.graph.GraphStatistics;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+
+/**
+ * Estimates the candidate counts from the statistics catalog of the dataset (see GraphStatistics),
+ * assuming that the attributes are independent. Unlike IndexCardinalityEstimator, the catalog is kept
+ * up to date as the dataset changes, and does not need the attribute index.
+ */
+public class StatisticsEstimator implements CardinalityEstimator{
+
+	private final GraphStatistics stats;	//The statistics catalog of the dataset
+
+	/**
+	 * Initializes the instance variables.
+	 * @param stats The statistics catalog of the dataset
+	 */
+	public StatisticsEstimator(GraphStatistics stats){
+		this.stats = stats;
+	}
+
+	public long estimate(MyNode node){
+		if (!node.hasAttributes()){
+			return stats.getNumNodes();
+		}
+
+		double estimate = stats.estimateNodes(node.getAttributes());
+		if (estimate == 0.0){
+			return 0;
+		}
+		//Round up, so that only unsatisfiable requirements are estimated as 0
+		return (long) Math.ceil(estimate);
+	}
+}
@@ -0,0 +1,204 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverted index over the attributes of the in-memory dataset: for each attribute name and value,
+ * the sorted (ascending) ids of the entities with that value (the postings). The conjunction of several
+ * attribute requirements is answered by intersecting their postings, shortest first, using galloping
+ * (exponential) search, so the cost depends on the shortest postings rather than on the dataset size.
+ *
+ * The index is built from an AttributeStore, and is read-only afterwards.
+ */
+public class AttributeIndex {
+
+	private static final int[] EMPTY = new int[0];
+
+	private final Map<String, Map<String, int[]>> postings;		//attribute name -> value -> sorted ids
+	private final Set<String> intNames;							//The attribute names stored as int columns
+
+	/**
+	 * Builds the index of the given attribute store.
+	 * @param store The attribute store
+	 */
+	public AttributeIndex(AttributeStore store){
+		this.postings = new HashMap<String, Map<String, int[]>>();
+		this.intNames = new HashSet<String>();
+
+		for (String name : store.getNames()){
+			AttributeStore.Column column = store.getColumn(name);
+			if (column instanceof AttributeStore.IntColumn){
+				intNames.add(name);
+			}
+
+			//Bucket the ids by value; the ids are visited in ascending order, so each bucket is sorted
+			Map<String, IdList> buckets = new HashMap<String, IdList>();
+			for (int idx = 0; idx < store.size(); idx++){
+				String value = column.get(idx);
+				if (value != null){
+					IdList bucket = buckets.get(value);
+					if (bucket == null){
+						bucket = new IdList();
+						buckets.put(value, bucket);
+					}
+					bucket.add(idx);
+				}
+			}
+
+			Map<String, int[]> byValue = new HashMap<String, int[]>();
+			for (Map.Entry<String, IdList> entry : buckets.entrySet()){
+				byValue.put(entry.getKey(), entry.getValue().toArray());
+			}
+			postings.put(name, byValue);
+		}
+	}
+
+	/**
+	 * Returns the sorted ids of the entities whose attribute has the given value. The returned array
+	 * must not be modified.
+	 * @param name The attribute name
+	 * @param value The attribute value
+	 * @return The postings; empty if no entity has the value
+	 */
+	public int[] getPostings(String name, String value){
+		Map<String, int[]> byValue = postings.get(name);
+		if (byValue == null){
+			return EMPTY;
+		}
+
+		if (intNames.contains(name)){
+			//Compare as ints, e.g. "007" matches 7
+			try {
+				value = String.valueOf(Integer.parseInt(value));
+			} catch (NumberFormatException e){
+				return EMPTY;
+			}
+		}
+
+		int[] ids = byValue.get(value);
+		return ids == null ? EMPTY : ids;
+	}
+
+	/**
+	 * Returns the sorted ids of the entities that satisfy all of the given attribute requirements.
+	 * @param attrReqs The attribute names and required values
+	 * @return The sorted ids; null if there are no requirements (i.e. every entity satisfies them)
+	 */
+	public int[] lookup(Map<String, String> attrReqs){
+		if (attrReqs.isEmpty()){
+			return null;
+		}
+
+		List<int[]> lists = new ArrayList<int[]>();
+		for (Map.Entry<String, String> entry : attrReqs.entrySet()){
+			int[] ids = getPostings(entry.getKey(), entry.getValue());
+			if (ids.length == 0){
+				return EMPTY;
+			}
+			lists.add(ids);
+		}
+		return intersect(lists);
+	}
+
+	/**
+	 * Estimates the number of entities that satisfy all of the given attribute requirements, without
+	 * intersecting the postings: the length of the shortest postings (an upper bound).
+	 * @param attrReqs The attribute names and required values
+	 * @return The estimate; -1 if there are no requirements (i.e. every entity satisfies them)
+	 */
+	public int estimate(Map<String, String> attrReqs){
+		if (attrReqs.isEmpty()){
+			return -1;
+		}
+
+		int min = Integer.MAX_VALUE;
+		for (Map.Entry<String, String> entry : attrReqs.entrySet()){
+			min = Math.min(min, getPostings(entry.getKey(), entry.getValue()).length);
+		}
+		return min;
+	}
+
+	/**
+	 * Intersects the sorted id lists, starting from the shortest.
+	 * @param lists The sorted id lists
+	 * @return The sorted ids contained in every list
+	 */
+	public static int[] intersect(List<int[]> lists){
+		if (lists.isEmpty()){
+			return EMPTY;
+		}
+
+		List<int[]> sorted = new ArrayList<int[]>(lists);
+		Collections.sort(sorted, new Comparator<int[]>(){
+			@Override
+			public int compare(int[] a, int[] b){
+				return Integer.compare(a.length, b.length);
+			}
+		});
+
+		int[] result = sorted.get(0);
+		int size = result.length;
+		for (int idx = 1; idx < sorted.size() && size > 0; idx++){
+			int[] next = new int[size];
+			size = intersect(result, size, sorted.get(idx), next);
+			result = next;
+		}
+		return size == result.length ? result : Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Intersects the first size ids of small with large, by galloping through large.
+	 * @return The number of ids written to out
+	 */
+	private static int intersect(int[] small, int size, int[] large, int[] out){
+		int count = 0;
+		int pos = 0;
+		for (int idx = 0; idx < size && pos < large.length; idx++){
+			int id = small[idx];
+
+			//Gallop to a position past id, then binary search the last step
+			int step = 1;
+			int high = pos;
+			while (high < large.length && large[high] < id){
+				pos = high + 1;
+				high = pos + step;
+				step <<= 1;
+			}
+			int found = Arrays.binarySearch(large, pos, Math.min(high + 1, large.length), id);
+			if (found >= 0){
+				out[count++] = id;
+				pos = found + 1;
+			} else {
+				pos = -found - 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * A growable list of ints.
+	 */
+	private static class IdList {
+		private int[] ids = new int[4];
+		private int size = 0;
+
+		private void add(int id){
+			if (size == ids.length){
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		private int[] toArray(){
+			return Arrays.copyOf(ids, size);
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ucalgary.ispia.graphpatterns.util.AttributeTypes;
+
+/**
+ * A columnar store for the attributes of the in-memory dataset, keyed by the dense index of the entities
+ * (the node ids, or the relationship ids). There is one column per attribute name:
+ * the attributes of AttributeTypes.isIntType(...) are stored as int columns, the rest as dictionary
+ * encoded string columns (each distinct value is stored once, and each entity stores an int code).
+ * Compared to a HashMap of Strings per entity, this takes a fraction of the memory, and the attribute
+ * checks compare ints (see DSConstraintsChecker).
+ *
+ * An int column that receives a value that is not an int (in its canonical string form) is converted
+ * to a string column. The store is not thread safe for writes; build it before the evaluation.
+ */
+public class AttributeStore {
+
+	private final Map<String, Column> columns;		//The columns, by attribute name
+	private int size;								//The largest index with an attribute + 1
+
+	/**
+	 * Creates an empty store.
+	 */
+	public AttributeStore(){
+		this.columns = new HashMap<String, Column>();
+		this.size = 0;
+	}
+
+	/**
+	 * Creates the store for the attributes of the given nodes, keyed by the node ids.
+	 * @param nodes The nodes
+	 * @return The attribute store
+	 */
+	public static AttributeStore ofNodes(Collection<MyNode> nodes){
+		AttributeStore store = new AttributeStore();
+		for (MyNode node : nodes){
+			store.setAll(node.getId(), node.getAttributes());
+		}
+		return store;
+	}
+
+	/**
+	 * Creates the store for the attributes of the given relationships, keyed by the relationship ids.
+	 * @param rels The relationships
+	 * @return The attribute store
+	 */
+	public static AttributeStore ofRelationships(Collection<MyRelationship> rels){
+		AttributeStore store = new AttributeStore();
+		for (MyRelationship rel : rels){
+			store.setAll(rel.getId(), rel.getAttributes());
+		}
+		return store;
+	}
+
+	/**
+	 * Sets the attribute of the entity at the given index.
+	 * @param idx The entity index
+	 * @param name The attribute name
+	 * @param value The attribute value
+	 */
+	public void set(int idx, String name, String value){
+		Column column = columns.get(name);
+		if (column == null){
+			column = AttributeTypes.isIntType(name) ? new IntColumn() : new StringColumn();
+			columns.put(name, column);
+		}
+
+		if (column instanceof IntColumn && !IntColumn.isInt(value)){
+			//Not an int after all; convert to a string column
+			column = ((IntColumn) column).toStringColumn();
+			columns.put(name, column);
+		}
+
+		column.set(idx, value);
+		size = Math.max(size, idx + 1);
+	}
+
+	/**
+	 * Sets all of the given attributes of the entity at the given index.
+	 * @param idx The entity index
+	 * @param attributes The attribute names and values
+	 */
+	public void setAll(int idx, Map<String, String> attributes){
+		for (Map.Entry<String, String> entry : attributes.entrySet()){
+			set(idx, entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * @param idx The entity index
+	 * @param name The attribute name
+	 * @return The attribute value (as string), or null if the entity does not have the attribute.
+	 */
+	public String get(int idx, String name){
+		Column column = columns.get(name);
+		if (column == null){
+			return null;
+		}
+		return column.get(idx);
+	}
+
+	/**
+	 * @param name The attribute name
+	 * @return The column of the attribute, or null if no entity has the attribute.
+	 */
+	public Column getColumn(String name){
+		return columns.get(name);
+	}
+
+	/**
+	 * @return The attribute names
+	 */
+	public Set<String> getNames(){
+		return Collections.unmodifiableSet(columns.keySet());
+	}
+
+	/**
+	 * @return The largest index with an attribute + 1
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * The values of an attribute, by entity index.
+	 */
+	public static abstract class Column {
+
+		/**
+		 * @param idx The entity index
+		 * @return True if the entity has the attribute
+		 */
+		public abstract boolean has(int idx);
+
+		/**
+		 * @param idx The entity index
+		 * @return The attribute value (as string), or null if the entity does not have the attribute.
+		 */
+		public abstract String get(int idx);
+
+		abstract void set(int idx, String value);
+	}
+
+	/**
+	 * An int column. The presence of the values is kept in a bit set, so that every int is a valid value.
+	 */
+	public static class IntColumn extends Column {
+		private int[] values;
+		private final BitSet present;
+
+		IntColumn(){
+			this.values = new int[16];
+			this.present = new BitSet();
+		}
+
+		/**
+		 * @param idx The entity index
+		 * @return The value; only meaningful if has(idx)
+		 */
+		public int getInt(int idx){
+			return idx < values.length ? values[idx] : 0;
+		}
+
+		public boolean has(int idx){
+			return idx >= 0 && present.get(idx);
+		}
+
+		public String get(int idx){
+			return has(idx) ? String.valueOf(values[idx]) : null;
+		}
+
+		void set(int idx, String value){
+			if (idx >= values.length){
+				values = Arrays.copyOf(values, Math.max(idx + 1, values.length * 2));
+			}
+			values[idx] = Integer.parseInt(value);
+			present.set(idx);
+		}
+
+		/**
+		 * Checks if the value is an int whose string form is exactly the value (so that it reads back unchanged).
+		 */
+		static boolean isInt(String value){
+			try {
+				return String.valueOf(Integer.parseInt(value)).equals(value);
+			} catch (NumberFormatException e){
+				return false;
+			}
+		}
+
+		StringColumn toStringColumn(){
+			StringColumn column = new StringColumn();
+			for (int idx = present.nextSetBit(0); idx >= 0; idx = present.nextSetBit(idx + 1)){
+				column.set(idx, String.valueOf(values[idx]));
+			}
+			return column;
+		}
+	}
+
+	/**
+	 * A dictionary encoded string column. Each entity stores the code of its value (the index in the dictionary),
+	 * or MISSING if it does not have the attribute.
+	 */
+	public static class StringColumn extends Column {
+		public static final int MISSING = -1;
+
+		private int[] codes;
+		private final List<String> dictionary;
+		private final Map<String, Integer> codesByValue;
+
+		StringColumn(){
+			this.codes = new int[16];
+			Arrays.fill(codes, MISSING);
+			this.dictionary = new ArrayList<String>();
+			this.codesByValue = new HashMap<String, Integer>();
+		}
+
+		/**
+		 * @param idx The entity index
+		 * @return The code of the value, or MISSING
+		 */
+		public int getCode(int idx){
+			return idx >= 0 && idx < codes.length ? codes[idx] : MISSING;
+		}
+
+		/**
+		 * @param value The value
+		 * @return The code of the value, or MISSING if no entity has the value.
+		 */
+		public int codeOf(String value){
+			Integer code = codesByValue.get(value);
+			return code == null ? MISSING : code;
+		}
+
+		/**
+		 * @return The number of distinct values
+		 */
+		public int getDictionarySize(){
+			return dictionary.size();
+		}
+
+		public boolean has(int idx){
+			return getCode(idx) != MISSING;
+		}
+
+		public String get(int idx){
+			int code = getCode(idx);
+			return code == MISSING ? null : dictionary.get(code);
+		}
+
+		void set(int idx, String value){
+			if (idx >= codes.length){
+				int oldLength = codes.length;
+				codes = Arrays.copyOf(codes, Math.max(idx + 1, codes.length * 2));
+				Arrays.fill(codes, oldLength, codes.length, MISSING);
+			}
+
+			Integer code = codesByValue.get(value);
+			if (code == null){
+				code = dictionary.size();
+				dictionary.add(value);
+				codesByValue.put(value, code);
+			}
+			codes[idx] = code;
+		}
+	}
+}
@@ -0,0 +1,390 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import ca.ucalgary.ispia.graphpatterns.util.Pair;
+
+/**
+ * The canonical form of a GPHolder: an encoding of the graph pattern, the mutual exclusion constraints between
+ * its nodes, the attribute requirements and the result schema, that is the same for two GPHolders if and only
+ * if they are isomorphic (i.e. they only differ in the node ids and in the order of the nodes and relationships).
+ * The canonical order of the nodes maps the nodes of isomorphic GPHolders to each other.
+ *
+ * The nodes are ordered by colour refinement (each node is coloured by its requirements, then repeatedly by the
+ * multiset of the colours of its neighbours), and the remaining ties are broken by trying each node of the first
+ * tied class, keeping the order with the smallest encoding. Twins (nodes with the same neighbours, e.g. the
+ * identical leaves of a star) are interchangeable, so only one of them is tried. Other symmetric patterns can make
+ * the tie breaking exponential, so it gives up after MAX_LEAVES orders; of(...) then returns null.
+ */
+public class CanonicalForm {
+
+	private static final int MAX_LEAVES = 512;		//The maximum number of complete orders to try
+
+	private final String encoding;					//The canonical encoding
+	private final MyNode[] order;					//The nodes, in the canonical order
+
+	private CanonicalForm(String encoding, MyNode[] order){
+		this.encoding = encoding;
+		this.order = order;
+	}
+
+	/**
+	 * Computes the canonical form of the given GPHolder.
+	 * @param gph The GPHolder
+	 * @return The canonical form, or null if the pattern is too symmetric to order within the budget.
+	 */
+	public static CanonicalForm of(GPHolder gph){
+		Builder builder = new Builder(gph);
+		return builder.build();
+	}
+
+	/**
+	 * @return The canonical encoding
+	 */
+	public String getEncoding(){
+		return encoding;
+	}
+
+	/**
+	 * @return The number of nodes
+	 */
+	public int size(){
+		return order.length;
+	}
+
+	/**
+	 * @param pos The canonical position
+	 * @return The node at the canonical position
+	 */
+	public MyNode getNode(int pos){
+		return order[pos];
+	}
+
+	/**
+	 * Maps the nodes of this form to the nodes at the same canonical positions of the other form.
+	 * @param other The form of an isomorphic GPHolder (i.e. equals(other))
+	 * @return The map from the nodes of this form to the nodes of the other form
+	 */
+	public Map<MyNode, MyNode> mapTo(CanonicalForm other){
+		Map<MyNode, MyNode> mapping = new HashMap<MyNode, MyNode>();
+		for (int pos = 0; pos < order.length; pos++){
+			mapping.put(order[pos], other.order[pos]);
+		}
+		return mapping;
+	}
+
+	@Override
+	public int hashCode(){
+		return encoding.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj){
+		if (this == obj){
+			return true;
+		}
+		if (!(obj instanceof CanonicalForm)){
+			return false;
+		}
+		return encoding.equals(((CanonicalForm) obj).encoding);
+	}
+
+	@Override
+	public String toString(){
+		return encoding;
+	}
+
+	/**
+	 * Encodes the attributes unambiguously, in the order of the names: each name and value is prefixed by its length.
+	 * @param attributes The attributes
+	 * @return The encoding
+	 */
+	public static String encode(Map<String, String> attributes){
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> entry : new TreeMap<String, String>(attributes).entrySet()){
+			sb.append(entry.getKey().length()).append(':').append(entry.getKey());
+			sb.append(entry.getValue().length()).append(':').append(entry.getValue());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Computes the canonical form.
+	 */
+	private static class Builder {
+		private final MyNode[] nodes;				//The nodes, in the order of gp.getNodes()
+		private final String[] nodeLabels;			//The encoded requirements of each node
+		private final int[] srcs;					//The source of each relationship
+		private final int[] tgts;					//The target of each relationship
+		private final String[] relLabels;			//The encoded type and requirements of each relationship
+		private final List<int[]> mexes;			//The mex constraints between the nodes
+		private final List<List<String>> adjacency;	//For each node, the kind and label of each adjacent entry (paired with adjacentNodes)
+		private final List<List<Integer>> adjacentNodes;	//For each node, the other end of each adjacent entry
+		private String[] twinKeys;					//For each node, its sorted adjacent entries; equal for twins
+
+		private int leaves;							//The number of complete orders tried
+		private String bestEncoding;				//The smallest encoding so far
+		private int[] bestColours;					//The order with the smallest encoding: node -> position
+
+		private Builder(GPHolder gph){
+			GraphPattern gp = gph.getGp();
+			List<MyNode> gpNodes = gp.getNodes();
+			nodes = gpNodes.toArray(new MyNode[gpNodes.size()]);
+
+			Map<MyNode, Integer> numbers = new HashMap<MyNode, Integer>();
+			for (int idx = 0; idx < nodes.length; idx++){
+				numbers.put(nodes[idx], idx);
+			}
+
+			Set<MyNode> schema = new HashSet<MyNode>();
+			if (gph.getResultSchema() != null){
+				schema.addAll(gph.getResultSchema());
+			}
+			nodeLabels = new String[nodes.length];
+			for (int idx = 0; idx < nodes.length; idx++){
+				nodeLabels[idx] = (schema.contains(nodes[idx]) ? "S" : "N") + encode(nodes[idx].getAttributes());
+			}
+
+			List<MyRelationship> rels = gp.getAllRelationships();
+			srcs = new int[rels.size()];
+			tgts = new int[rels.size()];
+			relLabels = new String[rels.size()];
+			adjacency = new ArrayList<List<String>>();
+			adjacentNodes = new ArrayList<List<Integer>>();
+			for (int idx = 0; idx < nodes.length; idx++){
+				adjacency.add(new ArrayList<String>());
+				adjacentNodes.add(new ArrayList<Integer>());
+			}
+
+			for (int idx = 0; idx < rels.size(); idx++){
+				MyRelationship rel = rels.get(idx);
+				srcs[idx] = numbers.get(rel.getSource());
+				tgts[idx] = numbers.get(rel.getTarget());
+				relLabels[idx] = rel.getIdentifier().name() + encode(rel.getAttributes());
+
+				addAdjacent(srcs[idx], "o" + relLabels[idx], tgts[idx]);
+				addAdjacent(tgts[idx], "i" + relLabels[idx], srcs[idx]);
+			}
+
+			//Only the constraints between gp nodes can filter anything
+			mexes = new ArrayList<int[]>();
+			for (Pair<MyNode, MyNode> mex : gph.getMexList()){
+				Integer first = numbers.get(mex.first);
+				Integer second = numbers.get(mex.second);
+				if (first != null && second != null){
+					mexes.add(new int[]{first, second});
+					addAdjacent(first, "m", second);
+					addAdjacent(second, "m", first);
+				}
+			}
+		}
+
+		private void addAdjacent(int node, String label, int other){
+			adjacency.get(node).add(label);
+			adjacentNodes.get(node).add(other);
+		}
+
+		private CanonicalForm build(){
+			twinKeys = new String[nodes.length];
+			for (int idx = 0; idx < nodes.length; idx++){
+				List<String> entries = new ArrayList<String>();
+				for (int adj = 0; adj < adjacency.get(idx).size(); adj++){
+					entries.add(adjacency.get(idx).get(adj) + "@" + adjacentNodes.get(idx).get(adj));
+				}
+				Collections.sort(entries);
+				twinKeys[idx] = entries.toString();
+			}
+
+			//The initial colours are the ranks of the node labels
+			final String[] labels = nodeLabels;
+			int[] colours = rank(nodes.length, new Comparator<Integer>(){
+				@Override
+				public int compare(Integer a, Integer b){
+					return labels[a].compareTo(labels[b]);
+				}
+			});
+
+			search(refine(colours));
+			if (bestEncoding == null){
+				return null;
+			}
+
+			MyNode[] order = new MyNode[nodes.length];
+			for (int idx = 0; idx < nodes.length; idx++){
+				order[bestColours[idx]] = nodes[idx];
+			}
+			return new CanonicalForm(bestEncoding, order);
+		}
+
+		/**
+		 * Breaks the ties of the first tied colour class by trying each of its nodes, and keeps the smallest encoding.
+		 * @return False if the budget is exceeded
+		 */
+		private boolean search(int[] colours){
+			//Find the smallest colour shared by more than one node
+			int[] counts = new int[nodes.length];
+			for (int colour : colours){
+				counts[colour]++;
+			}
+			int tied = -1;
+			for (int colour = 0; colour < counts.length && tied < 0; colour++){
+				if (counts[colour] > 1){
+					tied = colour;
+				}
+			}
+
+			if (tied < 0){
+				//A complete order
+				if (++leaves > MAX_LEAVES){
+					bestEncoding = null;
+					return false;
+				}
+				String enc = encodeOrder(colours);
+				if (bestEncoding == null || enc.compareTo(bestEncoding) < 0){
+					bestEncoding = enc;
+					bestColours = colours;
+				}
+				return true;
+			}
+
+			Set<String> tried = new HashSet<String>();
+			for (int idx = 0; idx < nodes.length; idx++){
+				//Swapping twins is an automorphism, so the twins of a tried node lead to the same encodings
+				if (colours[idx] == tied && tried.add(twinKeys[idx])){
+					//Individualize the node: it precedes the rest of its class
+					int[] next = new int[nodes.length];
+					for (int other = 0; other < nodes.length; other++){
+						next[other] = colours[other] * 2 + (other == idx ? 0 : 1);
+					}
+					if (!search(refine(rerank(next)))){
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Refines the colours by the multisets of the colours of the neighbours, until the number of classes is stable.
+		 */
+		private int[] refine(int[] colours){
+			int classes = countClasses(colours);
+			while (true){
+				final int[] current = colours;
+				final String[] signatures = new String[nodes.length];
+				for (int idx = 0; idx < nodes.length; idx++){
+					List<String> parts = new ArrayList<String>();
+					List<String> labels = adjacency.get(idx);
+					List<Integer> others = adjacentNodes.get(idx);
+					for (int adj = 0; adj < labels.size(); adj++){
+						parts.add(current[others.get(adj)] + "/" + labels.get(adj));
+					}
+					Collections.sort(parts);
+					signatures[idx] = parts.toString();
+				}
+
+				int[] next = rank(nodes.length, new Comparator<Integer>(){
+					@Override
+					public int compare(Integer a, Integer b){
+						if (current[a] != current[b]){
+							return Integer.compare(current[a], current[b]);
+						}
+						return signatures[a].compareTo(signatures[b]);
+					}
+				});
+
+				int nextClasses = countClasses(next);
+				if (nextClasses == classes){
+					return next;
+				}
+				colours = next;
+				classes = nextClasses;
+			}
+		}
+
+		private int[] rerank(final int[] values){
+			return rank(values.length, new Comparator<Integer>(){
+				@Override
+				public int compare(Integer a, Integer b){
+					return Integer.compare(values[a], values[b]);
+				}
+			});
+		}
+
+		/**
+		 * Returns the dense rank of each index under the comparator (equal indices get the same rank).
+		 */
+		private static int[] rank(int size, Comparator<Integer> comparator){
+			Integer[] sorted = new Integer[size];
+			for (int idx = 0; idx < size; idx++){
+				sorted[idx] = idx;
+			}
+			Arrays.sort(sorted, comparator);
+
+			int[] ranks = new int[size];
+			int current = 0;
+			for (int pos = 0; pos < size; pos++){
+				if (pos > 0 && comparator.compare(sorted[pos - 1], sorted[pos]) != 0){
+					current++;
+				}
+				ranks[sorted[pos]] = current;
+			}
+			return ranks;
+		}
+
+		private static int countClasses(int[] colours){
+			int max = -1;
+			for (int colour : colours){
+				max = Math.max(max, colour);
+			}
+			return max + 1;
+		}
+
+		/**
+		 * Encodes the pattern with the nodes at the given positions.
+		 */
+		private String encodeOrder(int[] positions){
+			String[] orderedLabels = new String[nodes.length];
+			for (int idx = 0; idx < nodes.length; idx++){
+				orderedLabels[positions[idx]] = nodeLabels[idx];
+			}
+
+			List<String> rels = new ArrayList<String>();
+			for (int idx = 0; idx < srcs.length; idx++){
+				rels.add(positions[srcs[idx]] + ">" + positions[tgts[idx]] + ":" + relLabels[idx]);
+			}
+			Collections.sort(rels);
+
+			List<String> mexStrs = new ArrayList<String>();
+			for (int[] mex : mexes){
+				int first = Math.min(positions[mex[0]], positions[mex[1]]);
+				int second = Math.max(positions[mex[0]], positions[mex[1]]);
+				mexStrs.add(first + "~" + second);
+			}
+			Collections.sort(mexStrs);
+
+			StringBuilder sb = new StringBuilder();
+			for (String label : orderedLabels){
+				sb.append(label.length()).append(':').append(label);
+			}
+			sb.append('|');
+			for (String rel : rels){
+				sb.append(rel.length()).append(':').append(rel);
+			}
+			sb.append('|');
+			for (String mex : mexStrs){
+				sb.append(mex).append(',');
+			}
+			return sb.toString();
+		}
+	}
+}
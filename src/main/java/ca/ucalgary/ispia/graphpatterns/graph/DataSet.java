@@ -102,6 +102,25 @@ public class DataSet implements Serializable{
 
 	}
 
+	/**
+	 * Remove the relationship from the graph pattern. The source and target nodes are kept.
+	 * @param rel The relationship to remove.
+	 * @return True if the relationship was in the graph pattern, else false.
+	 */
+	public boolean removeRelationship(MyRelationship rel){
+
+		Set<MyRelationship> list = outgoingRels.get(rel.getSource());
+		if (list == null || !list.remove(rel)){
+			return false;
+		}
+
+		//Drop the source node from the adjacency list once it has no outgoing relationships left
+		if (list.isEmpty()){
+			outgoingRels.remove(rel.getSource());
+		}
+		return true;
+	}
+
 	/**
 	 * Returns the key set for the outgoing relationships. IE returns the set of nodes that have at least 1 outgoing
 	 * edge.
@@ -0,0 +1,366 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compressed sparse row (CSR) adjacency store for a DataSet. For each relationship type and direction,
+ * the neighbours of all nodes are stored in one int array (targets), and the range of node i is
+ * [offsets[i], offsets[i+1]). The outgoing arrays form the CSR and the incoming arrays the CSC of the
+ * graph. Each range is sorted by neighbour id, and the relationship ids are kept in a parallel array.
+ * The arrays are held as IntBuffers, which are either heap backed (when built from a DataSet) or
+ * memory mapped (when opened from a GraphSnapshot file).
+ *
+ * Compared to DataSetInterface, this holds no HashSet or boxed neighbour references; only the id to
+ * node lookup array holds MyNode objects.
+ */
+public class DataSetCSR {
+
+	private final MyNode[] nodes;		//The lookup from id to node
+
+	//Indexed by [relType.getIdx()]
+	private final IntBuffer[] outOffsets;
+	private final IntBuffer[] outTargets;
+	private final IntBuffer[] outRelIds;
+	private final IntBuffer[] inOffsets;
+	private final IntBuffer[] inTargets;
+	private final IntBuffer[] inRelIds;
+
+	/**
+	 * Builds the adjacency store from the given dataset.
+	 * @param dataSet The dataset
+	 */
+	public DataSetCSR(DataSet dataSet){
+
+		//The node ids are used as indexes
+		int maxId = -1;
+		for (MyNode node : dataSet.getNodes()){
+			maxId = Math.max(maxId, node.getId());
+		}
+		nodes = new MyNode[maxId + 1];
+		for (MyNode node : dataSet.getNodes()){
+			nodes[node.getId()] = node;
+		}
+
+		int numRelTypes = RelType.values().length;
+		outOffsets = new IntBuffer[numRelTypes];
+		outTargets = new IntBuffer[numRelTypes];
+		outRelIds = new IntBuffer[numRelTypes];
+		inOffsets = new IntBuffer[numRelTypes];
+		inTargets = new IntBuffer[numRelTypes];
+		inRelIds = new IntBuffer[numRelTypes];
+
+		populate(dataSet.getOutgoingRels());
+	}
+
+	/**
+	 * Creates the store over already built buffers (e.g. mapped from a snapshot file).
+	 */
+	DataSetCSR(MyNode[] nodes, IntBuffer[] outOffsets, IntBuffer[] outTargets, IntBuffer[] outRelIds, IntBuffer[] inOffsets, IntBuffer[] inTargets, IntBuffer[] inRelIds){
+		this.nodes = nodes;
+		this.outOffsets = outOffsets;
+		this.outTargets = outTargets;
+		this.outRelIds = outRelIds;
+		this.inOffsets = inOffsets;
+		this.inTargets = inTargets;
+		this.inRelIds = inRelIds;
+	}
+
+	/**
+	 * Populates the arrays: count the degrees, compute the offsets, fill the ranges, and sort each range.
+	 */
+	private void populate(Map<MyNode, Set<MyRelationship>> relationships){
+		int numNodes = nodes.length;
+		int numRelTypes = outOffsets.length;
+
+		int[][] outOff = new int[numRelTypes][];
+		int[][] outTgt = new int[numRelTypes][];
+		int[][] outRel = new int[numRelTypes][];
+		int[][] inOff = new int[numRelTypes][];
+		int[][] inTgt = new int[numRelTypes][];
+		int[][] inRel = new int[numRelTypes][];
+
+		//Count the degrees. offsets[i+1] holds the degree of node i for now.
+		for (int type = 0; type < numRelTypes; type++){
+			outOff[type] = new int[numNodes + 1];
+			inOff[type] = new int[numNodes + 1];
+		}
+
+		for (MyNode key : relationships.keySet()){
+			for (MyRelationship rel : relationships.get(key)){
+				int type = rel.getIdentifier().getIdx();
+				outOff[type][rel.getSource().getId() + 1]++;
+				inOff[type][rel.getTarget().getId() + 1]++;
+			}
+		}
+
+		//Prefix sums, and allocate the ranges
+		for (int type = 0; type < numRelTypes; type++){
+			for (int idx = 0; idx < numNodes; idx++){
+				outOff[type][idx + 1] += outOff[type][idx];
+				inOff[type][idx + 1] += inOff[type][idx];
+			}
+			outTgt[type] = new int[outOff[type][numNodes]];
+			outRel[type] = new int[outOff[type][numNodes]];
+			inTgt[type] = new int[inOff[type][numNodes]];
+			inRel[type] = new int[inOff[type][numNodes]];
+		}
+
+		//Fill the ranges, using a write position per (type, node)
+		int[][] outPos = new int[numRelTypes][];
+		int[][] inPos = new int[numRelTypes][];
+		for (int type = 0; type < numRelTypes; type++){
+			outPos[type] = Arrays.copyOf(outOff[type], numNodes);
+			inPos[type] = Arrays.copyOf(inOff[type], numNodes);
+		}
+
+		for (MyNode key : relationships.keySet()){
+			for (MyRelationship rel : relationships.get(key)){
+				int type = rel.getIdentifier().getIdx();
+				int src = rel.getSource().getId();
+				int tgt = rel.getTarget().getId();
+
+				outTgt[type][outPos[type][src]] = tgt;
+				outRel[type][outPos[type][src]] = rel.getId();
+				outPos[type][src]++;
+
+				inTgt[type][inPos[type][tgt]] = src;
+				inRel[type][inPos[type][tgt]] = rel.getId();
+				inPos[type][tgt]++;
+			}
+		}
+
+		//Sort each range by neighbour id, and wrap the arrays
+		for (int type = 0; type < numRelTypes; type++){
+			sortRanges(outOff[type], outTgt[type], outRel[type]);
+			sortRanges(inOff[type], inTgt[type], inRel[type]);
+
+			outOffsets[type] = IntBuffer.wrap(outOff[type]);
+			outTargets[type] = IntBuffer.wrap(outTgt[type]);
+			outRelIds[type] = IntBuffer.wrap(outRel[type]);
+			inOffsets[type] = IntBuffer.wrap(inOff[type]);
+			inTargets[type] = IntBuffer.wrap(inTgt[type]);
+			inRelIds[type] = IntBuffer.wrap(inRel[type]);
+		}
+	}
+
+	/**
+	 * Sorts each node's range by neighbour id, keeping the relationship ids parallel.
+	 */
+	private static void sortRanges(int[] offsets, int[] targets, int[] relIds){
+		long[] scratch = new long[16];
+
+		for (int idx = 0; idx + 1 < offsets.length; idx++){
+			int start = offsets[idx];
+			int end = offsets[idx + 1];
+			int len = end - start;
+			if (len < 2){
+				continue;
+			}
+
+			//Pack (neighbour, relId) into a long, so a single sort keeps them together
+			if (scratch.length < len){
+				scratch = new long[Math.max(len, scratch.length * 2)];
+			}
+			for (int i = 0; i < len; i++){
+				scratch[i] = ((long) targets[start + i] << 32) | (relIds[start + i] & 0xFFFFFFFFL);
+			}
+			Arrays.sort(scratch, 0, len);
+			for (int i = 0; i < len; i++){
+				targets[start + i] = (int) (scratch[i] >>> 32);
+				relIds[start + i] = (int) scratch[i];
+			}
+		}
+	}
+
+	//--------------------------//
+	// ACCESS METHODS
+	//--------------------------//
+
+	/**
+	 * Returns the set of neighbours of the given node, based on the given relType and direction.
+	 * For one direction, the returned set is a view over the sorted range (no copying).
+	 * @param node The node
+	 * @param relType The relationship type
+	 * @param dir The direction of relationships
+	 * @return The set of neighbours to/from the given node.
+	 */
+	public Set<MyNode> getNeighbours(MyNode node, RelType relType, MyDirection dir){
+		int id = node.getId();
+		int type = relType.getIdx();
+
+		if (id >= nodes.length){
+			return new SortedIdSet(nodes, IntBuffer.allocate(0), 0, 0);
+		}
+
+		if (dir == MyDirection.OUTGOING){
+			//Outgoing relationships; node = src
+			return new SortedIdSet(nodes, outTargets[type], outOffsets[type].get(id), outOffsets[type].get(id + 1));
+		} else if (dir == MyDirection.INCOMING){
+			//Incoming relationships; node = tgt
+			return new SortedIdSet(nodes, inTargets[type], inOffsets[type].get(id), inOffsets[type].get(id + 1));
+		} else {
+			//Both directions; merge the two sorted ranges
+			int[] merged = merge(outTargets[type], outOffsets[type].get(id), outOffsets[type].get(id + 1),
+					inTargets[type], inOffsets[type].get(id), inOffsets[type].get(id + 1));
+			return new SortedIdSet(nodes, IntBuffer.wrap(merged), 0, merged.length);
+		}
+	}
+
+	/**
+	 * Returns all of the neighbours of the given node, over all types and directions.
+	 * @param node The node
+	 * @return all of the neighbours of the given node
+	 */
+	public Set<MyNode> getAllNeighbours(MyNode node){
+
+		//Initialize result list
+		Set<MyNode> result = new HashSet<MyNode>();
+
+		if (node == null || node.getId() >= nodes.length){
+			return result;
+		}
+
+		for (RelType type : RelType.values()){
+			result.addAll(getNeighbours(node, type, MyDirection.BOTH));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Checks if there is a relationship of the given type from src to tgt, using binary search.
+	 * @param src The source node id
+	 * @param tgt The target node id
+	 * @param relType The relationship type
+	 * @return True if the relationship exists, else false.
+	 */
+	public boolean hasRelationship(int src, int tgt, RelType relType){
+		if (src >= nodes.length){
+			return false;
+		}
+		int type = relType.getIdx();
+		IntBuffer targets = outTargets[type];
+
+		int low = outOffsets[type].get(src);
+		int high = outOffsets[type].get(src + 1) - 1;
+		while (low <= high){
+			int mid = (low + high) >>> 1;
+			int val = targets.get(mid);
+			if (val < tgt){
+				low = mid + 1;
+			} else if (val > tgt){
+				high = mid - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the offsets buffer for the given type and direction. The range of node i in the
+	 * targets buffer is [offsets.get(i), offsets.get(i+1)).
+	 * @param relType The relationship type
+	 * @param dir The direction (OUTGOING or INCOMING)
+	 * @return The offsets buffer
+	 */
+	public IntBuffer getOffsets(RelType relType, MyDirection dir){
+		return dir == MyDirection.INCOMING ? inOffsets[relType.getIdx()] : outOffsets[relType.getIdx()];
+	}
+
+	/**
+	 * Returns the targets buffer for the given type and direction. Each node's range is sorted.
+	 * @param relType The relationship type
+	 * @param dir The direction (OUTGOING or INCOMING)
+	 * @return The targets buffer
+	 */
+	public IntBuffer getTargets(RelType relType, MyDirection dir){
+		return dir == MyDirection.INCOMING ? inTargets[relType.getIdx()] : outTargets[relType.getIdx()];
+	}
+
+	/**
+	 * Returns the relationship ids buffer for the given type and direction, parallel to the targets buffer.
+	 * @param relType The relationship type
+	 * @param dir The direction (OUTGOING or INCOMING)
+	 * @return The relationship ids buffer
+	 */
+	public IntBuffer getRelIds(RelType relType, MyDirection dir){
+		return dir == MyDirection.INCOMING ? inRelIds[relType.getIdx()] : outRelIds[relType.getIdx()];
+	}
+
+	/**
+	 * Returns the number of relationships of the given type and direction at the given node.
+	 * @param id The node id
+	 * @param relType The relationship type
+	 * @param dir The direction (OUTGOING or INCOMING)
+	 * @return The degree
+	 */
+	public int getDegree(int id, RelType relType, MyDirection dir){
+		if (id >= nodes.length){
+			return 0;
+		}
+		IntBuffer offsets = getOffsets(relType, dir);
+		return offsets.get(id + 1) - offsets.get(id);
+	}
+
+	public int getInDegree(MyNode node){
+		int total = 0;
+		for (RelType type : RelType.values()){
+			total += getDegree(node.getId(), type, MyDirection.INCOMING);
+		}
+		return total;
+	}
+
+	public int getOutDegree(MyNode node){
+		int total = 0;
+		for (RelType type : RelType.values()){
+			total += getDegree(node.getId(), type, MyDirection.OUTGOING);
+		}
+		return total;
+	}
+
+	public int getTotalDegree(MyNode node){
+		return getInDegree(node) + getOutDegree(node);
+	}
+
+	public MyNode findNode(int id){
+		if (id < 0 || id >= nodes.length){
+			return null;
+		}
+		return nodes[id];
+	}
+
+	public MyNode[] getNodes(){
+		return this.nodes;
+	}
+
+	//--------------------------//
+	// HELPER METHODS
+	//--------------------------//
+
+	/**
+	 * Merges two sorted ranges into a new sorted array.
+	 */
+	private static int[] merge(IntBuffer a, int aFrom, int aTo, IntBuffer b, int bFrom, int bTo){
+		int[] result = new int[(aTo - aFrom) + (bTo - bFrom)];
+		int pos = 0;
+		while (aFrom < aTo && bFrom < bTo){
+			if (a.get(aFrom) <= b.get(bFrom)){
+				result[pos++] = a.get(aFrom++);
+			} else {
+				result[pos++] = b.get(bFrom++);
+			}
+		}
+		while (aFrom < aTo){
+			result[pos++] = a.get(aFrom++);
+		}
+		while (bFrom < bTo){
+			result[pos++] = b.get(bFrom++);
+		}
+		return result;
+	}
+}
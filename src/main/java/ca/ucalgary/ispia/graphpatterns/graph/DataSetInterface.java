@@ -1,36 +1,92 @@
 package ca.ucalgary.ispia.graphpatterns.graph;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-
+/**
+ * The adjacency matrices of the in-memory dataset: for each node and relationship type, the set of outgoing
+ * and incoming neighbours.
+ *
+ * The matrices can be modified concurrently (addRelationship and removeRelationship) while they are read. The
+ * neighbours of a node are an immutable segment (a neighbour set per relationship type), which the writers copy
+ * and replace (copy-on-write), so the reads never lock, and a set returned by getNeighbours never changes. An
+ * update holds the striped locks of both of its nodes, so the updates of the same relationship are serialized
+ * and the outgoing and incoming matrices stay symmetric.
+ *
+ * A read sees each node as of some update, but a search that reads several nodes may see an update on one of
+ * its nodes and not on the other. snapshot() returns a read-only view of the matrices as of one version, for the
+ * searches that need a consistent graph; it shares the segments, so it only copies one reference per node.
+ */
 public class DataSetInterface {
-	private Set<MyNode>[][] matrixOut;
-	private Set<MyNode>[][] matrixIn;
-	private MyNode[] nodes;
+
+	private static final int STRIPES = 64;		//The number of write locks; a power of 2
+
+	private final AtomicReferenceArray<Set<MyNode>[]> matrixOut;	//The outgoing neighbours segment of each node
+	private final AtomicReferenceArray<Set<MyNode>[]> matrixIn;	//The incoming neighbours segment of each node
+	private final MyNode[] nodes;
+	private final int numRelTypes;
+
+	private final Object[] stripes;				//The write locks, by node id; null for a snapshot
+	private final ReadWriteLock versionLock;	//Shared by the writers, exclusive for taking a snapshot; null for a snapshot
+	private final AtomicLong version;			//The number of updates applied
 
 	public DataSetInterface(DataSet dataSet){
 
 		int numNodes = dataSet.getNodes().size()+1;
-		int numRelTypes = dataSet.getRelTypes().size();
-		matrixOut = new HashSet[numNodes][numRelTypes];
-		matrixIn = new HashSet[numNodes][numRelTypes];
+		numRelTypes = dataSet.getRelTypes().size();
+		matrixOut = new AtomicReferenceArray<Set<MyNode>[]>(numNodes);
+		matrixIn = new AtomicReferenceArray<Set<MyNode>[]>(numNodes);
 		nodes = new MyNode[numNodes];
-		
+
+		stripes = new Object[STRIPES];
+		for (int idx = 0; idx < STRIPES; idx++){
+			stripes[idx] = new Object();
+		}
+		versionLock = new ReentrantReadWriteLock();
+		version = new AtomicLong(0);
+
 		populateNodes(dataSet);
 		populateMatrix(dataSet);
 	}
-	
+
+	/**
+	 * Creates a read-only snapshot of the source, sharing its segments.
+	 */
+	private DataSetInterface(DataSetInterface source, long version){
+		int numNodes = source.nodes.length;
+		this.matrixOut = new AtomicReferenceArray<Set<MyNode>[]>(numNodes);
+		this.matrixIn = new AtomicReferenceArray<Set<MyNode>[]>(numNodes);
+		for (int idx = 0; idx < numNodes; idx++){
+			this.matrixOut.set(idx, source.matrixOut.get(idx));
+			this.matrixIn.set(idx, source.matrixIn.get(idx));
+		}
+		this.nodes = source.nodes;
+		this.numRelTypes = source.numRelTypes;
+		this.stripes = null;
+		this.versionLock = null;
+		this.version = new AtomicLong(version);
+	}
+
 	private void populateNodes(DataSet dataSet){
 		Set<MyNode> input = dataSet.getNodes();
-		
+
 		for (MyNode node : input){
 			nodes[node.getId()] = node;
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	private void populateMatrix(DataSet dataSet){
+		//Build the sets in place, and only wrap them into segments once they are complete
+		Set<MyNode>[][] out = new Set[nodes.length][numRelTypes];
+		Set<MyNode>[][] in = new Set[nodes.length][numRelTypes];
+
 		//Get the map of outgoing relationships
 		Map<MyNode, Set<MyRelationship>> relationships = dataSet.getOutgoingRels();
 
@@ -42,22 +98,172 @@ public class DataSetInterface {
 				int srcNodeIdx = key.getId();
 				int tgtNodeIdx = rel.getTarget().getId();
 				int relIdIdx = rel.getIdentifier().getIdx();
-				
-				if (matrixOut[srcNodeIdx][relIdIdx] == null){
-					matrixOut[srcNodeIdx][relIdIdx] = new HashSet<MyNode>();
+
+				if (out[srcNodeIdx][relIdIdx] == null){
+					out[srcNodeIdx][relIdIdx] = new HashSet<MyNode>();
 				}
-				if (matrixIn[tgtNodeIdx][relIdIdx] == null){
-					matrixIn[tgtNodeIdx][relIdIdx] = new HashSet<MyNode>();
+				if (in[tgtNodeIdx][relIdIdx] == null){
+					in[tgtNodeIdx][relIdIdx] = new HashSet<MyNode>();
 				}
-				
-				matrixOut[srcNodeIdx][relIdIdx].add(rel.getTarget());
-				matrixIn[tgtNodeIdx][relIdIdx].add(key);
+
+				out[srcNodeIdx][relIdIdx].add(rel.getTarget());
+				in[tgtNodeIdx][relIdIdx].add(key);
+			}
+		}
+
+		for (int idx = 0; idx < nodes.length; idx++){
+			matrixOut.set(idx, seal(out[idx]));
+			matrixIn.set(idx, seal(in[idx]));
+		}
+	}
+
+	/**
+	 * Wraps the sets of a segment as unmodifiable sets.
+	 */
+	private static Set<MyNode>[] seal(Set<MyNode>[] segment){
+		for (int idx = 0; idx < segment.length; idx++){
+			if (segment[idx] != null){
+				segment[idx] = Collections.unmodifiableSet(segment[idx]);
 			}
 		}
+		return segment;
+	}
+
+	/**
+	 * Adds the relationship to the neighbour sets of its source and target. Both nodes must already be in the
+	 * dataset. Safe to call concurrently with the reads and the other updates.
+	 * @param rel The relationship
+	 * @throws IllegalArgumentException If a node or the relationship type is not in the dataset
+	 * @throws UnsupportedOperationException If this is a snapshot
+	 */
+	public void addRelationship(MyRelationship rel){
+		update(rel, true);
 	}
-	
+
+	/**
+	 * Removes the relationship from the neighbour sets of its source and target. The neighbour sets do not
+	 * count the parallel relationships, so only remove the last relationship of its type between the two nodes.
+	 * Safe to call concurrently with the reads and the other updates.
+	 * @param rel The relationship
+	 * @throws IllegalArgumentException If a node or the relationship type is not in the dataset
+	 * @throws UnsupportedOperationException If this is a snapshot
+	 */
+	public void removeRelationship(MyRelationship rel){
+		update(rel, false);
+	}
+
+	/**
+	 * Returns a read-only view of the matrices as of the current version. The snapshot is not affected by the
+	 * later updates, and the updates in progress are either fully in it or not at all.
+	 * @return The snapshot
+	 */
+	public DataSetInterface snapshot(){
+		if (versionLock == null){
+			//A snapshot does not change
+			return this;
+		}
+
+		versionLock.writeLock().lock();
+		try {
+			return new DataSetInterface(this, version.get());
+		} finally {
+			versionLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of updates applied (of the source, for a snapshot)
+	 */
+	public long getVersion(){
+		return version.get();
+	}
+
+	/**
+	 * @return True if this is a read-only snapshot
+	 */
+	public boolean isSnapshot(){
+		return versionLock == null;
+	}
+
+	/**
+	 * Applies an update to the segments of the source and the target.
+	 */
+	private void update(MyRelationship rel, boolean add){
+		if (versionLock == null){
+			throw new UnsupportedOperationException("The snapshot is read-only");
+		}
+
+		int srcNodeIdx = index(rel.getSource());
+		int tgtNodeIdx = index(rel.getTarget());
+		int relIdIdx = relTypeIndex(rel.getIdentifier());
+
+		//Lock both stripes, the lower index first so that the writers cannot deadlock
+		int srcStripe = srcNodeIdx & (STRIPES - 1);
+		int tgtStripe = tgtNodeIdx & (STRIPES - 1);
+		Object first = stripes[Math.min(srcStripe, tgtStripe)];
+		Object second = stripes[Math.max(srcStripe, tgtStripe)];
+
+		//The writers only exclude the snapshots, so that a snapshot sees both sides of an update or neither
+		versionLock.readLock().lock();
+		try {
+			synchronized (first){
+				synchronized (second){
+					//Both sides under the same locks, so a concurrent update of the relationship cannot interleave
+					updateSegment(matrixOut, srcNodeIdx, relIdIdx, nodes[tgtNodeIdx], add);
+					updateSegment(matrixIn, tgtNodeIdx, relIdIdx, nodes[srcNodeIdx], add);
+					version.incrementAndGet();
+				}
+			}
+		} finally {
+			versionLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the segment of the node with a copy, where the neighbour is added to or removed from the set of
+	 * the relationship type. The caller must hold the stripe lock of the node.
+	 */
+	private void updateSegment(AtomicReferenceArray<Set<MyNode>[]> matrix, int nodeIdx, int relIdIdx, MyNode neighbour, boolean add){
+		Set<MyNode>[] segment = matrix.get(nodeIdx);
+		Set<MyNode> current = segment[relIdIdx];
+
+		//Nothing to do
+		if (add ? (current != null && current.contains(neighbour)) : (current == null || !current.contains(neighbour))){
+			return;
+		}
+
+		Set<MyNode> copy = current == null ? new HashSet<MyNode>() : new HashSet<MyNode>(current);
+		if (add){
+			copy.add(neighbour);
+		} else {
+			copy.remove(neighbour);
+		}
+
+		//The other relationship types are shared with the previous segment
+		Set<MyNode>[] newSegment = segment.clone();
+		newSegment[relIdIdx] = copy.isEmpty() ? null : Collections.unmodifiableSet(copy);
+		matrix.set(nodeIdx, newSegment);
+	}
+
+	private int index(MyNode node){
+		int idx = node.getId();
+		if (idx < 0 || idx >= nodes.length || nodes[idx] == null){
+			throw new IllegalArgumentException("Node not in the dataset: " + node);
+		}
+		return idx;
+	}
+
+	private int relTypeIndex(RelType relType){
+		int idx = relType.getIdx();
+		if (idx < 0 || idx >= numRelTypes){
+			throw new IllegalArgumentException("Relationship type not in the dataset: " + relType);
+		}
+		return idx;
+	}
+
 	/**
 	 * Returns the set of neighbours from the given node, based on the given relType and direction.
+	 * The returned set must not be modified.
 	 * @param node The node
 	 * @param relType
 	 * @param dir The direction of relationships
@@ -65,95 +271,103 @@ public class DataSetInterface {
 	 */
 	public Set<MyNode> getNeighbours(MyNode node, RelType relType, MyDirection dir){
 		Set<MyNode> temp = null;
-		
+
 		if (dir == MyDirection.OUTGOING){
 			//Outgoing relationships; node = src
-			if (matrixOut[node.getId()][relType.getIdx()] != null){
-				return matrixOut[node.getId()][relType.getIdx()];
+			Set<MyNode> out = matrixOut.get(node.getId())[relType.getIdx()];
+			if (out != null){
+				return out;
 			}
 		} else if (dir == MyDirection.INCOMING) {
 			//Incoming relationships; node = tgt
-			if (matrixIn[node.getId()][relType.getIdx()] != null){
-				return matrixIn[node.getId()][relType.getIdx()];
+			Set<MyNode> in = matrixIn.get(node.getId())[relType.getIdx()];
+			if (in != null){
+				return in;
 			}
 		} else {
 			//Both directions; node = src || node = tgt
 			temp = new HashSet<MyNode>();
-			if (matrixOut[node.getId()][relType.getIdx()] != null){
-				temp.addAll(matrixOut[node.getId()][relType.getIdx()]);
+			Set<MyNode> out = matrixOut.get(node.getId())[relType.getIdx()];
+			Set<MyNode> in = matrixIn.get(node.getId())[relType.getIdx()];
+			if (out != null){
+				temp.addAll(out);
 			}
-			if (matrixIn[node.getId()][relType.getIdx()] != null){
-				temp.addAll(matrixIn[node.getId()][relType.getIdx()])  ;
+			if (in != null){
+				temp.addAll(in);
 			}
 		}
-		
+
 		if (temp == null){
 			temp = new HashSet<MyNode>();
 		}
-		
+
 		return temp;
 	}
-	
+
 	/**
 	 * Returns all of the relationships in the graph pattern that contain the given node
 	 * @param node The node
 	 * @return all of the relationships in the graph pattern that contain the given node
 	 */
 	public Set<MyNode> getAllNeighbours(MyNode node){
-		
+
 		//Initialize result list
 		Set<MyNode> result = new HashSet<MyNode>();
 
 		if (node == null){
 			return result;
 		}
-		
+
 		//Add all outgoing and incoming relationships for the node
-		for (int idx = 0; idx < matrixOut[node.getId()].length; idx++){
-			if (matrixOut[node.getId()][idx] != null){
-				result.addAll(matrixOut[node.getId()][idx]);
+		Set<MyNode>[] out = matrixOut.get(node.getId());
+		for (int idx = 0; idx < out.length; idx++){
+			if (out[idx] != null){
+				result.addAll(out[idx]);
 			}
 		}
-		
-		for (int idx = 0; idx < matrixIn[node.getId()].length; idx++){
-			if (matrixIn[node.getId()][idx] != null){
-				result.addAll(matrixIn[node.getId()][idx]);
+
+		Set<MyNode>[] in = matrixIn.get(node.getId());
+		for (int idx = 0; idx < in.length; idx++){
+			if (in[idx] != null){
+				result.addAll(in[idx]);
 			}
 		}
-		
+
 		return result;
 	}
-	
+
 	public int getInDegree(MyNode node){
 		int total = 0;
-		for (int idx = 0; idx < matrixIn[node.getId()].length; idx++){
-			if (matrixIn[node.getId()][idx] != null){
-				total += matrixIn[node.getId()][idx].size();
+		Set<MyNode>[] in = matrixIn.get(node.getId());
+		for (int idx = 0; idx < in.length; idx++){
+			if (in[idx] != null){
+				total += in[idx].size();
 			}
 		}
-		
+
 		return total;
 	}
-	
+
 	public int getOutDegree(MyNode node){
 		int total = 0;
-		for (int idx = 0; idx < matrixOut[node.getId()].length; idx++){
-			if (matrixOut[node.getId()][idx] != null){
-				total += matrixOut[node.getId()][idx].size();
+		Set<MyNode>[] out = matrixOut.get(node.getId());
+		for (int idx = 0; idx < out.length; idx++){
+			if (out[idx] != null){
+				total += out[idx].size();
 			}
 		}
-		
+
 		return total;
 	}
-	
+
 	public int getTotalDegree(MyNode node){
 		return getInDegree(node) + getOutDegree(node);
 	}
-	
+
 	public MyNode findNode(int id){
 		return nodes[id];
 	}
-	
+
 	public MyNode[] getNodes(){
 		return this.nodes;
 	}
@@ -0,0 +1,365 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Reads and writes the binary snapshot format of an in-memory dataset. The snapshot is written once
+ * (e.g. from the output of TxtToDS), and opened by mapping the adjacency sections of the file into
+ * memory (FileChannel.map). The opened DataSetCSR reads its adjacency directly from the mapped file,
+ * so opening a snapshot does not deserialize any relationship objects, and the adjacency lives off-heap.
+ *
+ * Layout (all ints are big endian):
+ * <pre>
+ * HEADER     magic, version, numNodes (length of the id lookup), numRelTypes, numPresent (actual nodes), numColumns
+ * NODES      int[numPresent] node ids (ascending), followed by the labels as a string column
+ * ADJACENCY  for each relType, for OUTGOING then INCOMING: numRels, int[numNodes+1] offsets, int[numRels] targets, int[numRels] relIds
+ * COLUMNS    for each node attribute: name, kind, values (parallel to the node ids)
+ *            INT_COLUMN:    int[numPresent] values, MISSING_INT if the node does not have the attribute
+ *            STRING_COLUMN: dictSize, dictSize strings, int[numPresent] codes (index in the dictionary), -1 if missing
+ * </pre>
+ * Strings are stored as a byte length followed by the UTF-8 bytes.
+ */
+public class GraphSnapshot {
+
+	public static final int MAGIC = 0x41524743;		//"ARGC"
+	public static final int VERSION = 1;
+
+	private static final byte INT_COLUMN = 0;
+	private static final byte STRING_COLUMN = 1;
+	private static final int MISSING_INT = Integer.MIN_VALUE;
+	private static final int MISSING_CODE = -1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	//--------------------------//
+	// WRITING
+	//--------------------------//
+
+	/**
+	 * Writes the dataset to the given file in the snapshot format.
+	 * @param dataSet The dataset
+	 * @param file The target file
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void write(DataSet dataSet, File file) throws IOException{
+		write(new DataSetCSR(dataSet), file);
+	}
+
+	/**
+	 * Writes the compressed adjacency store (and the attributes of its nodes) to the given file in the snapshot format.
+	 * @param csr The compressed adjacency store
+	 * @param file The target file
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void write(DataSetCSR csr, File file) throws IOException{
+
+		MyNode[] nodes = csr.getNodes();
+
+		//Collect the present nodes, and the attribute names
+		List<MyNode> present = new ArrayList<MyNode>();
+		TreeSet<String> names = new TreeSet<String>();
+		for (MyNode node : nodes){
+			if (node != null){
+				present.add(node);
+				names.addAll(node.getAttributes().keySet());
+			}
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			//HEADER
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(nodes.length);
+			out.writeInt(RelType.values().length);
+			out.writeInt(present.size());
+			out.writeInt(names.size());
+
+			//NODES
+			for (MyNode node : present){
+				out.writeInt(node.getId());
+			}
+			String[] labels = new String[present.size()];
+			for (int idx = 0; idx < labels.length; idx++){
+				labels[idx] = present.get(idx).getLabel();
+			}
+			writeStringColumn(out, labels);
+
+			//ADJACENCY
+			for (RelType type : RelType.values()){
+				writeAdjacency(out, csr, type, MyDirection.OUTGOING);
+				writeAdjacency(out, csr, type, MyDirection.INCOMING);
+			}
+
+			//COLUMNS
+			for (String name : names){
+				String[] values = new String[present.size()];
+				for (int idx = 0; idx < values.length; idx++){
+					values[idx] = present.get(idx).getAttribute(name);
+				}
+
+				writeString(out, name);
+				if (isIntColumn(values)){
+					out.writeByte(INT_COLUMN);
+					for (String value : values){
+						out.writeInt(value == null ? MISSING_INT : Integer.parseInt(value));
+					}
+				} else {
+					out.writeByte(STRING_COLUMN);
+					writeStringColumn(out, values);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeAdjacency(DataOutputStream out, DataSetCSR csr, RelType type, MyDirection dir) throws IOException{
+		IntBuffer offsets = csr.getOffsets(type, dir);
+		IntBuffer targets = csr.getTargets(type, dir);
+		IntBuffer relIds = csr.getRelIds(type, dir);
+
+		out.writeInt(targets.limit());
+		writeInts(out, offsets);
+		writeInts(out, targets);
+		writeInts(out, relIds);
+	}
+
+	private static void writeInts(DataOutputStream out, IntBuffer buffer) throws IOException{
+		for (int idx = 0; idx < buffer.limit(); idx++){
+			out.writeInt(buffer.get(idx));
+		}
+	}
+
+	/**
+	 * Writes the values as a dictionary encoded column.
+	 */
+	private static void writeStringColumn(DataOutputStream out, String[] values) throws IOException{
+		Map<String, Integer> dictionary = new HashMap<String, Integer>();
+		List<String> entries = new ArrayList<String>();
+		int[] codes = new int[values.length];
+
+		for (int idx = 0; idx < values.length; idx++){
+			if (values[idx] == null){
+				codes[idx] = MISSING_CODE;
+			} else {
+				Integer code = dictionary.get(values[idx]);
+				if (code == null){
+					code = entries.size();
+					dictionary.put(values[idx], code);
+					entries.add(values[idx]);
+				}
+				codes[idx] = code;
+			}
+		}
+
+		out.writeInt(entries.size());
+		for (String entry : entries){
+			writeString(out, entry);
+		}
+		for (int code : codes){
+			out.writeInt(code);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String str) throws IOException{
+		byte[] bytes = str.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Checks if every value is an int whose string form is exactly the value (so that it reads back unchanged).
+	 */
+	private static boolean isIntColumn(String[] values){
+		for (String value : values){
+			if (value != null){
+				try {
+					int val = Integer.parseInt(value);
+					if (val == MISSING_INT || !String.valueOf(val).equals(value)){
+						return false;
+					}
+				} catch (NumberFormatException e){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	//--------------------------//
+	// READING
+	//--------------------------//
+
+	/**
+	 * Opens the snapshot file. The adjacency buffers of the returned store are mapped from the file;
+	 * the nodes and their attributes are created on the heap.
+	 * @param file The snapshot file
+	 * @return The compressed adjacency store
+	 * @throws IOException If the file cannot be read, or is not a snapshot of a supported version.
+	 */
+	public static DataSetCSR open(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			SnapshotReader in = new SnapshotReader(raf.getChannel());
+
+			//HEADER
+			if (in.readInt() != MAGIC){
+				throw new IOException("Not a graph snapshot: " + file);
+			}
+			int version = in.readInt();
+			if (version != VERSION){
+				throw new IOException("Unsupported graph snapshot version: " + version);
+			}
+			int numNodes = in.readInt();
+			int numRelTypes = in.readInt();
+			if (numRelTypes != RelType.values().length){
+				throw new IOException("Graph snapshot has " + numRelTypes + " relationship types, expected " + RelType.values().length);
+			}
+			int numPresent = in.readInt();
+			int numColumns = in.readInt();
+
+			//NODES
+			IntBuffer ids = in.mapInts(numPresent);
+			String[] labels = in.readStringColumn(numPresent);
+
+			MyNode[] nodes = new MyNode[numNodes];
+			for (int idx = 0; idx < numPresent; idx++){
+				int id = ids.get(idx);
+				nodes[id] = new MyNode(id, labels[idx]);
+			}
+
+			//ADJACENCY
+			IntBuffer[] outOffsets = new IntBuffer[numRelTypes];
+			IntBuffer[] outTargets = new IntBuffer[numRelTypes];
+			IntBuffer[] outRelIds = new IntBuffer[numRelTypes];
+			IntBuffer[] inOffsets = new IntBuffer[numRelTypes];
+			IntBuffer[] inTargets = new IntBuffer[numRelTypes];
+			IntBuffer[] inRelIds = new IntBuffer[numRelTypes];
+
+			for (int type = 0; type < numRelTypes; type++){
+				int numRels = in.readInt();
+				outOffsets[type] = in.mapInts(numNodes + 1);
+				outTargets[type] = in.mapInts(numRels);
+				outRelIds[type] = in.mapInts(numRels);
+
+				numRels = in.readInt();
+				inOffsets[type] = in.mapInts(numNodes + 1);
+				inTargets[type] = in.mapInts(numRels);
+				inRelIds[type] = in.mapInts(numRels);
+			}
+
+			//COLUMNS
+			for (int col = 0; col < numColumns; col++){
+				String name = in.readString();
+				byte kind = in.readByte();
+
+				if (kind == INT_COLUMN){
+					IntBuffer values = in.mapInts(numPresent);
+					for (int idx = 0; idx < numPresent; idx++){
+						int val = values.get(idx);
+						if (val != MISSING_INT){
+							nodes[ids.get(idx)].addAttribute(name, String.valueOf(val));
+						}
+					}
+				} else if (kind == STRING_COLUMN){
+					String[] values = in.readStringColumn(numPresent);
+					for (int idx = 0; idx < numPresent; idx++){
+						if (values[idx] != null){
+							nodes[ids.get(idx)].addAttribute(name, values[idx]);
+						}
+					}
+				} else {
+					throw new IOException("Unknown column kind " + kind + " for attribute " + name);
+				}
+			}
+
+			return new DataSetCSR(nodes, outOffsets, outTargets, outRelIds, inOffsets, inTargets, inRelIds);
+		} finally {
+			//The mappings stay valid after the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads the file sequentially. The int arrays are mapped (each section separately, so that the
+	 * file may be larger than 2GB); the scalars and strings are read directly.
+	 */
+	private static class SnapshotReader {
+		private final FileChannel channel;
+		private final ByteBuffer scalar;
+		private long pos;
+
+		SnapshotReader(FileChannel channel){
+			this.channel = channel;
+			this.scalar = ByteBuffer.allocate(4);
+			this.pos = 0;
+		}
+
+		private ByteBuffer read(ByteBuffer buffer) throws IOException{
+			buffer.clear();
+			while (buffer.hasRemaining()){
+				int read = channel.read(buffer, pos);
+				if (read < 0){
+					throw new EOFException("Unexpected end of graph snapshot");
+				}
+				pos += read;
+			}
+			buffer.flip();
+			return buffer;
+		}
+
+		int readInt() throws IOException{
+			return read(scalar).getInt();
+		}
+
+		byte readByte() throws IOException{
+			return read(ByteBuffer.allocate(1)).get();
+		}
+
+		String readString() throws IOException{
+			int length = readInt();
+			return new String(read(ByteBuffer.allocate(length)).array(), UTF8);
+		}
+
+		IntBuffer mapInts(int count) throws IOException{
+			long size = 4L * count;
+			if (pos + size > channel.size()){
+				throw new EOFException("Unexpected end of graph snapshot");
+			}
+			IntBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, size).asIntBuffer();
+			pos += size;
+			return buffer;
+		}
+
+		String[] readStringColumn(int count) throws IOException{
+			String[] dictionary = new String[readInt()];
+			for (int idx = 0; idx < dictionary.length; idx++){
+				dictionary[idx] = readString();
+			}
+
+			IntBuffer codes = mapInts(count);
+			String[] values = new String[count];
+			for (int idx = 0; idx < count; idx++){
+				int code = codes.get(idx);
+				values[idx] = code == MISSING_CODE ? null : dictionary[code];
+			}
+			return values;
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.ucalgary.ispia.graphpatterns.util.AttributeTypes;
+
+/**
+ * The statistics catalog of an in-memory dataset, for cost-based planning:
+ * per relationship type and direction, the degree of every node and the degree distribution (histogram);
+ * per node attribute, the frequency of every value; and the hubs (the nodes with the largest total degree).
+ *
+ * The catalog is built once when the dataset is loaded (and can be persisted with the dataset, as it is
+ * Serializable). It does not observe the dataset: whoever modifies the dataset must apply the change to the
+ * catalog (addNode, removeNode, updateAttribute, addRelationship, removeRelationship). StandingQueries does so
+ * for the relationships it adds and removes; the node and attribute changes are left to the caller. The hubs
+ * are recomputed lazily, on the first query after a change.
+ *
+ * The estimates assume that the attributes are independent, and that the relationships are spread
+ * uniformly (apart from the hubs).
+ */
+public class GraphStatistics implements Serializable{
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int OUT = 0;
+	private static final int IN = 1;
+
+	private int[][] degrees;								//[type*2+dir][node id] -> degree
+	private final List<Map<Integer, Integer>> histograms;	//[type*2+dir] -> degree -> number of nodes
+	private final long[] numRels;							//type -> number of relationships
+	private final Map<String, Map<String, Integer>> valueCounts;	//attribute name -> value -> number of nodes
+	private long numNodes;
+
+	private final int numHubs;								//The number of hubs to keep
+	private int[] hubs;										//The ids of the hubs, by decreasing total degree; null if stale
+
+	/**
+	 * Creates an empty catalog.
+	 * @param numHubs The number of hubs to keep
+	 */
+	public GraphStatistics(int numHubs){
+		int slots = RelType.values().length * 2;
+		this.degrees = new int[slots][16];
+		this.histograms = new ArrayList<Map<Integer, Integer>>();
+		for (int slot = 0; slot < slots; slot++){
+			histograms.add(new HashMap<Integer, Integer>());
+		}
+		this.numRels = new long[RelType.values().length];
+		this.valueCounts = new HashMap<String, Map<String, Integer>>();
+		this.numNodes = 0;
+		this.numHubs = numHubs;
+		this.hubs = null;
+	}
+
+	/**
+	 * Builds the catalog of the given dataset.
+	 * @param dataSet The dataset
+	 * @param numHubs The number of hubs to keep
+	 * @return The catalog
+	 */
+	public static GraphStatistics build(DataSet dataSet, int numHubs){
+		GraphStatistics stats = new GraphStatistics(numHubs);
+		for (MyNode node : dataSet.getNodes()){
+			stats.addNode(node);
+		}
+		for (MyRelationship rel : dataSet.getAllRelationships()){
+			stats.addRelationship(rel);
+		}
+		return stats;
+	}
+
+	//--------------------------//
+	// INCREMENTAL REFRESH
+	//--------------------------//
+
+	/**
+	 * Adds the node (with degree 0) and its attributes.
+	 * @param node The node
+	 */
+	public synchronized void addNode(MyNode node){
+		ensureCapacity(node.getId());
+		numNodes++;
+		for (int slot = 0; slot < degrees.length; slot++){
+			increment(histograms.get(slot), 0, 1);
+		}
+		for (Map.Entry<String, String> entry : node.getAttributes().entrySet()){
+			addValue(entry.getKey(), entry.getValue(), 1);
+		}
+		hubs = null;
+	}
+
+	/**
+	 * Removes the node and its attributes. Its relationships must be removed first.
+	 * @param node The node
+	 */
+	public synchronized void removeNode(MyNode node){
+		numNodes--;
+		for (int slot = 0; slot < degrees.length; slot++){
+			increment(histograms.get(slot), degreeOf(slot, node.getId()), -1);
+		}
+		for (Map.Entry<String, String> entry : node.getAttributes().entrySet()){
+			addValue(entry.getKey(), entry.getValue(), -1);
+		}
+		hubs = null;
+	}
+
+	/**
+	 * Records the change of a node attribute value.
+	 * @param name The attribute name
+	 * @param oldVal The old value; null if the node did not have the attribute
+	 * @param newVal The new value; null if the attribute is removed
+	 */
+	public synchronized void updateAttribute(String name, String oldVal, String newVal){
+		if (oldVal != null){
+			addValue(name, oldVal, -1);
+		}
+		if (newVal != null){
+			addValue(name, newVal, 1);
+		}
+	}
+
+	/**
+	 * Adds the relationship to the degrees of its source and target.
+	 * @param rel The relationship
+	 */
+	public synchronized void addRelationship(MyRelationship rel){
+		numRels[rel.getIdentifier().getIdx()]++;
+		changeDegree(slot(rel.getIdentifier(), OUT), rel.getSource().getId(), 1);
+		changeDegree(slot(rel.getIdentifier(), IN), rel.getTarget().getId(), 1);
+		hubs = null;
+	}
+
+	/**
+	 * Removes the relationship from the degrees of its source and target.
+	 * @param rel The relationship
+	 */
+	public synchronized void removeRelationship(MyRelationship rel){
+		numRels[rel.getIdentifier().getIdx()]--;
+		changeDegree(slot(rel.getIdentifier(), OUT), rel.getSource().getId(), -1);
+		changeDegree(slot(rel.getIdentifier(), IN), rel.getTarget().getId(), -1);
+		hubs = null;
+	}
+
+	//--------------------------//
+	// STATISTICS
+	//--------------------------//
+
+	/**
+	 * @return The number of nodes
+	 */
+	public synchronized long getNumNodes(){
+		return numNodes;
+	}
+
+	/**
+	 * @param type The relationship type
+	 * @return The number of relationships of the type
+	 */
+	public synchronized long getNumRelationships(RelType type){
+		return numRels[type.getIdx()];
+	}
+
+	/**
+	 * @param id The node id
+	 * @param type The relationship type
+	 * @param dir The direction (OUTGOING or INCOMING; BOTH adds them up)
+	 * @return The degree of the node
+	 */
+	public synchronized int getDegree(int id, RelType type, MyDirection dir){
+		if (dir == MyDirection.BOTH){
+			return degreeOf(slot(type, OUT), id) + degreeOf(slot(type, IN), id);
+		}
+		return degreeOf(slot(type, dir), id);
+	}
+
+	/**
+	 * @param type The relationship type
+	 * @param dir The direction (OUTGOING or INCOMING)
+	 * @return A copy of the degree distribution: degree -> number of nodes
+	 */
+	public synchronized Map<Integer, Integer> getDegreeHistogram(RelType type, MyDirection dir){
+		return new HashMap<Integer, Integer>(histograms.get(slot(type, dir)));
+	}
+
+	/**
+	 * @param type The relationship type
+	 * @param dir The direction (OUTGOING or INCOMING)
+	 * @return The largest degree
+	 */
+	public synchronized int getMaxDegree(RelType type, MyDirection dir){
+		int max = 0;
+		for (Integer degree : histograms.get(slot(type, dir)).keySet()){
+			max = Math.max(max, degree);
+		}
+		return max;
+	}
+
+	/**
+	 * The expected number of neighbours of a node through the relationships of the given type and direction,
+	 * i.e. the average degree. The same for both directions, as every relationship has one source and one target.
+	 * @param type The relationship type
+	 * @return The average degree
+	 */
+	public synchronized double getAverageDegree(RelType type){
+		return numNodes == 0 ? 0.0 : (double) numRels[type.getIdx()] / numNodes;
+	}
+
+	/**
+	 * The expected number of neighbours of a vertex that is itself reached through a relationship of the given
+	 * type, when expanding in the given direction: E[d^2] / E[d] over the degree distribution. Unlike the
+	 * average degree, this accounts for the skew of the distribution, since a relationship is more likely to
+	 * lead to a hub than a random vertex is to be one.
+	 * @param type The relationship type
+	 * @param dir The direction of the expansion (OUTGOING or INCOMING)
+	 * @return The expected fan-out; 0 if there are no relationships of the type
+	 */
+	public synchronized double getExpectedFanOut(RelType type, MyDirection dir){
+		double sum = 0.0;
+		double squares = 0.0;
+		for (Map.Entry<Integer, Integer> entry : histograms.get(slot(type, dir)).entrySet()){
+			double degree = entry.getKey();
+			sum += degree * entry.getValue();
+			squares += degree * degree * entry.getValue();
+		}
+		return sum == 0.0 ? 0.0 : squares / sum;
+	}
+
+	/**
+	 * @param name The attribute name
+	 * @param value The attribute value
+	 * @return The number of nodes with the value
+	 */
+	public synchronized long getValueCount(String name, String value){
+		Map<String, Integer> counts = valueCounts.get(name);
+		if (counts == null){
+			return 0;
+		}
+		Integer count = counts.get(normalize(name, value));
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @param name The attribute name
+	 * @return A copy of the value frequencies of the attribute: value -> number of nodes
+	 */
+	public synchronized Map<String, Integer> getValueCounts(String name){
+		Map<String, Integer> counts = valueCounts.get(name);
+		if (counts == null){
+			return new HashMap<String, Integer>();
+		}
+		return new HashMap<String, Integer>(counts);
+	}
+
+	/**
+	 * @param name The attribute name
+	 * @param value The attribute value
+	 * @return The fraction of the nodes with the value
+	 */
+	public synchronized double getSelectivity(String name, String value){
+		return numNodes == 0 ? 0.0 : (double) getValueCount(name, value) / numNodes;
+	}
+
+	/**
+	 * Estimates the number of nodes that satisfy all of the given attribute requirements, assuming the
+	 * attributes are independent. An "id" requirement is satisfied by one node.
+	 * @param attrReqs The attribute names and required values
+	 * @return The estimate; 0 only if a requirement cannot be satisfied
+	 */
+	public synchronized double estimateNodes(Map<String, String> attrReqs){
+		double estimate = numNodes;
+		for (Map.Entry<String, String> entry : attrReqs.entrySet()){
+			long count;
+			if (entry.getKey().equals("id") && !valueCounts.containsKey("id")){
+				//In the in-memory dataset, the "id" of a node is its index
+				count = 1;
+			} else {
+				count = getValueCount(entry.getKey(), entry.getValue());
+			}
+			if (count == 0){
+				return 0.0;
+			}
+			estimate = estimate * count / numNodes;
+		}
+		return estimate;
+	}
+
+	/**
+	 * @return The ids of the hubs, by decreasing total degree
+	 */
+	public synchronized int[] getHubs(){
+		if (hubs == null){
+			hubs = computeHubs();
+		}
+		return hubs.clone();
+	}
+
+	/**
+	 * @param id The node id
+	 * @return True if the node is one of the hubs
+	 */
+	public synchronized boolean isHub(int id){
+		for (int hub : getHubs()){
+			if (hub == id){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//--------------------------//
+	// HELPER METHODS
+	//--------------------------//
+
+	private static int slot(RelType type, int dir){
+		return type.getIdx() * 2 + dir;
+	}
+
+	private static int slot(RelType type, MyDirection dir){
+		return slot(type, dir == MyDirection.INCOMING ? IN : OUT);
+	}
+
+	private int degreeOf(int slot, int id){
+		return id < degrees[slot].length ? degrees[slot][id] : 0;
+	}
+
+	private void ensureCapacity(int id){
+		if (id >= degrees[0].length){
+			int length = Math.max(id + 1, degrees[0].length * 2);
+			for (int slot = 0; slot < degrees.length; slot++){
+				degrees[slot] = Arrays.copyOf(degrees[slot], length);
+			}
+		}
+	}
+
+	private void changeDegree(int slot, int id, int delta){
+		ensureCapacity(id);
+		int old = degrees[slot][id];
+		degrees[slot][id] = old + delta;
+		increment(histograms.get(slot), old, -1);
+		increment(histograms.get(slot), old + delta, 1);
+	}
+
+	private static void increment(Map<Integer, Integer> histogram, int degree, int delta){
+		Integer count = histogram.get(degree);
+		int val = (count == null ? 0 : count) + delta;
+		if (val == 0){
+			histogram.remove(degree);
+		} else {
+			histogram.put(degree, val);
+		}
+	}
+
+	private void addValue(String name, String value, int delta){
+		Map<String, Integer> counts = valueCounts.get(name);
+		if (counts == null){
+			counts = new HashMap<String, Integer>();
+			valueCounts.put(name, counts);
+		}
+		value = normalize(name, value);
+		Integer count = counts.get(value);
+		int val = (count == null ? 0 : count) + delta;
+		if (val == 0){
+			counts.remove(value);
+		} else {
+			counts.put(value, val);
+		}
+	}
+
+	/**
+	 * The int typed values are counted as ints, e.g. "007" is counted as "7".
+	 */
+	private static String normalize(String name, String value){
+		if (AttributeTypes.isIntType(name)){
+			try {
+				return String.valueOf(Integer.parseInt(value));
+			} catch (NumberFormatException e){
+				return value;
+			}
+		}
+		return value;
+	}
+
+	private int[] computeHubs(){
+		List<int[]> totals = new ArrayList<int[]>();
+		for (int id = 0; id < degrees[0].length; id++){
+			int total = 0;
+			for (int slot = 0; slot < degrees.length; slot++){
+				total += degrees[slot][id];
+			}
+			if (total > 0){
+				totals.add(new int[]{id, total});
+			}
+		}
+
+		//Sort by decreasing total degree, then by id
+		Collections.sort(totals, new Comparator<int[]>(){
+			@Override
+			public int compare(int[] a, int[] b){
+				if (a[1] != b[1]){
+					return Integer.compare(b[1], a[1]);
+				}
+				return Integer.compare(a[0], b[0]);
+			}
+		});
+
+		int[] result = new int[Math.min(numHubs, totals.size())];
+		for (int idx = 0; idx < result.length; idx++){
+			result[idx] = totals.get(idx)[0];
+		}
+		return result;
+	}
+}
@@ -0,0 +1,130 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of compiled query plans (see QueryPlan). The same policies are checked again and again, with
+ * different seeds, so their plans are compiled once and reused:
+ * 1. A plan compiled for the same GPHolder instance is returned as is.
+ * 2. Otherwise, the plan of an isomorphic GPHolder (with the same CanonicalForm) is rebound to the new instance,
+ *    which maps the cached node numbering onto the new nodes.
+ * 3. Otherwise, the plan is compiled and cached.
+ *
+ * Both levels keep at most capacity entries, and evict the least recently used. The GPHolders must not be
+ * modified after their plans are cached. The cache is thread safe.
+ */
+public class PlanCache {
+
+	private final int capacity;										//The maximum number of entries per level
+	private final LinkedHashMap<GPHolder, QueryPlan> byInstance;	//The plans, by GPHolder instance (GPHolder has identity equality)
+	private final LinkedHashMap<CanonicalForm, Entry> byShape;		//The plans, by the canonical form of their GPHolder
+
+	private long instanceHits;
+	private long shapeHits;
+	private long misses;
+
+	/**
+	 * Initializes the instance variables.
+	 * @param capacity The maximum number of entries per level
+	 */
+	public PlanCache(final int capacity){
+		this.capacity = capacity;
+		//Access ordered, so that the eldest entry is the least recently used
+		this.byInstance = new LinkedHashMap<GPHolder, QueryPlan>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<GPHolder, QueryPlan> eldest){
+				return size() > capacity;
+			}
+		};
+		this.byShape = new LinkedHashMap<CanonicalForm, Entry>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CanonicalForm, Entry> eldest){
+				return size() > capacity;
+			}
+		};
+		this.instanceHits = 0;
+		this.shapeHits = 0;
+		this.misses = 0;
+	}
+
+	/**
+	 * Returns the plan of the given GPHolder, from the cache if possible.
+	 * @param gph The GPHolder
+	 * @return The plan
+	 */
+	public synchronized QueryPlan getPlan(GPHolder gph){
+		QueryPlan plan = byInstance.get(gph);
+		if (plan != null){
+			instanceHits++;
+			return plan;
+		}
+
+		CanonicalForm form = CanonicalForm.of(gph);
+		if (form == null){
+			//Too symmetric to canonicalize; only cache it by instance
+			misses++;
+			plan = QueryPlan.compile(gph);
+			byInstance.put(gph, plan);
+			return plan;
+		}
+
+		Entry entry = byShape.get(form);
+		if (entry != null){
+			shapeHits++;
+			plan = entry.plan.rebind(gph, entry.form.mapTo(form));
+		} else {
+			misses++;
+			plan = QueryPlan.compile(gph);
+			byShape.put(form, new Entry(form, plan));
+		}
+		byInstance.put(gph, plan);
+		return plan;
+	}
+
+	/**
+	 * Removes all of the plans.
+	 */
+	public synchronized void clear(){
+		byInstance.clear();
+		byShape.clear();
+	}
+
+	/**
+	 * @return The number of requests answered by the plan of the same GPHolder
+	 */
+	public synchronized long getInstanceHits(){
+		return instanceHits;
+	}
+
+	/**
+	 * @return The number of requests answered by rebinding the plan of an isomorphic GPHolder
+	 */
+	public synchronized long getShapeHits(){
+		return shapeHits;
+	}
+
+	/**
+	 * @return The number of requests that compiled a new plan
+	 */
+	public synchronized long getMisses(){
+		return misses;
+	}
+
+	/**
+	 * A cached plan, with the canonical form (and so the canonical node order) of its GPHolder.
+	 */
+	private static class Entry {
+		private final CanonicalForm form;
+		private final QueryPlan plan;
+
+		private Entry(CanonicalForm form, QueryPlan plan){
+			this.form = form;
+			this.plan = plan;
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.ucalgary.ispia.graphpatterns.util.Pair;
+
+/**
+ * The static plan of a GPHolder, compiled once before the evaluation, so that the recursive steps of the
+ * checkers do not allocate or scan: the graph pattern nodes are numbered (in the order of gp.getNodes(), or
+ * in the order of the cached plan it was rebound from, see PlanCache), and for each node the plan holds its incident relationships, the other end and the direction (from the
+ * node's perspective) of each relationship, its mutual exclusion constraints, and its mex neighbours.
+ * The result schema is held as a bitmask over the node numbers.
+ *
+ * The plan is immutable. It does not observe the GPHolder; compile a new plan if the GPHolder is changed.
+ */
+public class QueryPlan {
+
+	private final GPHolder gph;								//The compiled GPHolder
+	private final MyNode[] nodes;							//The gp nodes, by number
+	private final Map<MyNode, Integer> numbers;				//The number of each gp node
+	private final MyRelationship[][] rels;					//The incident relationships, by node number
+	private final int[][] others;							//The number of the other end of each incident relationship
+	private final MyDirection[][] directions;				//The direction of each incident relationship, from the node's perspective
+	private final int[][] mexNeighbours;					//The numbers of the nodes in a mex constraint with each node
+	private final List<List<Pair<MyNode, MyNode>>> mexLists;	//The mex constraints containing each node
+	private final List<MyNode> resultSchema;				//The result schema
+	private final BitSet schemaMask;						//The numbers of the result schema nodes
+	private final boolean schemaComplete;					//True if every gp node is in the result schema
+
+	/**
+	 * Compiles the plan of the given GPHolder.
+	 * @param gph The GPHolder
+	 * @return The plan
+	 */
+	public static QueryPlan compile(GPHolder gph){
+		GraphPattern gp = gph.getGp();
+
+		//Number the nodes
+		List<MyNode> gpNodes = gp.getNodes();
+		MyNode[] nodes = gpNodes.toArray(new MyNode[gpNodes.size()]);
+		Map<MyNode, Integer> numbers = new HashMap<MyNode, Integer>();
+		for (int idx = 0; idx < nodes.length; idx++){
+			numbers.put(nodes[idx], idx);
+		}
+
+		//The incident relationships
+		MyRelationship[][] rels = new MyRelationship[nodes.length][];
+		int[][] others = new int[nodes.length][];
+		MyDirection[][] directions = new MyDirection[nodes.length][];
+		for (int idx = 0; idx < nodes.length; idx++){
+			List<MyRelationship> nodeRels = gp.getAllRelationships(nodes[idx]);
+			rels[idx] = nodeRels.toArray(new MyRelationship[nodeRels.size()]);
+			others[idx] = new int[rels[idx].length];
+			directions[idx] = new MyDirection[rels[idx].length];
+
+			for (int rel = 0; rel < rels[idx].length; rel++){
+				others[idx][rel] = numbers.get(rels[idx][rel].getOther(nodes[idx]));
+				directions[idx][rel] = rels[idx][rel].getSource().equals(nodes[idx]) ? MyDirection.OUTGOING : MyDirection.INCOMING;
+			}
+		}
+
+		return new QueryPlan(gph, nodes, rels, others, directions);
+	}
+
+	/**
+	 * Binds this plan to an isomorphic GPHolder (see CanonicalForm): the node numbers, other ends and directions
+	 * are shared, and each node and relationship is replaced by its image in the target.
+	 * @param target The isomorphic GPHolder
+	 * @param mapping The map from the nodes of this plan to the nodes of the target
+	 * @return The plan of the target
+	 */
+	QueryPlan rebind(GPHolder target, Map<MyNode, MyNode> mapping){
+		GraphPattern gp = target.getGp();
+
+		MyNode[] targetNodes = new MyNode[nodes.length];
+		for (int idx = 0; idx < nodes.length; idx++){
+			targetNodes[idx] = mapping.get(nodes[idx]);
+		}
+
+		MyRelationship[][] targetRels = new MyRelationship[nodes.length][];
+		for (int idx = 0; idx < nodes.length; idx++){
+			//Group the relationships of the target node by their other end, direction, type and requirements
+			Map<String, List<MyRelationship>> groups = new HashMap<String, List<MyRelationship>>();
+			for (MyRelationship rel : gp.getAllRelationships(targetNodes[idx])){
+				String key = relKey(rel.getOther(targetNodes[idx]), rel.getSource().equals(targetNodes[idx]), rel);
+				List<MyRelationship> group = groups.get(key);
+				if (group == null){
+					group = new ArrayList<MyRelationship>();
+					groups.put(key, group);
+				}
+				group.add(rel);
+			}
+
+			//Take the image of each relationship from its group
+			targetRels[idx] = new MyRelationship[rels[idx].length];
+			for (int rel = 0; rel < rels[idx].length; rel++){
+				String key = relKey(targetNodes[others[idx][rel]], directions[idx][rel] == MyDirection.OUTGOING, rels[idx][rel]);
+				List<MyRelationship> group = groups.get(key);
+				if (group == null || group.isEmpty()){
+					throw new IllegalArgumentException("The GPHolder is not isomorphic to the plan");
+				}
+				targetRels[idx][rel] = group.remove(group.size() - 1);
+			}
+		}
+
+		return new QueryPlan(target, targetNodes, targetRels, others, directions);
+	}
+
+	private static String relKey(MyNode other, boolean outgoing, MyRelationship rel){
+		return other.getId() + (outgoing ? ">" : "<") + rel.getIdentifier().name() + CanonicalForm.encode(rel.getAttributes());
+	}
+
+	private QueryPlan(GPHolder gph, MyNode[] nodes, MyRelationship[][] rels, int[][] others, MyDirection[][] directions){
+		this.gph = gph;
+		this.nodes = nodes;
+		this.rels = rels;
+		this.others = others;
+		this.directions = directions;
+
+		this.numbers = new HashMap<MyNode, Integer>();
+		for (int idx = 0; idx < nodes.length; idx++){
+			numbers.put(nodes[idx], idx);
+		}
+
+		//The mutual exclusion constraints
+		List<List<Integer>> mexNums = new ArrayList<List<Integer>>();
+		this.mexLists = new ArrayList<List<Pair<MyNode, MyNode>>>();
+		for (int idx = 0; idx < nodes.length; idx++){
+			mexNums.add(new ArrayList<Integer>());
+			mexLists.add(new ArrayList<Pair<MyNode, MyNode>>());
+		}
+		for (Pair<MyNode, MyNode> mex : gph.getMexList()){
+			Integer first = numbers.get(mex.first);
+			Integer second = numbers.get(mex.second);
+			if (first != null){
+				mexLists.get(first).add(mex);
+				if (second != null){
+					mexNums.get(first).add(second);
+				}
+			}
+			if (second != null && !second.equals(first)){
+				mexLists.get(second).add(mex);
+				if (first != null){
+					mexNums.get(second).add(first);
+				}
+			}
+		}
+		this.mexNeighbours = new int[nodes.length][];
+		for (int idx = 0; idx < nodes.length; idx++){
+			mexNeighbours[idx] = new int[mexNums.get(idx).size()];
+			for (int pos = 0; pos < mexNeighbours[idx].length; pos++){
+				mexNeighbours[idx][pos] = mexNums.get(idx).get(pos);
+			}
+			mexLists.set(idx, Collections.unmodifiableList(mexLists.get(idx)));
+		}
+
+		//The result schema
+		this.resultSchema = gph.getResultSchema() == null ? Collections.<MyNode>emptyList() : Collections.unmodifiableList(new ArrayList<MyNode>(gph.getResultSchema()));
+		this.schemaMask = new BitSet(nodes.length);
+		for (MyNode node : resultSchema){
+			Integer num = numbers.get(node);
+			if (num != null){
+				schemaMask.set(num);
+			}
+		}
+		this.schemaComplete = schemaMask.cardinality() == nodes.length;
+	}
+
+	/**
+	 * @return The compiled GPHolder
+	 */
+	public GPHolder getGPHolder(){
+		return gph;
+	}
+
+	/**
+	 * @return The number of gp nodes
+	 */
+	public int size(){
+		return nodes.length;
+	}
+
+	/**
+	 * @param num The node number
+	 * @return The gp node
+	 */
+	public MyNode getNode(int num){
+		return nodes[num];
+	}
+
+	/**
+	 * @param node The gp node
+	 * @return The number of the node, or -1 if it is not in the graph pattern
+	 */
+	public int getNumber(MyNode node){
+		Integer num = numbers.get(node);
+		return num == null ? -1 : num;
+	}
+
+	/**
+	 * Returns the relationships that contain the given node. The returned array must not be modified.
+	 * @param node The gp node
+	 * @return The incident relationships
+	 */
+	public MyRelationship[] getRelationships(MyNode node){
+		return rels[numbers.get(node)];
+	}
+
+	/**
+	 * Returns the relationships that contain the node with the given number. The returned array must not be modified.
+	 * @param num The node number
+	 * @return The incident relationships
+	 */
+	public MyRelationship[] getRelationships(int num){
+		return rels[num];
+	}
+
+	/**
+	 * Returns the numbers of the other ends of the incident relationships, in the order of getRelationships(num).
+	 * The returned array must not be modified.
+	 * @param num The node number
+	 * @return The numbers of the other ends
+	 */
+	public int[] getOthers(int num){
+		return others[num];
+	}
+
+	/**
+	 * Returns the directions of the incident relationships from the node's perspective (OUTGOING if the node is the
+	 * source), in the order of getRelationships(num). The returned array must not be modified.
+	 * @param num The node number
+	 * @return The directions
+	 */
+	public MyDirection[] getDirections(int num){
+		return directions[num];
+	}
+
+	/**
+	 * Returns the numbers of the nodes that are in a mex constraint with the node. The returned array must not be modified.
+	 * @param num The node number
+	 * @return The numbers of the mex neighbours
+	 */
+	public int[] getMexNeighbours(int num){
+		return mexNeighbours[num];
+	}
+
+	/**
+	 * Returns the mutual exclusion constraints that contain the given node, like GPHolder.getMexList(node),
+	 * without scanning the whole list.
+	 * @param node The gp node
+	 * @return The read-only list of the constraints
+	 */
+	public List<Pair<MyNode, MyNode>> getMexList(MyNode node){
+		Integer num = numbers.get(node);
+		if (num == null){
+			return Collections.emptyList();
+		}
+		return mexLists.get(num);
+	}
+
+	/**
+	 * @return The read-only result schema
+	 */
+	public List<MyNode> getResultSchema(){
+		return resultSchema;
+	}
+
+	/**
+	 * @param num The node number
+	 * @return True if the node is in the result schema
+	 */
+	public boolean inResultSchema(int num){
+		return schemaMask.get(num);
+	}
+
+	/**
+	 * @return True if every gp node is in the result schema (so no two complete assignments give the same result)
+	 */
+	public boolean isSchemaComplete(){
+		return schemaComplete;
+	}
+}
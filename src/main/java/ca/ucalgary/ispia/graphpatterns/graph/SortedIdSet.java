@@ -0,0 +1,155 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import java.nio.IntBuffer;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import ca.ucalgary.ispia.graphpatterns.util.IdBitmap;
+
+/**
+ * A read-only set of dataset nodes, viewed over a sorted (ascending) range of node ids in an int buffer.
+ * The buffer is either heap backed or memory mapped (see GraphSnapshot).
+ * The range may contain the same id more than once (parallel relationships); the set only exposes
+ * it once. Used to return neighbourhoods from the compressed adjacency store without copying them.
+ */
+public class SortedIdSet extends AbstractSet<MyNode>{
+
+	private final MyNode[] nodes;	//The lookup from id to node
+	private final IntBuffer ids;	//The buffer containing the range
+	private final int from;			//The first index of the range (inclusive)
+	private final int to;			//The last index of the range (exclusive)
+	private int size;				//The number of distinct ids; -1 until computed
+
+	/**
+	 * Creates the view.
+	 * @param nodes The lookup from id to node
+	 * @param ids The buffer containing the sorted range of ids
+	 * @param from The first index of the range (inclusive)
+	 * @param to The last index of the range (exclusive)
+	 */
+	public SortedIdSet(MyNode[] nodes, IntBuffer ids, int from, int to){
+		this.nodes = nodes;
+		this.ids = ids;
+		this.from = from;
+		this.to = to;
+		this.size = -1;
+	}
+
+	/**
+	 * @return The buffer containing the range
+	 */
+	public IntBuffer getIds(){
+		return ids;
+	}
+
+	/**
+	 * @return The first index of the range (inclusive)
+	 */
+	public int getFrom(){
+		return from;
+	}
+
+	/**
+	 * @return The last index of the range (exclusive)
+	 */
+	public int getTo(){
+		return to;
+	}
+
+	/**
+	 * @return The ids in the range as a compressed bitmap.
+	 */
+	public IdBitmap toBitmap(){
+		if (ids.hasArray()){
+			return IdBitmap.fromSorted(ids.array(), ids.arrayOffset() + from, ids.arrayOffset() + to);
+		}
+
+		//Off-heap buffer; copy the range out first
+		int[] range = new int[to - from];
+		for (int idx = from; idx < to; idx++){
+			range[idx - from] = ids.get(idx);
+		}
+		return IdBitmap.fromSorted(range, 0, range.length);
+	}
+
+	/**
+	 * Checks if the range contains the given id, using binary search.
+	 * @param id The id
+	 * @return True if the id is in the range, else false.
+	 */
+	public boolean containsId(int id){
+		int low = from;
+		int high = to - 1;
+		while (low <= high){
+			int mid = (low + high) >>> 1;
+			int val = ids.get(mid);
+			if (val < id){
+				low = mid + 1;
+			} else if (val > id){
+				high = mid - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(Object obj){
+		if (obj instanceof MyNode){
+			return containsId(((MyNode) obj).getId());
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isEmpty(){
+		return from == to;
+	}
+
+	@Override
+	public int size(){
+		if (size < 0){
+			//Count the distinct ids
+			int count = 0;
+			for (int idx = from; idx < to; idx++){
+				if (idx == from || ids.get(idx) != ids.get(idx - 1)){
+					count++;
+				}
+			}
+			size = count;
+		}
+		return size;
+	}
+
+	@Override
+	public Iterator<MyNode> iterator(){
+		return new Iterator<MyNode>(){
+			private int idx = from;
+
+			@Override
+			public boolean hasNext(){
+				return idx < to;
+			}
+
+			@Override
+			public MyNode next(){
+				if (idx >= to){
+					throw new NoSuchElementException();
+				}
+				int id = ids.get(idx);
+				//Skip the duplicates of the current id
+				while (idx < to && ids.get(idx) == id){
+					idx++;
+				}
+				return nodes[id];
+			}
+
+			@Override
+			public void remove(){
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
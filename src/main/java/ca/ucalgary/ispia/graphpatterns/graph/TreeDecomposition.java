@@ -0,0 +1,210 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A tree decomposition of the graph pattern of a QueryPlan. Each bag is a set of node numbers, such that:
+ * 1. The two ends of every relationship, and the two nodes of every mutual exclusion constraint, are together in
+ *    at least one bag.
+ * 2. The bags that contain a node form a connected subtree.
+ * The bags form a forest (a tree per connected component of the graph pattern); the decomposition is unrooted,
+ * so that the evaluation can root each tree at its most selective bag.
+ *
+ * The decomposition is computed by eliminating the nodes in the min-degree order, and then contracting the bags
+ * that are contained in a neighbouring bag. For acyclic patterns (e.g. chains and trees), each bag is a single
+ * relationship, and the width is 1.
+ *
+ * The decomposition is immutable.
+ */
+public class TreeDecomposition {
+
+	private final int[][] bags;				//The node numbers of each bag, sorted
+	private final int[][] neighbours;		//The adjacent bags of each bag
+	private final int width;				//The size of the largest bag, minus 1
+
+	/**
+	 * Computes the tree decomposition of the graph pattern of the given plan.
+	 * @param plan The query plan
+	 * @return The tree decomposition
+	 */
+	public static TreeDecomposition of(QueryPlan plan){
+		int size = plan.size();
+
+		//The primal graph: the nodes are adjacent if they share a relationship or a mex constraint
+		List<TreeSet<Integer>> adjacent = new ArrayList<TreeSet<Integer>>();
+		for (int num = 0; num < size; num++){
+			adjacent.add(new TreeSet<Integer>());
+		}
+		for (int num = 0; num < size; num++){
+			for (int other : plan.getOthers(num)){
+				if (other != num){
+					adjacent.get(num).add(other);
+					adjacent.get(other).add(num);
+				}
+			}
+			for (int other : plan.getMexNeighbours(num)){
+				if (other != num){
+					adjacent.get(num).add(other);
+					adjacent.get(other).add(num);
+				}
+			}
+		}
+
+		//Eliminate the nodes, each time the one with the fewest remaining neighbours
+		int[] position = new int[size];
+		List<TreeSet<Integer>> eliminationBags = new ArrayList<TreeSet<Integer>>();
+		int[] eliminated = new int[size];
+		boolean[] done = new boolean[size];
+		for (int step = 0; step < size; step++){
+			int next = -1;
+			for (int num = 0; num < size; num++){
+				if (!done[num] && (next < 0 || adjacent.get(num).size() < adjacent.get(next).size())){
+					next = num;
+				}
+			}
+
+			TreeSet<Integer> bag = new TreeSet<Integer>(adjacent.get(next));
+			bag.add(next);
+			eliminationBags.add(bag);
+			eliminated[step] = next;
+			position[next] = step;
+			done[next] = true;
+
+			//Connect the remaining neighbours to each other
+			for (int first : adjacent.get(next)){
+				adjacent.get(first).remove(next);
+				for (int second : adjacent.get(next)){
+					if (first != second){
+						adjacent.get(first).add(second);
+					}
+				}
+			}
+		}
+
+		//The parent of the bag of each node is the bag of its neighbour that was eliminated first after it
+		List<TreeSet<Integer>> edges = new ArrayList<TreeSet<Integer>>();
+		for (int step = 0; step < size; step++){
+			edges.add(new TreeSet<Integer>());
+		}
+		for (int step = 0; step < size; step++){
+			int parent = -1;
+			for (int num : eliminationBags.get(step)){
+				if (num != eliminated[step] && (parent < 0 || position[num] < parent)){
+					parent = position[num];
+				}
+			}
+			if (parent >= 0){
+				edges.get(step).add(parent);
+				edges.get(parent).add(step);
+			}
+		}
+
+		return contract(eliminationBags, edges);
+	}
+
+	/**
+	 * Contracts every bag that is contained in a neighbouring bag into that bag.
+	 */
+	private static TreeDecomposition contract(List<TreeSet<Integer>> bags, List<TreeSet<Integer>> edges){
+		boolean[] removed = new boolean[bags.size()];
+
+		boolean changed = true;
+		while (changed){
+			changed = false;
+			for (int bag = 0; bag < bags.size() && !changed; bag++){
+				if (removed[bag]){
+					continue;
+				}
+				for (int other : edges.get(bag)){
+					if (bags.get(other).containsAll(bags.get(bag))){
+						//Move the other neighbours of the bag to the containing bag
+						for (int neighbour : edges.get(bag)){
+							edges.get(neighbour).remove(bag);
+							if (neighbour != other){
+								edges.get(neighbour).add(other);
+								edges.get(other).add(neighbour);
+							}
+						}
+						edges.get(bag).clear();
+						removed[bag] = true;
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+
+		//Renumber the remaining bags
+		int[] index = new int[bags.size()];
+		int count = 0;
+		for (int bag = 0; bag < bags.size(); bag++){
+			index[bag] = removed[bag] ? -1 : count++;
+		}
+
+		int[][] resultBags = new int[count][];
+		int[][] resultNeighbours = new int[count][];
+		int width = 0;
+		for (int bag = 0; bag < bags.size(); bag++){
+			if (removed[bag]){
+				continue;
+			}
+			resultBags[index[bag]] = toArray(bags.get(bag));
+			resultNeighbours[index[bag]] = new int[edges.get(bag).size()];
+			int pos = 0;
+			for (int neighbour : edges.get(bag)){
+				resultNeighbours[index[bag]][pos++] = index[neighbour];
+			}
+			width = Math.max(width, bags.get(bag).size() - 1);
+		}
+		return new TreeDecomposition(resultBags, resultNeighbours, width);
+	}
+
+	private static int[] toArray(TreeSet<Integer> set){
+		int[] result = new int[set.size()];
+		int pos = 0;
+		for (int value : set){
+			result[pos++] = value;
+		}
+		return result;
+	}
+
+	private TreeDecomposition(int[][] bags, int[][] neighbours, int width){
+		this.bags = bags;
+		this.neighbours = neighbours;
+		this.width = width;
+	}
+
+	/**
+	 * @return The number of bags
+	 */
+	public int size(){
+		return bags.length;
+	}
+
+	/**
+	 * Returns the sorted node numbers of the bag. The returned array must not be modified.
+	 * @param bag The bag index
+	 * @return The node numbers
+	 */
+	public int[] getBag(int bag){
+		return bags[bag];
+	}
+
+	/**
+	 * Returns the indices of the bags adjacent to the bag. The returned array must not be modified.
+	 * @param bag The bag index
+	 * @return The adjacent bags
+	 */
+	public int[] getNeighbours(int bag){
+		return neighbours[bag];
+	}
+
+	/**
+	 * @return The width of the decomposition (the size of the largest bag, minus 1)
+	 */
+	public int getWidth(){
+		return width;
+	}
+}
@@ -0,0 +1,181 @@
+package ca.ucalgary.ispia.graphpatterns.tests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import ca.ucalgary.ispia.graphpatterns.gpchecker.AssignmentFilter;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.GPCheckerFC;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.VerdictCache;
+import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
+import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.PlanCache;
+import ca.ucalgary.ispia.graphpatterns.graph.QueryPlan;
+
+/**
+ * Evaluates a database query together with the policy that must grant its results, in a single search (unlike
+ * TwoStepEval, which checks the policy for each query result after the fact). The query nodes and the policy nodes
+ * with the same key in the actMaps are the seeds. The query search consults the policy as soon as all of the
+ * query seeds are assigned, and does not go below the seed bindings that the policy denies. The policy verdict of
+ * each distinct seed binding is computed once and cached, for the whole evaluation.
+ *
+ * The result is the same as TwoStepEval's: the query results whose seed binding is granted by the policy.
+ */
+public class CombinedEval implements Killable{
+
+	//The same queries and policies are evaluated repeatedly, so their plans are compiled once and shared
+	private static final PlanCache plans = new PlanCache(64);
+
+	private GPCheckerFC queryChecker = null;
+	private GPCheckerFC currentChecker = null;
+	private volatile boolean kill = false;
+	private VerdictCache verdictCache = null;		//The policy verdicts shared between the evaluations; null for none
+
+	private int policyChecks = 0;					//The number of policy evaluations
+	private int verdictHits = 0;					//The number of seed bindings answered by the verdict cache
+
+	/**
+	 * Sets the cache of the policy verdicts, which may be shared between the evaluations (the verdicts of one
+	 * evaluation are always cached for its duration).
+	 * @param verdictCache The verdict cache; null for none
+	 */
+	public void setVerdictCache(VerdictCache verdictCache){
+		this.verdictCache = verdictCache;
+	}
+
+	public List<Map<MyNode, Node>> check(GraphDatabaseService graphDb, GPHolder dbQuery, GPHolder policy){
+
+		Map<String, MyNode> qActMap = dbQuery.getActMap();
+		Map<String, MyNode> pActMap = policy.getActMap();
+
+		//Pair up the seeds
+		final List<MyNode> querySeeds = new ArrayList<MyNode>();
+		final List<MyNode> policySeeds = new ArrayList<MyNode>();
+		for (String key : qActMap.keySet()){
+			if (pActMap.get(key) != null){
+				querySeeds.add(qActMap.get(key));
+				policySeeds.add(pActMap.get(key));
+			}
+		}
+
+		final GraphDatabaseService db = graphDb;
+		final GPHolder pgh = policy;
+		final VerdictCache shared = verdictCache;
+		final QueryPlan pol = plans.getPlan(policy);
+		policyChecks = 0;
+		verdictHits = 0;
+
+		if (querySeeds.isEmpty()){
+			//The verdict does not depend on the query results
+			currentChecker = new GPCheckerFC(db, pol);
+			policyChecks++;
+			if (!currentChecker.exists()){
+				return kill ? null : new ArrayList<Map<MyNode, Node>>();
+			}
+		}
+
+		queryChecker = new GPCheckerFC(graphDb, plans.getPlan(dbQuery));
+		queryChecker.setAssignmentFilter(new AssignmentFilter<Node>(){
+
+			//The verdict of each seed binding, by the (internal) ids of the seed vertices
+			private final Map<List<Long>, Boolean> verdicts = new HashMap<List<Long>, Boolean>();
+
+			public boolean accept(MyNode node, Node vertex, Map<MyNode, Node> assignments){
+				if (!querySeeds.contains(node)){
+					return true;
+				}
+
+				//Wait until all of the seeds are assigned
+				List<Long> binding = new ArrayList<Long>();
+				for (MyNode seed : querySeeds){
+					Node seedVertex = assignments.get(seed);
+					if (seedVertex == null){
+						return true;
+					}
+					binding.add(seedVertex.getId());
+				}
+
+				Boolean granted = verdicts.get(binding);
+				if (granted != null){
+					verdictHits++;
+					return granted;
+				}
+
+				//The filter runs inside the transaction of the query search
+				Map<MyNode, Integer> extraInfo = new HashMap<MyNode, Integer>();
+				for (int idx = 0; idx < querySeeds.size(); idx++){
+					int idVal = (int) assignments.get(querySeeds.get(idx)).getProperty("id");
+					extraInfo.put(policySeeds.get(idx), idVal);
+				}
+
+				granted = shared == null ? null : shared.get(pgh, extraInfo);
+				if (granted != null){
+					verdictHits++;
+					verdicts.put(binding, granted);
+					return granted;
+				}
+
+				long epoch = shared == null ? 0 : shared.getEpoch();
+				GPCheckerFC policyFC = new GPCheckerFC(db, pol);
+				currentChecker = policyFC;
+				policyChecks++;
+				//Only the existence of a policy match matters, so stop at the first one
+				granted = policyFC.exists(extraInfo);
+
+				//A killed policy check is not a verdict
+				if (!kill){
+					verdicts.put(binding, granted);
+					if (shared != null){
+						shared.put(pgh, extraInfo, granted, epoch);
+					}
+				}
+				return granted;
+			}
+		});
+
+		//One transaction for the whole search, so that the checkers' own transactions nest in it, and the
+		//filter reads the seed ids without opening one per seed binding. The search only reads, and a nested
+		//transaction closed without success marks this one as failed, so it is not marked successful.
+		List<Map<MyNode, Node>> results = null;
+		try (Transaction tx = graphDb.beginTx()){
+			results = queryChecker.check();
+		}
+
+		if (kill){
+			return null;
+		}
+		if (results == null){
+			return new ArrayList<Map<MyNode, Node>>();
+		}
+		return results;
+	}
+
+	/**
+	 * @return The number of policy evaluations in the last check
+	 */
+	public int getPolicyChecks(){
+		return policyChecks;
+	}
+
+	/**
+	 * @return The number of seed bindings answered by the verdict cache in the last check
+	 */
+	public int getVerdictHits(){
+		return verdictHits;
+	}
+
+	public void kill(){
+		kill = true;
+		if (queryChecker != null){
+			queryChecker.kill();
+		}
+		if (currentChecker != null){
+			currentChecker.kill();
+		}
+	}
+}
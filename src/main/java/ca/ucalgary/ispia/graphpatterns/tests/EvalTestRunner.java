@@ -18,6 +18,7 @@ import org.neo4j.graphdb.Transaction;
 
 import ca.ucalgary.ispia.graphpatterns.gpchecker.GPCheckerFC;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.AltStart;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.BatchEvaluator;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.ConstraintsEvaluator;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.GPCheckerFCCBJ;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.GPCheckerFCLBJ;
@@ -26,6 +27,7 @@ import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.VariableOrdering;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.AttrBasedStart;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.ConstraintsChecker;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.DBAccess;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.DBSession;
 import ca.ucalgary.ispia.graphpatterns.gpchecker.opt.impl.LeastCandidates;
 import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
 import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
@@ -156,12 +158,57 @@ public class EvalTestRunner {
 		}
 	}
 
+	/**
+	 * Runs the GPH test cases as batches (see BatchEvaluator), instead of one at a time, and prints the time of each
+	 * batch and the hit rate of the shared neighbourhood cache.
+	 * Precondition: The file contains a list of GPHolder objects.
+	 * @param fileName The name of the file
+	 * @param batchSize The number of test cases per batch
+	 * @param threads The number of threads of the batch evaluator
+	 */
+	public void runBatchTests(String fileName, int batchSize, int threads){
+		List<GPHolder> tests = null;
+		try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))){
+			tests = (List<GPHolder>) ois.readObject();
+		} catch (Exception e) {
+			throw new RuntimeException("Could not read the test cases from " + fileName, e);
+		}
+
+		BatchEvaluator batchEval = new BatchEvaluator(graphDb, threads, 1000000l);
+		try {
+			for (int i = 0; i < tests.size(); i += batchSize){
+				List<GPHolder> batch = tests.subList(i, Math.min(i + batchSize, tests.size()));
+
+				//Set a 6 second kill switch per test case
+				Terminator term = new Terminator(batchEval);
+				term.terminateAfter(6000l * batch.size());
+				//The cache statistics are per batch (the cached expansions are kept)
+				if (batchEval.getCache() != null){
+					batchEval.getCache().resetStatistics();
+				}
+				//Run the batch and record the time
+				long start = System.nanoTime();
+				batchEval.evaluate(batch);
+				long end = System.nanoTime();
+				//Make sure the terminator is killed
+				term.nullifyObj();
+				term.stop();
+
+				System.out.println((end - start) + ", " + batch.size() + ", " + batchEval.getDistinctQueries() + ", " + batchEval.getGroups() + ", " + batchEval.getCache().getHitRate());
+			}
+		} finally {
+			batchEval.shutdown();
+		}
+	}
+
 	public void executeSoloTestFCLBJ(GPHolder test){
 
-		ConstraintsEvaluator<Node,Entity> ce = new ConstraintsChecker(test, graphDb);
-		NeighbourhoodAccess<Node> neighbourhoodAccess = new DBAccess(graphDb, ce);
+		//Share one session, so that each evaluation runs in a single read transaction
+		DBSession session = new DBSession(graphDb);
+		ConstraintsEvaluator<Node,Entity> ce = new ConstraintsChecker(test, session);
+		NeighbourhoodAccess<Node> neighbourhoodAccess = new DBAccess(session, ce);
 		VariableOrdering<Node> variableOrdering = new LeastCandidates<Node>(test.getGp());
-		AltStart<Node> as = new AttrBasedStart(graphDb, ce);
+		AltStart<Node> as = new AttrBasedStart(session, ce);
 
 		GPCheckerFCLBJ<Node, Entity> gpEval = new GPCheckerFCLBJ<Node, Entity>(test, ce, neighbourhoodAccess, variableOrdering, as);
 
@@ -201,10 +248,12 @@ public class EvalTestRunner {
 
 	public void executeSoloTestFCCBJ(GPHolder test){
 
-		ConstraintsEvaluator<Node,Entity> ce = new ConstraintsChecker(test, graphDb);
-		NeighbourhoodAccess<Node> neighbourhoodAccess = new DBAccess(graphDb, ce);
+		//Share one session, so that each evaluation runs in a single read transaction
+		DBSession session = new DBSession(graphDb);
+		ConstraintsEvaluator<Node,Entity> ce = new ConstraintsChecker(test, session);
+		NeighbourhoodAccess<Node> neighbourhoodAccess = new DBAccess(session, ce);
 		VariableOrdering<Node> variableOrdering = new LeastCandidates<Node>(test.getGp());
-		AltStart<Node> as = new AttrBasedStart(graphDb, ce);
+		AltStart<Node> as = new AttrBasedStart(session, ce);
 
 		GPCheckerFCCBJ<Node, Entity> gpEval = new GPCheckerFCCBJ<Node, Entity>(test, ce, neighbourhoodAccess, variableOrdering, as);
 
@@ -10,15 +10,30 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 
 import ca.ucalgary.ispia.graphpatterns.gpchecker.GPCheckerFC;
+import ca.ucalgary.ispia.graphpatterns.gpchecker.VerdictCache;
 import ca.ucalgary.ispia.graphpatterns.graph.GPHolder;
 import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
+import ca.ucalgary.ispia.graphpatterns.graph.PlanCache;
+import ca.ucalgary.ispia.graphpatterns.graph.QueryPlan;
 
 public class TwoStepEval implements Killable{
 
+	//The policy is checked once per query result, so its plan is compiled once and shared
+	private static final PlanCache plans = new PlanCache(64);
+
 	private GPCheckerFC currentChecker = null;
 	private boolean kill = false;
+	private VerdictCache verdicts = null;		//The shared policy verdicts; null for none
 	public List<Map<MyNode, Node>> unfiltered;
 	
+	/**
+	 * Sets the cache of the policy verdicts, which may be shared between the evaluations.
+	 * @param verdicts The verdict cache; null for none
+	 */
+	public void setVerdictCache(VerdictCache verdicts){
+		this.verdicts = verdicts;
+	}
+	
 	public List<Map<MyNode, Node>> check(GraphDatabaseService graphDb, GPHolder dbQuery, GPHolder policy){
 		
 		Map<String, MyNode> qActMap = dbQuery.getActMap();
@@ -29,7 +44,7 @@ public class TwoStepEval implements Killable{
 			seedsMap.put(qActMap.get(key), pActMap.get(key));
 		}
 		
-		GPCheckerFC queryFC = new GPCheckerFC(graphDb, dbQuery);
+		GPCheckerFC queryFC = new GPCheckerFC(graphDb, plans.getPlan(dbQuery));
 		currentChecker = queryFC;
 		
 		queryFC.check();
@@ -42,6 +57,7 @@ public class TwoStepEval implements Killable{
 		//System.out.println("Unfiltered Size: " + queryFC.queryResults.size());
 		
 		List<Map<MyNode, Node>> results = queryFC.queryResults;
+		QueryPlan pol = plans.getPlan(policy);
 		
 		List<Map<MyNode, Node>> filtered = new ArrayList<Map<MyNode, Node>>();
 		
@@ -57,15 +73,24 @@ public class TwoStepEval implements Killable{
 				}
 			}
 			
-			GPCheckerFC policyFC = new GPCheckerFC(graphDb, policy);
-			currentChecker = policyFC;
-			policyFC.check(extraInfo);
-			
-			if (kill){
-				return null;
+			//Reuse the verdict of an earlier check of the same binding, if it is still valid
+			Boolean granted = verdicts == null ? null : verdicts.get(policy, extraInfo);
+			if (granted == null){
+				long epoch = verdicts == null ? 0 : verdicts.getEpoch();
+				GPCheckerFC policyFC = new GPCheckerFC(graphDb, pol);
+				currentChecker = policyFC;
+				//Only the existence of a policy match matters, so stop at the first one
+				granted = policyFC.exists(extraInfo);
+				
+				if (kill){
+					return null;
+				}
+				if (verdicts != null){
+					verdicts.put(policy, extraInfo, granted, epoch);
+				}
 			}
 			
-			if (!policyFC.queryResults.isEmpty()){
+			if (granted){
 				filtered.add(res);
 			}
 			
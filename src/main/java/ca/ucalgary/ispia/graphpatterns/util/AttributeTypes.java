@@ -3,15 +3,35 @@ package ca.ucalgary.ispia.graphpatterns.util;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 
 public class AttributeTypes {
 
-	private static List<String> intTypes = new ArrayList<String>();
+	private static Set<String> intTypes = new HashSet<String>();		//Hash set, as it is queried for every attribute check
 	private static List<String> vertexAttributes = new ArrayList<String>();
 	private static List<String> edgeAttributes = new ArrayList<String>();
 	
+	static {
+		//Populated eagerly, so that the parallel search can query it without locking
+		intTypes.add("id");
+		intTypes.add("age");
+		intTypes.add("detailed industry recode");
+		intTypes.add("detailed occupation recode");
+		intTypes.add("wage per hour");
+		intTypes.add("capital gains");
+		intTypes.add("capital losses");
+		intTypes.add("dividends from stocks");
+		intTypes.add("num persons worked for employer");
+		intTypes.add("weeks worked in year");
+		intTypes.add("own business or self employed");
+		intTypes.add("veterans benefits");
+		intTypes.add("year");
+		intTypes.add("weight");
+	}
+	
 
 	public static List<String> getVertexAttributes(){
 
@@ -42,28 +62,6 @@ public class AttributeTypes {
 	}
 
 	public static boolean isIntType(String attrName){
-
-		if (intTypes.isEmpty()){
-			intTypes.add("id");
-			intTypes.add("age");
-			intTypes.add("detailed industry recode");
-			intTypes.add("detailed occupation recode");
-			intTypes.add("wage per hour");
-			intTypes.add("capital gains");
-			intTypes.add("capital losses");
-			intTypes.add("dividends from stocks");
-			intTypes.add("num persons worked for employer");
-			intTypes.add("weeks worked in year");
-			intTypes.add("own business or self employed");
-			intTypes.add("veterans benefits");
-			intTypes.add("year");
-			intTypes.add("weight");
-		}
-
-		if (intTypes.contains(attrName)){
-			return true;
-		} else {
-			return false;
-		}
+		return intTypes.contains(attrName);
 	}
 }
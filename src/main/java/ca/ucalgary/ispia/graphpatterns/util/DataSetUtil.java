@@ -1,5 +1,6 @@
 package ca.ucalgary.ispia.graphpatterns.util;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -11,7 +12,10 @@ import java.util.Map;
 import java.util.Random;
 
 import ca.ucalgary.ispia.graphpatterns.graph.DataSet;
+import ca.ucalgary.ispia.graphpatterns.graph.DataSetCSR;
 import ca.ucalgary.ispia.graphpatterns.graph.DataSetInterface;
+import ca.ucalgary.ispia.graphpatterns.graph.GraphSnapshot;
+import ca.ucalgary.ispia.graphpatterns.graph.GraphStatistics;
 import ca.ucalgary.ispia.graphpatterns.graph.MyNode;
 
 public class DataSetUtil {
@@ -49,6 +53,92 @@ public class DataSetUtil {
 	}
 	
 
+	/**
+	 * Opens the binary snapshot of the dataset (see GraphSnapshot). The adjacency is mapped from the file.
+	 * @param fileName The dataset name
+	 * @return The compressed adjacency store, or null if the snapshot cannot be read.
+	 */
+	public static DataSetCSR loadSnapshot(String fileName){
+
+		DataSetCSR csr = null;
+
+		try {
+			csr = GraphSnapshot.open(new File("simulation-tests/"+fileName+".snap"));
+		} catch (IOException e){
+			System.out.println("IOException" + e);
+		}
+
+		return csr;
+	}
+
+	/**
+	 * Reads the dataset from the text file (see TxtToDS), and writes it in the binary snapshot format.
+	 * @param fileName The dataset name
+	 * @param random The source of randomness for the relationship types
+	 */
+	public static void saveSnapshot(String fileName, Random random){
+		DataSet ds = TxtToDS.readDataSet("simulation-tests/"+fileName+".txt", random);
+		saveSnapshot(fileName, ds);
+	}
+
+	/**
+	 * Writes the dataset in the binary snapshot format. Can be used to convert an existing serialized
+	 * dataset, e.g. saveSnapshot(fileName, loadDataSet(fileName)).
+	 * @param fileName The dataset name
+	 * @param ds The dataset
+	 */
+	public static void saveSnapshot(String fileName, DataSet ds){
+		try {
+			GraphSnapshot.write(ds, new File("simulation-tests/"+fileName+".snap"));
+		} catch (IOException e){
+			System.out.println("IOException" + e);
+		}
+	}
+
+	/**
+	 * Loads the statistics catalog of the dataset (see GraphStatistics).
+	 * @param fileName The dataset name
+	 * @return The statistics catalog, or null if it cannot be read.
+	 */
+	public static GraphStatistics loadStatistics(String fileName){
+
+		GraphStatistics stats = null;
+
+		try {
+			ObjectInputStream ois = new ObjectInputStream(new FileInputStream("simulation-tests/"+fileName+".stats"));
+			stats = (GraphStatistics) ois.readObject();
+			ois.close();
+		} catch (IOException e){
+			System.out.println("IOException" + e);
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		}
+
+		return stats;
+	}
+
+	/**
+	 * Builds the statistics catalog of the dataset, and saves it next to the dataset.
+	 * @param fileName The dataset name
+	 * @param ds The dataset
+	 * @param numHubs The number of hubs to keep
+	 * @return The statistics catalog
+	 */
+	public static GraphStatistics saveStatistics(String fileName, DataSet ds, int numHubs){
+		GraphStatistics stats = GraphStatistics.build(ds, numHubs);
+
+		try {
+			FileOutputStream fout = new FileOutputStream("simulation-tests/"+fileName+".stats");
+			ObjectOutputStream oos = new ObjectOutputStream(fout);
+			oos.writeObject(stats);
+			oos.close();
+		} catch (IOException e){
+			System.out.println("IOException" + e);
+		}
+
+		return stats;
+	}
+
 	public static void dsStats(DataSetInterface dsi){
 		int maxTDegree = -1;
 		int minTDegree = Integer.MAX_VALUE;
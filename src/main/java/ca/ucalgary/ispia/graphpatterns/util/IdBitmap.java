@@ -0,0 +1,652 @@
+package ca.ucalgary.ispia.graphpatterns.util;
+
+import java.util.Arrays;
+
+/**
+ * A compressed bitmap of non-negative int ids. The ids are split into chunks of 2^16 values, keyed by
+ * their high 16 bits. A chunk with few ids is stored as a sorted array of the low 16 bits, and a dense
+ * chunk is stored as a plain 2^16 bit bitmap. Intersection, emptiness, and size checks work on whole
+ * chunks and 64-bit words instead of hashing single ids.
+ */
+public class IdBitmap {
+
+	//Chunks with more ids than this are stored as bitmaps, the rest as sorted arrays
+	private static final int ARRAY_MAX = 4096;
+
+	private char[] keys;				//The high 16 bits of each chunk, sorted
+	private Container[] containers;		//The chunks, in the same order as keys
+	private int size;					//The number of chunks
+	private int cardinality;			//The number of ids
+
+	/**
+	 * Creates an empty bitmap.
+	 */
+	public IdBitmap(){
+		keys = new char[4];
+		containers = new Container[4];
+		size = 0;
+		cardinality = 0;
+	}
+
+	/**
+	 * Creates a bitmap from a sorted (ascending) range of ids. Duplicate ids are allowed.
+	 * @param ids The array of ids
+	 * @param from The first index of the range (inclusive)
+	 * @param to The last index of the range (exclusive)
+	 * @return The bitmap containing the ids in the range.
+	 */
+	public static IdBitmap fromSorted(int[] ids, int from, int to){
+		IdBitmap result = new IdBitmap();
+
+		int idx = from;
+		while (idx < to){
+			//Find the end of the current chunk
+			char key = (char) (ids[idx] >>> 16);
+			int end = idx;
+			while (end < to && (char) (ids[end] >>> 16) == key){
+				end++;
+			}
+
+			Container container = null;
+			if (end - idx > ARRAY_MAX){
+				container = new BitmapContainer();
+				for (int i = idx; i < end; i++){
+					container = container.add((char) ids[i]);
+				}
+			} else {
+				//Append the (sorted) low bits, skipping the duplicates
+				char[] values = new char[end - idx];
+				int card = 0;
+				for (int i = idx; i < end; i++){
+					char low = (char) ids[i];
+					if (card == 0 || values[card - 1] != low){
+						values[card++] = low;
+					}
+				}
+				container = new ArrayContainer(values, card);
+			}
+
+			result.append(key, container);
+			idx = end;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return A deep copy of this bitmap.
+	 */
+	public IdBitmap copy(){
+		IdBitmap result = new IdBitmap();
+		result.keys = Arrays.copyOf(keys, Math.max(size, 4));
+		result.containers = new Container[result.keys.length];
+		for (int idx = 0; idx < size; idx++){
+			result.containers[idx] = containers[idx].copy();
+		}
+		result.size = size;
+		result.cardinality = cardinality;
+		return result;
+	}
+
+	/**
+	 * @return The number of ids in the bitmap.
+	 */
+	public int cardinality(){
+		return cardinality;
+	}
+
+	/**
+	 * @return True if the bitmap contains no ids, else false.
+	 */
+	public boolean isEmpty(){
+		return cardinality == 0;
+	}
+
+	/**
+	 * Checks if the bitmap contains the given id.
+	 * @param id The id
+	 * @return True if the id is in the bitmap, else false.
+	 */
+	public boolean contains(int id){
+		if (id < 0){
+			return false;
+		}
+		int idx = findKey((char) (id >>> 16));
+		return idx >= 0 && containers[idx].contains((char) id);
+	}
+
+	/**
+	 * Adds the given id to the bitmap.
+	 * @param id The id (must not be negative)
+	 * @return True if the id was added, false if it was already present.
+	 */
+	public boolean add(int id){
+		if (id < 0){
+			throw new IllegalArgumentException("Negative id: " + id);
+		}
+
+		char key = (char) (id >>> 16);
+		int idx = findKey(key);
+
+		if (idx >= 0){
+			Container container = containers[idx];
+			int before = container.cardinality();
+			containers[idx] = container.add((char) id);
+			if (containers[idx].cardinality() == before){
+				return false;
+			}
+		} else {
+			//Insert a new chunk at the insertion point
+			Container container = new ArrayContainer(new char[4], 0).add((char) id);
+			insert(-idx - 1, key, container);
+		}
+
+		cardinality++;
+		return true;
+	}
+
+	/**
+	 * Removes the given id from the bitmap.
+	 * @param id The id
+	 * @return True if the id was removed, false if it was not present.
+	 */
+	public boolean remove(int id){
+		if (id < 0){
+			return false;
+		}
+
+		int idx = findKey((char) (id >>> 16));
+		if (idx < 0){
+			return false;
+		}
+
+		Container container = containers[idx];
+		int before = container.cardinality();
+		container = container.remove((char) id);
+		if (container.cardinality() == before){
+			return false;
+		}
+
+		if (container.cardinality() == 0){
+			//Drop the empty chunk
+			System.arraycopy(keys, idx + 1, keys, idx, size - idx - 1);
+			System.arraycopy(containers, idx + 1, containers, idx, size - idx - 1);
+			size--;
+			containers[size] = null;
+		} else {
+			containers[idx] = container;
+		}
+
+		cardinality--;
+		return true;
+	}
+
+	/**
+	 * Removes every id from the bitmap.
+	 */
+	public void clear(){
+		Arrays.fill(containers, 0, size, null);
+		size = 0;
+		cardinality = 0;
+	}
+
+	/**
+	 * Intersects this bitmap with the given bitmap, in place.
+	 * @param other The other bitmap
+	 * @return True if at least one id was removed from this bitmap, else false.
+	 */
+	public boolean and(IdBitmap other){
+		int before = cardinality;
+
+		int newSize = 0;
+		int newCard = 0;
+		int i = 0;
+		int j = 0;
+
+		//Merge the sorted chunk keys, keeping the intersection of the matching chunks
+		while (i < size && j < other.size){
+			if (keys[i] < other.keys[j]){
+				i++;
+			} else if (keys[i] > other.keys[j]){
+				j++;
+			} else {
+				Container container = containers[i].and(other.containers[j]);
+				if (container.cardinality() > 0){
+					keys[newSize] = keys[i];
+					containers[newSize] = container;
+					newSize++;
+					newCard += container.cardinality();
+				}
+				i++;
+				j++;
+			}
+		}
+
+		Arrays.fill(containers, newSize, size, null);
+		size = newSize;
+		cardinality = newCard;
+
+		return cardinality != before;
+	}
+
+	/**
+	 * Computes the size of the intersection of this bitmap and the given bitmap, without
+	 * building the intersection.
+	 * @param other The other bitmap
+	 * @return The number of ids in both bitmaps.
+	 */
+	public int andCardinality(IdBitmap other){
+		int total = 0;
+		int i = 0;
+		int j = 0;
+
+		while (i < size && j < other.size){
+			if (keys[i] < other.keys[j]){
+				i++;
+			} else if (keys[i] > other.keys[j]){
+				j++;
+			} else {
+				total += containers[i].andCardinality(other.containers[j]);
+				i++;
+				j++;
+			}
+		}
+
+		return total;
+	}
+
+	/**
+	 * Checks if every id of the given bitmap is also in this bitmap.
+	 * @param other The other bitmap
+	 * @return True if other is a subset of this bitmap, else false.
+	 */
+	public boolean containsAll(IdBitmap other){
+		return other.cardinality <= cardinality && andCardinality(other) == other.cardinality;
+	}
+
+	/**
+	 * Returns the smallest id in the bitmap that is greater than or equal to the given id.
+	 * @param from The id to start from
+	 * @return The next id, or -1 if there is none.
+	 */
+	public int nextSetBit(int from){
+		if (from < 0){
+			from = 0;
+		}
+
+		char key = (char) (from >>> 16);
+		int idx = findKey(key);
+
+		if (idx >= 0){
+			int low = containers[idx].nextValue((char) from);
+			if (low >= 0){
+				return (key << 16) | low;
+			}
+			idx++;
+		} else {
+			idx = -idx - 1;
+		}
+
+		if (idx < size){
+			return (keys[idx] << 16) | containers[idx].nextValue((char) 0);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return The ids in the bitmap, in ascending order.
+	 */
+	public int[] toArray(){
+		int[] result = new int[cardinality];
+		int pos = 0;
+		for (int id = nextSetBit(0); id >= 0; id = nextSetBit(id + 1)){
+			result[pos++] = id;
+		}
+		return result;
+	}
+
+	//--------------------------//
+	// HELPER METHODS
+	//--------------------------//
+
+	/**
+	 * Binary search for the chunk key.
+	 * @return The index of the key if found, else (-(insertion point) - 1).
+	 */
+	private int findKey(char key){
+		int low = 0;
+		int high = size - 1;
+		while (low <= high){
+			int mid = (low + high) >>> 1;
+			if (keys[mid] < key){
+				low = mid + 1;
+			} else if (keys[mid] > key){
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Inserts a chunk at the given index.
+	 */
+	private void insert(int idx, char key, Container container){
+		ensureCapacity(size + 1);
+		System.arraycopy(keys, idx, keys, idx + 1, size - idx);
+		System.arraycopy(containers, idx, containers, idx + 1, size - idx);
+		keys[idx] = key;
+		containers[idx] = container;
+		size++;
+	}
+
+	/**
+	 * Appends a chunk whose key is greater than all existing keys.
+	 */
+	private void append(char key, Container container){
+		ensureCapacity(size + 1);
+		keys[size] = key;
+		containers[size] = container;
+		size++;
+		cardinality += container.cardinality();
+	}
+
+	private void ensureCapacity(int capacity){
+		if (capacity > keys.length){
+			int newLength = Math.max(capacity, keys.length * 2);
+			keys = Arrays.copyOf(keys, newLength);
+			containers = Arrays.copyOf(containers, newLength);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 1;
+		for (int id = nextSetBit(0); id >= 0; id = nextSetBit(id + 1)){
+			result = 31 * result + id;
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		IdBitmap other = (IdBitmap) obj;
+		return cardinality == other.cardinality && andCardinality(other) == cardinality;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	//--------------------------//
+	// CHUNK CONTAINERS
+	//--------------------------//
+
+	/**
+	 * A chunk of up to 2^16 values (the low 16 bits of the ids).
+	 */
+	private static abstract class Container {
+		abstract int cardinality();
+		abstract boolean contains(char value);
+		abstract Container add(char value);
+		abstract Container remove(char value);
+		abstract Container and(Container other);
+		abstract int andCardinality(Container other);
+		abstract int nextValue(char from);
+		abstract Container copy();
+	}
+
+	/**
+	 * A sparse chunk: the values are stored in a sorted array.
+	 */
+	private static final class ArrayContainer extends Container {
+		private char[] values;
+		private int card;
+
+		ArrayContainer(char[] values, int card){
+			this.values = values;
+			this.card = card;
+		}
+
+		int cardinality(){
+			return card;
+		}
+
+		boolean contains(char value){
+			return Arrays.binarySearch(values, 0, card, value) >= 0;
+		}
+
+		Container add(char value){
+			int idx = Arrays.binarySearch(values, 0, card, value);
+			if (idx >= 0){
+				return this;
+			}
+
+			if (card == ARRAY_MAX){
+				//Too many values; convert to a bitmap
+				BitmapContainer bitmap = toBitmap();
+				return bitmap.add(value);
+			}
+
+			idx = -idx - 1;
+			if (card == values.length){
+				values = Arrays.copyOf(values, Math.min(Math.max(card * 2, 4), ARRAY_MAX));
+			}
+			System.arraycopy(values, idx, values, idx + 1, card - idx);
+			values[idx] = value;
+			card++;
+			return this;
+		}
+
+		Container remove(char value){
+			int idx = Arrays.binarySearch(values, 0, card, value);
+			if (idx >= 0){
+				System.arraycopy(values, idx + 1, values, idx, card - idx - 1);
+				card--;
+			}
+			return this;
+		}
+
+		Container and(Container other){
+			char[] result = new char[card];
+			int count = 0;
+
+			if (other instanceof ArrayContainer){
+				//Merge the two sorted arrays
+				ArrayContainer o = (ArrayContainer) other;
+				int i = 0;
+				int j = 0;
+				while (i < card && j < o.card){
+					if (values[i] < o.values[j]){
+						i++;
+					} else if (values[i] > o.values[j]){
+						j++;
+					} else {
+						result[count++] = values[i];
+						i++;
+						j++;
+					}
+				}
+			} else {
+				//Probe the bitmap for each value
+				for (int i = 0; i < card; i++){
+					if (other.contains(values[i])){
+						result[count++] = values[i];
+					}
+				}
+			}
+
+			return new ArrayContainer(result, count);
+		}
+
+		int andCardinality(Container other){
+			int count = 0;
+
+			if (other instanceof ArrayContainer){
+				ArrayContainer o = (ArrayContainer) other;
+				int i = 0;
+				int j = 0;
+				while (i < card && j < o.card){
+					if (values[i] < o.values[j]){
+						i++;
+					} else if (values[i] > o.values[j]){
+						j++;
+					} else {
+						count++;
+						i++;
+						j++;
+					}
+				}
+			} else {
+				for (int i = 0; i < card; i++){
+					if (other.contains(values[i])){
+						count++;
+					}
+				}
+			}
+
+			return count;
+		}
+
+		int nextValue(char from){
+			int idx = Arrays.binarySearch(values, 0, card, from);
+			if (idx < 0){
+				idx = -idx - 1;
+			}
+			return idx < card ? values[idx] : -1;
+		}
+
+		Container copy(){
+			return new ArrayContainer(Arrays.copyOf(values, Math.max(card, 1)), card);
+		}
+
+		BitmapContainer toBitmap(){
+			BitmapContainer bitmap = new BitmapContainer();
+			for (int i = 0; i < card; i++){
+				bitmap.add(values[i]);
+			}
+			return bitmap;
+		}
+	}
+
+	/**
+	 * A dense chunk: the values are stored as a 2^16 bit bitmap.
+	 */
+	private static final class BitmapContainer extends Container {
+		private final long[] words;
+		private int card;
+
+		BitmapContainer(){
+			words = new long[1024];
+			card = 0;
+		}
+
+		private BitmapContainer(long[] words, int card){
+			this.words = words;
+			this.card = card;
+		}
+
+		int cardinality(){
+			return card;
+		}
+
+		boolean contains(char value){
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		Container add(char value){
+			long before = words[value >>> 6];
+			long after = before | (1L << value);
+			if (before != after){
+				words[value >>> 6] = after;
+				card++;
+			}
+			return this;
+		}
+
+		Container remove(char value){
+			long before = words[value >>> 6];
+			long after = before & ~(1L << value);
+			if (before != after){
+				words[value >>> 6] = after;
+				card--;
+			}
+			return this;
+		}
+
+		Container and(Container other){
+			if (other instanceof ArrayContainer){
+				return other.and(this);
+			}
+
+			//Word level intersection
+			BitmapContainer o = (BitmapContainer) other;
+			long[] result = new long[1024];
+			int count = 0;
+			for (int i = 0; i < 1024; i++){
+				result[i] = words[i] & o.words[i];
+				count += Long.bitCount(result[i]);
+			}
+
+			BitmapContainer bitmap = new BitmapContainer(result, count);
+			if (count <= ARRAY_MAX){
+				return bitmap.toArray();
+			}
+			return bitmap;
+		}
+
+		int andCardinality(Container other){
+			if (other instanceof ArrayContainer){
+				return other.andCardinality(this);
+			}
+
+			BitmapContainer o = (BitmapContainer) other;
+			int count = 0;
+			for (int i = 0; i < 1024; i++){
+				count += Long.bitCount(words[i] & o.words[i]);
+			}
+			return count;
+		}
+
+		int nextValue(char from){
+			int idx = from >>> 6;
+			long word = words[idx] & (-1L << from);
+			while (true){
+				if (word != 0){
+					return (idx << 6) + Long.numberOfTrailingZeros(word);
+				}
+				idx++;
+				if (idx == 1024){
+					return -1;
+				}
+				word = words[idx];
+			}
+		}
+
+		Container copy(){
+			return new BitmapContainer(words.clone(), card);
+		}
+
+		ArrayContainer toArray(){
+			char[] values = new char[Math.max(card, 1)];
+			int pos = 0;
+			for (int i = 0; i < 1024; i++){
+				long word = words[i];
+				while (word != 0){
+					values[pos++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return new ArrayContainer(values, card);
+		}
+	}
+}
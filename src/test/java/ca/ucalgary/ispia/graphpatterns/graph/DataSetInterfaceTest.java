@@ -0,0 +1,122 @@
+package ca.ucalgary.ispia.graphpatterns.graph;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class DataSetInterfaceTest {
+
+	private static final int NODES = 3;
+	private static final int WRITERS = 4;
+	private static final int READERS = 2;
+	private static final int UPDATES = 20000;
+	private static final int RUNS = 30;
+
+	/**
+	 * Concurrent adds and removes of the same relationships must leave the outgoing and incoming matrices
+	 * symmetric, both in the snapshots taken during the updates and once the updates are done.
+	 */
+	@Test
+	public void concurrentUpdatesKeepMatricesSymmetric() throws InterruptedException {
+		for (int run = 0; run < RUNS; run++){
+			DataSet dataSet = new DataSet();
+			for (int id = 0; id < NODES; id++){
+				dataSet.addNode(new MyNode(id, "Node"));
+			}
+			dataSet.getRelTypes().add(RelType.RelA);
+
+			final DataSetInterface dsi = new DataSetInterface(dataSet);
+			final MyNode[] nodes = dsi.getNodes();
+			final AtomicBoolean done = new AtomicBoolean(false);
+			final AtomicInteger badSnapshots = new AtomicInteger(0);
+			final CountDownLatch start = new CountDownLatch(1);
+
+			List<Thread> writers = new ArrayList<Thread>();
+			for (int idx = 0; idx < WRITERS; idx++){
+				final long seed = run * WRITERS + idx;
+				writers.add(new Thread(new Runnable(){
+					public void run(){
+						Random random = new Random(seed);
+						await(start);
+						for (int count = 0; count < UPDATES; count++){
+							//Few nodes, so the writers keep updating the same relationships
+							MyNode src = nodes[random.nextInt(NODES)];
+							MyNode tgt = nodes[random.nextInt(NODES)];
+							MyRelationship rel = new MyRelationship(src, tgt, RelType.RelA, count);
+							if (random.nextBoolean()){
+								dsi.addRelationship(rel);
+							} else {
+								dsi.removeRelationship(rel);
+							}
+						}
+					}
+				}));
+			}
+
+			List<Thread> readers = new ArrayList<Thread>();
+			for (int idx = 0; idx < READERS; idx++){
+				readers.add(new Thread(new Runnable(){
+					public void run(){
+						await(start);
+						while (!done.get()){
+							if (asymmetric(dsi.snapshot(), nodes) > 0){
+								badSnapshots.incrementAndGet();
+							}
+						}
+					}
+				}));
+			}
+
+			for (Thread thread : writers){
+				thread.start();
+			}
+			for (Thread thread : readers){
+				thread.start();
+			}
+			start.countDown();
+
+			for (Thread thread : writers){
+				thread.join();
+			}
+			done.set(true);
+			for (Thread thread : readers){
+				thread.join();
+			}
+
+			assertEquals("Snapshots with a relationship on one side only", 0, badSnapshots.get());
+			assertEquals("Relationships on one side only after the updates", 0, asymmetric(dsi, nodes));
+		}
+	}
+
+	/**
+	 * Returns the number of relationships that are in only one of the outgoing and incoming matrices.
+	 */
+	private static int asymmetric(DataSetInterface dsi, MyNode[] nodes){
+		int count = 0;
+		for (int src = 0; src < NODES; src++){
+			for (int tgt = 0; tgt < NODES; tgt++){
+				boolean out = dsi.getNeighbours(nodes[src], RelType.RelA, MyDirection.OUTGOING).contains(nodes[tgt]);
+				boolean in = dsi.getNeighbours(nodes[tgt], RelType.RelA, MyDirection.INCOMING).contains(nodes[src]);
+				if (out != in){
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static void await(CountDownLatch latch){
+		try {
+			latch.await();
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+}